@@ -0,0 +1,473 @@
+/*
+ *  Copyright (c) 2019, Salesforce.com, Inc.
+ *  All rights reserved.
+ *  Licensed under the BSD 3-Clause license.
+ *  For full license text, see LICENSE.txt file in the repo root  or https://opensource.org/licenses/BSD-3-Clause
+ */
+
+package com.salesforce.grpc.contrib;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Ticker;
+import io.grpc.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * CachingResolver is a NameResolver Factory that shares one resolution per target URI between every channel using
+ * it. Use a single CachingResolver for all channels in the JVM, typically wrapping a {@link FallbackResolver} or
+ * {@link StaticResolver} factory, so a mass reconnect triggers one lookup per target instead of one per channel.
+ * <p>
+ * A cached result is fresh for the configured TTL. After that it is stale: it is still handed to channels for up to
+ * the configured max stale duration, while a single background refresh runs. Results older than TTL plus max stale are
+ * never used, and channels wait for the refresh. Concurrent refresh requests for the same target are coalesced into
+ * one lookup.
+ * <p>
+ * Channels share a resolution when they resolve the same target URI with the same default port and the same kind of
+ * {@link ProxyDetector}. Each shared resolution is done by one delegate {@link NameResolver}, created with the other
+ * arguments of the first channel to resolve it, but with the cache's own synchronization context and no offload
+ * executor, since it outlives that channel. The resolution is reference counted: when the last channel using it shuts
+ * down, its delegate is shut down and its cached result is discarded.
+ * <p>
+ * A refresh replaces the delegate with a new one and starts it, rather than calling its {@code refresh()}, since many
+ * resolvers ignore refreshes while their own cache is valid. The service config of a shared result is parsed
+ * separately by each channel, with the channel's own {@link NameResolver.ServiceConfigParser}.
+ */
+public final class CachingResolver extends NameResolver.Factory {
+    private final Logger logger = LoggerFactory.getLogger(CachingResolver.class);
+
+    private final NameResolver.Factory delegate;
+    private final long ttlNanos;
+    private final long maxStaleNanos;
+    private final Ticker ticker;
+    private final ConcurrentMap<EntryKey, Entry> entries = new ConcurrentHashMap<>();
+    private final SynchronizationContext syncContext = new SynchronizationContext(
+            (thread, ex) -> logger.error("Uncaught exception in caching name resolver", ex));
+
+    // Keeps the service config of shared results unparsed, since channels may parse it differently
+    private static final NameResolver.ServiceConfigParser RAW_SERVICE_CONFIG = new NameResolver.ServiceConfigParser() {
+        @Override
+        public NameResolver.ConfigOrError parseServiceConfig(Map<String, ?> rawServiceConfig) {
+            return NameResolver.ConfigOrError.fromConfig(new RawServiceConfig(rawServiceConfig));
+        }
+    };
+
+    /**
+     * Caches the resolutions of {@code delegate} for {@code ttl}, without serving stale results.
+     */
+    public static CachingResolver wrap(@Nonnull NameResolver.Factory delegate, @Nonnull Duration ttl) {
+        return wrap(delegate, ttl, Duration.ZERO);
+    }
+
+    /**
+     * Caches the resolutions of {@code delegate} for {@code ttl}, and serves stale results for up to
+     * {@code maxStale} longer while refreshing them in the background.
+     */
+    public static CachingResolver wrap(@Nonnull NameResolver.Factory delegate, @Nonnull Duration ttl,
+                                       @Nonnull Duration maxStale) {
+        return new CachingResolver(delegate, ttl, maxStale, Ticker.systemTicker());
+    }
+
+    @VisibleForTesting
+    CachingResolver(NameResolver.Factory delegate, Duration ttl, Duration maxStale, Ticker ticker) {
+        Preconditions.checkNotNull(delegate, "delegate");
+        Preconditions.checkNotNull(ttl, "ttl");
+        Preconditions.checkNotNull(maxStale, "maxStale");
+        Preconditions.checkArgument(!ttl.isNegative(), "ttl must not be negative");
+        Preconditions.checkArgument(!maxStale.isNegative(), "maxStale must not be negative");
+        this.delegate = delegate;
+        this.ttlNanos = ttl.toNanos();
+        this.maxStaleNanos = maxStale.toNanos();
+        this.ticker = ticker;
+    }
+
+    @Override
+    public NameResolver newNameResolver(URI targetUri, NameResolver.Args args) {
+        // The shared resolver outlives the channel that created it, so it must not use the channel's
+        // synchronization context or offload executor. Its service config is kept raw, for each channel to parse.
+        NameResolver.Args sharedArgs = args.toBuilder()
+                .setSynchronizationContext(syncContext)
+                .setOffloadExecutor(null)
+                .setServiceConfigParser(RAW_SERVICE_CONFIG)
+                .build();
+        NameResolver probe = delegate.newNameResolver(targetUri, sharedArgs);
+        if (probe == null) {
+            return null;
+        }
+        EntryKey key = new EntryKey(targetUri, args);
+        Entry entry;
+        do {
+            entry = entries.computeIfAbsent(key, Entry::new);
+        } while (!entry.retain());
+        return new CachedNameResolver(entry, probe, sharedArgs, args);
+    }
+
+    @Override
+    public String getDefaultScheme() {
+        return delegate.getDefaultScheme();
+    }
+
+    /**
+     * Identifies the resolutions that channels can share: the target URI, and the arguments that change what the
+     * delegate resolves it to. Proxy detectors are compared by class, since each channel gets its own instance of the
+     * default one.
+     */
+    private static final class EntryKey {
+        private final URI targetUri;
+        private final int defaultPort;
+        private final Class<?> proxyDetectorClass;
+
+        EntryKey(URI targetUri, NameResolver.Args args) {
+            this.targetUri = targetUri;
+            this.defaultPort = args.getDefaultPort();
+            this.proxyDetectorClass = args.getProxyDetector() == null ? null : args.getProxyDetector().getClass();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof EntryKey)) {
+                return false;
+            }
+            EntryKey other = (EntryKey) o;
+            return defaultPort == other.defaultPort && targetUri.equals(other.targetUri) &&
+                    Objects.equals(proxyDetectorClass, other.proxyDetectorClass);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(targetUri, defaultPort, proxyDetectorClass);
+        }
+    }
+
+    /**
+     * The shared resolution of one target URI.
+     */
+    private final class Entry {
+        private final EntryKey key;
+        private final URI targetUri;
+
+        // Guarded by this
+        private final List<CachedNameResolver> subscribers = new ArrayList<>();
+        // The CachedNameResolvers created for this entry and not yet shut down
+        private int references;
+        private boolean released;
+        private NameResolver resolver;
+        private NameResolver.Args sharedArgs;
+        private boolean started;
+        private boolean refreshing;
+        private NameResolver.ResolutionResult result;
+        private long resolvedAtNanos;
+
+        Entry(EntryKey key) {
+            this.key = key;
+            this.targetUri = key.targetUri;
+        }
+
+        /**
+         * Adds a reference to this entry, unless the last one was already released and it left the cache.
+         */
+        synchronized boolean retain() {
+            if (released) {
+                return false;
+            }
+            references++;
+            return true;
+        }
+
+        /**
+         * Drops a reference to this entry. The last one removes it from the cache and shuts its resolver down.
+         */
+        void release() {
+            NameResolver toShutdown = null;
+            synchronized (this) {
+                if (--references > 0) {
+                    return;
+                }
+                released = true;
+                entries.remove(key, this);
+                toShutdown = resolver;
+                resolver = null;
+                refreshing = false;
+                result = null;
+            }
+            if (toShutdown != null) {
+                syncContext.execute(toShutdown::shutdown);
+            }
+        }
+
+        void subscribe(CachedNameResolver subscriber, NameResolver probe, NameResolver.Args probeArgs) {
+            NameResolver.ResolutionResult usable;
+            boolean needsRefresh;
+            synchronized (this) {
+                subscribers.add(subscriber);
+                if (resolver == null) {
+                    // Adopt the probe as the shared resolver. It is only started once a lookup is needed.
+                    resolver = probe;
+                    sharedArgs = probeArgs;
+                    started = false;
+                    probe = null;
+                }
+                usable = usableResult();
+                needsRefresh = claimRefresh();
+            }
+
+            if (probe != null) {
+                probe.shutdown();
+            }
+            if (usable != null) {
+                subscriber.deliver(usable);
+            }
+            if (needsRefresh) {
+                refreshResolver();
+            }
+        }
+
+        void unsubscribe(CachedNameResolver subscriber) {
+            synchronized (this) {
+                subscribers.remove(subscriber);
+            }
+            release();
+        }
+
+        void refresh(CachedNameResolver subscriber) {
+            NameResolver.ResolutionResult usable;
+            boolean needsRefresh;
+            synchronized (this) {
+                usable = usableResult();
+                needsRefresh = claimRefresh();
+            }
+
+            if (usable != null) {
+                subscriber.deliver(usable);
+            }
+            if (needsRefresh) {
+                refreshResolver();
+            }
+        }
+
+        /**
+         * Claims the single refresh of a result that is missing or no longer fresh, if no refresh is running yet.
+         */
+        private boolean claimRefresh() {
+            if (isFresh() || refreshing || resolver == null) {
+                return false;
+            }
+            refreshing = true;
+            return true;
+        }
+
+        private void refreshResolver() {
+            syncContext.execute(() -> {
+                NameResolver current;
+                NameResolver.Args args;
+                boolean start;
+                synchronized (this) {
+                    current = resolver;
+                    args = sharedArgs;
+                    start = !started;
+                    started = true;
+                }
+                if (current == null) {
+                    return;
+                }
+                if (!start) {
+                    // Starting a resolver always performs a lookup, while refresh() may be ignored
+                    NameResolver replacement = delegate.newNameResolver(targetUri, args);
+                    if (replacement == null) {
+                        onError(current, Status.UNAVAILABLE.withDescription("No resolver for " + targetUri));
+                        return;
+                    }
+                    synchronized (this) {
+                        if (resolver != current) {
+                            // Released meanwhile
+                            replacement.shutdown();
+                            return;
+                        }
+                        resolver = replacement;
+                    }
+                    current.shutdown();
+                    current = replacement;
+                }
+                current.start(new EntryListener(current));
+            });
+        }
+
+        private boolean isFresh() {
+            return result != null && ticker.read() - resolvedAtNanos < ttlNanos;
+        }
+
+        private NameResolver.ResolutionResult usableResult() {
+            return result != null && ticker.read() - resolvedAtNanos < ttlNanos + maxStaleNanos ? result : null;
+        }
+
+        void onResult(NameResolver source, NameResolver.ResolutionResult newResult) {
+            List<CachedNameResolver> targets;
+            synchronized (this) {
+                if (source != resolver) {
+                    return;
+                }
+                result = newResult;
+                resolvedAtNanos = ticker.read();
+                refreshing = false;
+                targets = new ArrayList<>(subscribers);
+            }
+            for (CachedNameResolver subscriber : targets) {
+                subscriber.deliver(newResult);
+            }
+        }
+
+        void onError(NameResolver source, Status error) {
+            List<CachedNameResolver> targets;
+            synchronized (this) {
+                if (source != resolver) {
+                    return;
+                }
+                refreshing = false;
+                if (usableResult() != null) {
+                    // Keep serving the cached result
+                    logger.debug("Refreshing {} failed, serving cached result: {}", targetUri, error);
+                    return;
+                }
+                targets = new ArrayList<>(subscribers);
+            }
+            for (CachedNameResolver subscriber : targets) {
+                subscriber.deliverError(error);
+            }
+        }
+
+        /**
+         * Receives the results of the shared resolver.
+         */
+        private final class EntryListener extends NameResolver.Listener2 {
+            private final NameResolver source;
+
+            EntryListener(NameResolver source) {
+                this.source = source;
+            }
+
+            @Override
+            public void onResult(NameResolver.ResolutionResult resolutionResult) {
+                Entry.this.onResult(source, resolutionResult);
+            }
+
+            @Override
+            public void onError(Status error) {
+                Entry.this.onError(source, error);
+            }
+        }
+    }
+
+    /**
+     * The NameResolver handed to each channel, which subscribes to the shared resolution of its target.
+     */
+    private final class CachedNameResolver extends NameResolver {
+        private final Entry entry;
+        private final String authority;
+        private final SynchronizationContext syncContext;
+        private final ServiceConfigParser serviceConfigParser;
+        private final Args probeArgs;
+        private NameResolver probe;
+        private volatile Listener2 listener;
+        private volatile boolean shutdown;
+
+        // The last raw service config parsed for this channel, accessed from the synchronization context
+        private RawServiceConfig lastRawConfig;
+        private ConfigOrError lastParsedConfig;
+
+        CachedNameResolver(Entry entry, NameResolver probe, Args probeArgs, Args args) {
+            this.entry = entry;
+            this.probe = probe;
+            this.probeArgs = probeArgs;
+            this.authority = probe.getServiceAuthority();
+            this.syncContext = args.getSynchronizationContext();
+            this.serviceConfigParser = args.getServiceConfigParser();
+        }
+
+        @Override
+        public String getServiceAuthority() {
+            return authority;
+        }
+
+        @Override
+        public void start(Listener2 listener) {
+            Preconditions.checkState(this.listener == null, "already started");
+            this.listener = listener;
+            NameResolver adopted = probe;
+            probe = null;
+            entry.subscribe(this, adopted, probeArgs);
+        }
+
+        @Override
+        public void refresh() {
+            entry.refresh(this);
+        }
+
+        @Override
+        public void shutdown() {
+            if (shutdown) {
+                return;
+            }
+            shutdown = true;
+            if (listener == null) {
+                probe.shutdown();
+                entry.release();
+            } else {
+                entry.unsubscribe(this);
+            }
+        }
+
+        void deliver(ResolutionResult result) {
+            syncContext.execute(() -> {
+                if (!shutdown) {
+                    listener.onResult(withOwnServiceConfig(result));
+                }
+            });
+        }
+
+        private ResolutionResult withOwnServiceConfig(ResolutionResult result) {
+            ConfigOrError config = result.getServiceConfig();
+            if (config == null || !(config.getConfig() instanceof RawServiceConfig)) {
+                return result;
+            }
+            RawServiceConfig raw = (RawServiceConfig) config.getConfig();
+            if (raw != lastRawConfig) {
+                lastParsedConfig = serviceConfigParser.parseServiceConfig(raw.config);
+                lastRawConfig = raw;
+            }
+            return result.toBuilder().setServiceConfig(lastParsedConfig).build();
+        }
+
+        void deliverError(Status error) {
+            syncContext.execute(() -> {
+                if (!shutdown) {
+                    listener.onError(error);
+                }
+            });
+        }
+    }
+
+    /**
+     * A service config as returned by the delegate, before any channel parsed it.
+     */
+    private static final class RawServiceConfig {
+        private final Map<String, ?> config;
+
+        RawServiceConfig(Map<String, ?> config) {
+            this.config = config;
+        }
+    }
+}
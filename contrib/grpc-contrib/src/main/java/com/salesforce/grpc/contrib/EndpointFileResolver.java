@@ -0,0 +1,385 @@
+/*
+ *  Copyright (c) 2019, Salesforce.com, Inc.
+ *  All rights reserved.
+ *  Licensed under the BSD 3-Clause license.
+ *  For full license text, see LICENSE.txt file in the repo root  or https://opensource.org/licenses/BSD-3-Clause
+ */
+
+package com.salesforce.grpc.contrib;
+
+import com.google.common.net.HostAndPort;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.grpc.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * EndpointFileResolver resolves to the endpoints listed in a local file, and pushes an updated list to the channel
+ * whenever the file changes.
+ * <p>
+ * The file lists one endpoint per line, as {@code host:port} followed by optional whitespace separated
+ * {@code name=value} attributes. A {@code weight} attribute is published as {@link StaticResolver#WEIGHT}, and the
+ * rest as {@link StaticResolver#ENDPOINT_ATTRIBUTES}. Blank lines and lines starting with {@code #} are ignored.
+ * <pre>
+ * # inventory service
+ * 10.0.0.1:8080 weight=3 zone=us-east-1a
+ * 10.0.0.2:8080 zone=us-east-1b
+ * [fd00::3]:8080
+ * </pre>
+ * The file is watched with a {@link WatchService}, so updates should replace the file atomically, by writing a
+ * temporary file and moving it into place. Every resolver of the same file shares one watch service and thread. If the
+ * file cannot be read or parsed, the error is reported to the channel, which keeps using the last endpoints it
+ * received. Reading the file and resolving its host names never happens on the channel's synchronization context:
+ * it runs on the watcher thread, or on the channel's offload executor, if it has one.
+ */
+final class EndpointFileResolver extends NameResolver {
+    private static final String COMMENT = "#";
+    private static final String WEIGHT = "weight";
+
+    // One watcher per endpoint file, shared by every resolver of that file
+    private static final ConcurrentMap<Path, FileWatcher> WATCHERS = new ConcurrentHashMap<>();
+    // Reads and parses endpoint files for channels without an offload executor
+    private static final Executor LOADER = Executors.newCachedThreadPool(
+            new ThreadFactoryBuilder().setNameFormat("grpc-endpoint-file-load-%d").setDaemon(true).build());
+
+    private final String authority;
+    private final Path endpointFile;
+    private final int defaultPort;
+    private final SynchronizationContext syncContext;
+    private final Executor executor;
+
+    // Accessed from the synchronization context
+    private Listener2 listener;
+    private List<EquivalentAddressGroup> lastAddresses;
+    private long lastGeneration = -1;
+    private boolean forceNextResult;
+
+    private FileWatcher watcher;
+    private volatile boolean shutdown;
+
+    EndpointFileResolver(String authority, Path endpointFile, Args args) {
+        this.authority = authority;
+        this.endpointFile = endpointFile.toAbsolutePath();
+        this.defaultPort = args.getDefaultPort();
+        this.syncContext = args.getSynchronizationContext();
+        this.executor = args.getOffloadExecutor() != null ? args.getOffloadExecutor() : LOADER;
+    }
+
+    @Override
+    public String getServiceAuthority() {
+        return authority;
+    }
+
+    @Override
+    public void start(Listener2 listener) {
+        this.listener = listener;
+        FileWatcher fileWatcher;
+        do {
+            fileWatcher = WATCHERS.computeIfAbsent(endpointFile, FileWatcher::new);
+        } while (!fileWatcher.subscribe(this));
+        watcher = fileWatcher;
+    }
+
+    /**
+     * Reads the endpoint file again, and pushes its endpoints to the channel even if they have not changed.
+     */
+    @Override
+    public void refresh() {
+        FileWatcher fileWatcher = watcher;
+        if (fileWatcher != null && !shutdown) {
+            forceNextResult = true;
+            executor.execute(fileWatcher::load);
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        if (shutdown) {
+            return;
+        }
+        shutdown = true;
+        FileWatcher fileWatcher = watcher;
+        if (fileWatcher != null) {
+            fileWatcher.unsubscribe(this);
+        }
+    }
+
+    /**
+     * Receives the content of the endpoint file, or the error reading it. Contents older than the last one received
+     * are ignored.
+     */
+    private void onFileRead(long generation, List<String> lines, Status error) {
+        List<EquivalentAddressGroup> addresses = null;
+        Status status = error;
+        if (lines != null) {
+            try {
+                addresses = parse(lines, defaultPort);
+            } catch (IllegalArgumentException ex) {
+                status = Status.UNAVAILABLE.withDescription("Cannot parse endpoint file " + endpointFile).withCause(ex);
+            }
+        }
+        List<EquivalentAddressGroup> parsed = addresses;
+        Status parseStatus = status;
+        syncContext.execute(() -> {
+            if (shutdown || generation < lastGeneration) {
+                return;
+            }
+            lastGeneration = generation;
+            boolean force = forceNextResult;
+            forceNextResult = false;
+            if (parsed == null) {
+                listener.onError(parseStatus);
+                return;
+            }
+            // A file is often written several times per change. Only push the endpoints when they differ.
+            if (!force && parsed.equals(lastAddresses)) {
+                return;
+            }
+            lastAddresses = parsed;
+            listener.onResult(ResolutionResult.newBuilder()
+                    .setAddresses(parsed)
+                    .setAttributes(Attributes.EMPTY)
+                    .build());
+        });
+    }
+
+    /**
+     * Watches one endpoint file with a {@link WatchService} on its own thread, and hands every new content of the
+     * file to the resolvers subscribed to it. The watcher stops, and leaves {@link #WATCHERS}, when its last resolver
+     * shuts down, or when the file can no longer be watched. Resolvers started after that get a new watcher.
+     */
+    private static final class FileWatcher {
+        private final Logger logger = LoggerFactory.getLogger(FileWatcher.class);
+
+        private final Path endpointFile;
+
+        // Guarded by this
+        private final List<EndpointFileResolver> subscribers = new ArrayList<>();
+        private boolean released;
+        private Thread thread;
+        private long generation;
+        private List<String> lastLines;
+        private Status lastError;
+
+        private volatile WatchService watchService;
+        private volatile boolean closed;
+
+        FileWatcher(Path endpointFile) {
+            this.endpointFile = endpointFile;
+        }
+
+        /**
+         * Subscribes {@code resolver} to the file, unless this watcher already stopped.
+         */
+        boolean subscribe(EndpointFileResolver resolver) {
+            long current;
+            List<String> lines;
+            Status error;
+            synchronized (this) {
+                if (released) {
+                    return false;
+                }
+                subscribers.add(resolver);
+                if (thread == null) {
+                    thread = new Thread(this::watch, "grpc-endpoint-file-" + endpointFile.getFileName());
+                    thread.setDaemon(true);
+                    thread.start();
+                    return true;
+                }
+                current = generation;
+                lines = lastLines;
+                error = lastError;
+            }
+            // Hand the latest content to the new resolver, unless the first read is still running
+            if (lines != null || error != null) {
+                resolver.executor.execute(() -> resolver.onFileRead(current, lines, error));
+            }
+            return true;
+        }
+
+        void unsubscribe(EndpointFileResolver resolver) {
+            synchronized (this) {
+                subscribers.remove(resolver);
+                if (!subscribers.isEmpty()) {
+                    return;
+                }
+                released = true;
+                closed = true;
+                WATCHERS.remove(endpointFile, this);
+            }
+            closeQuietly(watchService);
+        }
+
+        private void watch() {
+            // Start watching before the first read, so no change can be missed between the two
+            try {
+                watchService = endpointFile.getFileSystem().newWatchService();
+                endpointFile.getParent().register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE, OVERFLOW);
+            } catch (IOException ex) {
+                closeQuietly(watchService);
+                retire();
+                publish(null, Status.UNAVAILABLE.withDescription("Cannot watch endpoint file " + endpointFile)
+                        .withCause(ex));
+                return;
+            }
+            if (closed) {
+                // The last resolver shut down before the watch service existed
+                closeQuietly(watchService);
+                return;
+            }
+
+            load();
+            try {
+                while (!closed) {
+                    WatchKey key = watchService.take();
+                    boolean changed = false;
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        changed |= event.kind() == OVERFLOW || endpointFile.getFileName().equals(event.context());
+                    }
+                    if (changed) {
+                        load();
+                    }
+                    if (!key.reset()) {
+                        closeQuietly(watchService);
+                        retire();
+                        publish(null, Status.UNAVAILABLE.withDescription("Endpoint file directory " +
+                                endpointFile.getParent() + " is no longer accessible"));
+                        return;
+                    }
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } catch (ClosedWatchServiceException ex) {
+                // closed by the last resolver
+            }
+        }
+
+        /**
+         * Stops handing this watcher to new resolvers, once it can no longer watch the file.
+         */
+        private void retire() {
+            synchronized (this) {
+                released = true;
+            }
+            WATCHERS.remove(endpointFile, this);
+        }
+
+        /**
+         * Reads the file and hands its content to every subscribed resolver.
+         */
+        void load() {
+            try {
+                publish(Files.readAllLines(endpointFile, StandardCharsets.UTF_8), null);
+            } catch (IOException | RuntimeException ex) {
+                publish(null, Status.UNAVAILABLE.withDescription("Cannot read endpoint file " + endpointFile)
+                        .withCause(ex));
+            }
+        }
+
+        private void publish(List<String> lines, Status error) {
+            long current;
+            List<EndpointFileResolver> targets;
+            synchronized (this) {
+                current = ++generation;
+                lastLines = lines;
+                lastError = error;
+                targets = new ArrayList<>(subscribers);
+            }
+            for (EndpointFileResolver resolver : targets) {
+                resolver.onFileRead(current, lines, error);
+            }
+        }
+
+        private void closeQuietly(WatchService service) {
+            if (service == null) {
+                return;
+            }
+            try {
+                service.close();
+            } catch (IOException ex) {
+                logger.debug("Failed to close endpoint file watch service", ex);
+            }
+        }
+    }
+
+    /**
+     * Parses the lines of an endpoint file.
+     *
+     * @throws IllegalArgumentException if a line is malformed
+     */
+    static List<EquivalentAddressGroup> parse(List<String> lines, int defaultPort) {
+        List<EquivalentAddressGroup> addresses = new ArrayList<>(lines.size());
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i).trim();
+            if (line.isEmpty() || line.startsWith(COMMENT)) {
+                continue;
+            }
+            try {
+                addresses.add(parseLine(line, defaultPort));
+            } catch (IllegalArgumentException ex) {
+                throw new IllegalArgumentException("Malformed endpoint on line " + (i + 1) + ": " + ex.getMessage(), ex);
+            }
+        }
+        return Collections.unmodifiableList(addresses);
+    }
+
+    private static EquivalentAddressGroup parseLine(String line, int defaultPort) {
+        String[] tokens = line.split("\\s+");
+        HostAndPort hostAndPort = HostAndPort.fromString(tokens[0]).withDefaultPort(defaultPort);
+
+        Integer weight = null;
+        Map<String, String> endpointAttributes = new LinkedHashMap<>();
+        for (int i = 1; i < tokens.length; i++) {
+            int separator = tokens[i].indexOf('=');
+            if (separator <= 0) {
+                throw new IllegalArgumentException("expected name=value, found " + tokens[i]);
+            }
+            String name = tokens[i].substring(0, separator);
+            String value = tokens[i].substring(separator + 1);
+            if (WEIGHT.equals(name)) {
+                weight = parseWeight(value);
+            } else {
+                endpointAttributes.put(name, value);
+            }
+        }
+
+        Attributes.Builder attributes = Attributes.newBuilder();
+        if (weight != null) {
+            attributes.set(StaticResolver.WEIGHT, weight);
+        }
+        if (!endpointAttributes.isEmpty()) {
+            attributes.set(StaticResolver.ENDPOINT_ATTRIBUTES, Collections.unmodifiableMap(endpointAttributes));
+        }
+        InetSocketAddress address = new InetSocketAddress(hostAndPort.getHost(), hostAndPort.getPort());
+        return new EquivalentAddressGroup(address, attributes.build());
+    }
+
+    private static int parseWeight(String value) {
+        int weight;
+        try {
+            weight = Integer.parseInt(value);
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("weight must be an integer, found " + value, ex);
+        }
+        if (weight <= 0) {
+            throw new IllegalArgumentException("weight must be positive, found " + value);
+        }
+        return weight;
+    }
+}
@@ -13,8 +13,13 @@ import io.grpc.internal.DnsNameResolverProvider;
 
 import javax.annotation.Nonnull;
 import java.net.URI;
-import java.util.LinkedList;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
 
 /**
  * FallbackResolver is a NameResolver Factory that allows multiple {@link NameResolver} instances to be
@@ -26,6 +31,15 @@ import java.util.List;
  * resolver discovery system. For example, the {@link StaticResolver#provider(java.net.InetSocketAddress)}.
  * <p>
  * FallbackResolver assumes the default scheme of the first resolver in the sequence.
+ * <p>
+ * By default, only the first resolver that handles the scheme is used. With {@link #probeInParallel()}, every resolver
+ * that handles the scheme is started at once. The first to return addresses is used, and the channel fails over to
+ * the others when the one in use reports an error or returns no addresses. Resolvers earlier in the sequence are
+ * preferred whenever they are healthy.
+ * <p>
+ * With {@link #cacheProviderSelection()}, FallbackResolver remembers which provider handled each URI scheme, and
+ * later targets with that scheme go straight to it instead of asking every provider in turn. {@link #stats} reports
+ * how often, and how quickly, each provider was asked.
  */
 public final class FallbackResolver extends NameResolver.Factory {
     /**
@@ -33,7 +47,14 @@ public final class FallbackResolver extends NameResolver.Factory {
      */
     public static final NameResolverProvider DNS = new DnsNameResolverProvider();
 
-    private final List<NameResolverProvider> providers = new LinkedList<>();
+    // A selection cache entry for targets no provider handles
+    private static final int NO_PROVIDER = -1;
+
+    private final List<NameResolverProvider> providers = new ArrayList<>();
+    private final List<ProviderStats> providerStats = new ArrayList<>();
+    private boolean probeInParallel;
+    private Function<URI, ?> selectionKey;
+    private final ConcurrentMap<Object, Integer> selections = new ConcurrentHashMap<>();
 
     /**
      * Establishes the first {@link NameResolverProvider} to check.
@@ -53,23 +74,169 @@ public final class FallbackResolver extends NameResolver.Factory {
     public FallbackResolver thenCheck(@Nonnull NameResolverProvider provider) {
         Preconditions.checkNotNull(provider, "provider");
         providers.add(provider);
+        providerStats.add(new ProviderStats());
+
+        return this;
+    }
+
+    /**
+     * Remembers which {@link NameResolverProvider} handles each URI scheme, so later targets with that scheme skip
+     * the providers that do not. Use this when every provider decides by scheme alone, as the built in providers do.
+     */
+    public FallbackResolver cacheProviderSelection() {
+        return cacheProviderSelection(URI::getScheme);
+    }
+
+    /**
+     * Remembers which {@link NameResolverProvider} handles the targets sharing each key, so later targets with that
+     * key skip the providers that do not. Use a key that captures everything the providers decide by, such as the
+     * scheme and authority. If the remembered provider later declines a target, every provider is asked again.
+     *
+     * @param selectionKey Computes the cache key of a target URI.
+     */
+    public FallbackResolver cacheProviderSelection(@Nonnull Function<URI, ?> selectionKey) {
+        Preconditions.checkNotNull(selectionKey, "selectionKey");
+        this.selectionKey = selectionKey;
+
+        return this;
+    }
+
+    /**
+     * Returns how often, and how quickly, {@code provider} has been asked for a {@link NameResolver}.
+     *
+     * @throws IllegalArgumentException if {@code provider} was not added to this FallbackResolver
+     */
+    public ProviderStats stats(@Nonnull NameResolverProvider provider) {
+        int index = providers.indexOf(provider);
+        Preconditions.checkArgument(index >= 0, "Unknown provider %s", provider);
+        return providerStats.get(index);
+    }
+
+    /**
+     * Starts every {@link NameResolver} that can handle a target at once, and fails over between them at resolution
+     * time, instead of only using the first.
+     */
+    public FallbackResolver probeInParallel() {
+        this.probeInParallel = true;
 
         return this;
     }
 
     @Override
     public NameResolver newNameResolver(URI targetUri, NameResolver.Args args) {
-        for (NameResolverProvider provider : providers) {
-            NameResolver resolver = provider.newNameResolver(targetUri, args);
+        if (probeInParallel) {
+            return newParallelNameResolver(targetUri, args);
+        }
+
+        if (selectionKey == null) {
+            return newSequentialNameResolver(targetUri, args, null, NO_PROVIDER);
+        }
+
+        Object key = selectionKey.apply(targetUri);
+        Integer selected = key == null ? null : selections.get(key);
+        if (selected == null) {
+            return newSequentialNameResolver(targetUri, args, key, NO_PROVIDER);
+        }
+        if (selected == NO_PROVIDER) {
+            return null;
+        }
+        NameResolver resolver = newNameResolver(selected, targetUri, args);
+        if (resolver != null) {
+            return resolver;
+        }
+        // The selected provider declined, so ask the others
+        return newSequentialNameResolver(targetUri, args, key, selected);
+    }
+
+    private NameResolver newSequentialNameResolver(URI targetUri, NameResolver.Args args, Object key, int skip) {
+        for (int i = 0; i < providers.size(); i++) {
+            if (i == skip) {
+                continue;
+            }
+            NameResolver resolver = newNameResolver(i, targetUri, args);
             if (resolver != null) {
+                if (key != null) {
+                    selections.put(key, i);
+                }
                 return resolver;
             }
         }
+        if (key != null) {
+            selections.put(key, NO_PROVIDER);
+        }
         return null;
     }
 
+    private NameResolver newParallelNameResolver(URI targetUri, NameResolver.Args args) {
+        List<NameResolver> resolvers = new ArrayList<>(providers.size());
+        for (int i = 0; i < providers.size(); i++) {
+            NameResolver resolver = newNameResolver(i, targetUri, args);
+            if (resolver != null) {
+                resolvers.add(resolver);
+            }
+        }
+
+        switch (resolvers.size()) {
+            case 0:
+                return null;
+            case 1:
+                return resolvers.get(0);
+            default:
+                return new ParallelFallbackNameResolver(resolvers, args.getSynchronizationContext());
+        }
+    }
+
+    private NameResolver newNameResolver(int index, URI targetUri, NameResolver.Args args) {
+        long start = System.nanoTime();
+        NameResolver resolver = providers.get(index).newNameResolver(targetUri, args);
+        providerStats.get(index).record(resolver != null, System.nanoTime() - start);
+        return resolver;
+    }
+
     @Override
     public String getDefaultScheme() {
         return providers.get(0).getDefaultScheme();
     }
+
+    /**
+     * Counts how often a {@link NameResolverProvider} was asked for a {@link NameResolver}, and how long it took.
+     */
+    public static final class ProviderStats {
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+        private final LongAdder latencyNanos = new LongAdder();
+
+        private ProviderStats() { }
+
+        private void record(boolean hit, long nanos) {
+            (hit ? hits : misses).increment();
+            latencyNanos.add(nanos);
+        }
+
+        /**
+         * @return how many times the provider returned a {@link NameResolver}
+         */
+        public long hits() {
+            return hits.sum();
+        }
+
+        /**
+         * @return how many times the provider declined a target
+         */
+        public long misses() {
+            return misses.sum();
+        }
+
+        /**
+         * @return the total time spent in the provider's {@code newNameResolver()}
+         */
+        public Duration totalLatency() {
+            return Duration.ofNanos(latencyNanos.sum());
+        }
+
+        @Override
+        public String toString() {
+            return "ProviderStats{hits=" + hits() + ", misses=" + misses() + ", totalLatency=" + totalLatency() + "}";
+        }
+    }
 }
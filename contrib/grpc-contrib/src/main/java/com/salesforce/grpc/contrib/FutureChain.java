@@ -17,6 +17,9 @@ import java.util.function.Consumer;
 
 /**
  * FutureChain provides a fluent interface for chaining {@link ListenableFuture}s together.
+ *
+ * <p>Each step's executor is decorated when the step is added, using
+ * {@link MoreFutures#installCallbackExecutorDecorator(java.util.function.UnaryOperator)}.
  * @param <T>
  */
 public final class FutureChain<T> {
@@ -49,35 +52,35 @@ public final class FutureChain<T> {
      * @see Futures#transform(ListenableFuture, Function, Executor)
      */
     public <U> FutureChain<U> transform(Function<? super T, ? extends U> function) {
-        return new FutureChain<>(Futures.transform(future, function, executor), executor);
+        return new FutureChain<>(Futures.transform(future, function, MoreFutures.callbackExecutor(executor)), executor);
     }
 
     /**
      * @see Futures#transformAsync(ListenableFuture, AsyncFunction, Executor)
      */
     public <U> FutureChain<U> transformAsync(AsyncFunction<? super T, ? extends U> function) {
-        return new FutureChain<>(Futures.transformAsync(future, function, executor), executor);
+        return new FutureChain<>(Futures.transformAsync(future, function, MoreFutures.callbackExecutor(executor)), executor);
     }
 
     /**
      * @see Futures#catching(ListenableFuture, Class, Function, Executor)
      */
     public <E extends Throwable> FutureChain<T> catching(Class<E> exceptionType, Function<? super E, ? extends T> fallback) {
-        return new FutureChain<>(Futures.catching(future, exceptionType, fallback, executor), executor);
+        return new FutureChain<>(Futures.catching(future, exceptionType, fallback, MoreFutures.callbackExecutor(executor)), executor);
     }
 
     /**
      * @see Futures#catchingAsync(ListenableFuture, Class, AsyncFunction, Executor)
      */
     public <E extends Throwable> FutureChain<T> catchingAsync(Class<E> exceptionType, AsyncFunction<? super E, ? extends T> fallback) {
-        return new FutureChain<>(Futures.catchingAsync(future, exceptionType, fallback, executor), executor);
+        return new FutureChain<>(Futures.catchingAsync(future, exceptionType, fallback, MoreFutures.callbackExecutor(executor)), executor);
     }
 
     /**
      * @see Futures#addCallback(ListenableFuture, FutureCallback, Executor)
      */
     public FutureChain<T> addCallback(FutureCallback<? super T> callback) {
-        Futures.addCallback(future, callback, executor);
+        Futures.addCallback(future, callback, MoreFutures.callbackExecutor(executor));
         return this;
     }
 
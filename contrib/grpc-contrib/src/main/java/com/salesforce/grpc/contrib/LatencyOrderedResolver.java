@@ -0,0 +1,251 @@
+/*
+ *  Copyright (c) 2019, Salesforce.com, Inc.
+ *  All rights reserved.
+ *  Licensed under the BSD 3-Clause license.
+ *  For full license text, see LICENSE.txt file in the repo root  or https://opensource.org/licenses/BSD-3-Clause
+ */
+
+package com.salesforce.grpc.contrib;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.grpc.*;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * LatencyOrderedResolver resolves to a static list of addresses, ordered by how quickly each accepts a TCP
+ * connection. Pick-first channels therefore connect to the fastest address first.
+ * <p>
+ * Every address is probed in the background once per probe interval, and the connect round trip time is smoothed
+ * across probes so a single slow connect does not reorder the list. The addresses are probed in parallel, on threads
+ * shared by every latency ordered resolver, and a connect that takes longer than {@link #CONNECT_TIMEOUT} counts as
+ * unreachable. Addresses that cannot be reached are placed last,
+ * in their configured order. The addresses are published in their configured order at startup, and again whenever
+ * their order or reachability changes, or the round trip time of an address drifts more than 25% from the one last
+ * published. Each reachable address carries its smoothed round trip time, as of publication, in
+ * {@link StaticResolver#CONNECT_RTT}. {@link #refresh()} probes every address again without waiting for the next
+ * interval.
+ */
+final class LatencyOrderedResolver extends NameResolver {
+    static final long UNREACHABLE = Long.MAX_VALUE;
+    // Weight of the newest probe in the smoothed round trip time
+    private static final double SMOOTHING = 0.5;
+    // How far a round trip time may drift from the published one before it is published again
+    private static final double MAX_RTT_DRIFT = 0.25;
+    // Longest a probe waits for a connection, whatever the probe interval
+    static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(1);
+    private static final int PROBE_THREADS = 4;
+
+    // Runs the probes of every resolver, and schedules their next round
+    private static final ScheduledExecutorService PROBES = newProbeExecutor();
+
+    private final String authority;
+    private final InetSocketAddress[] addresses;
+    private final long probeIntervalNanos;
+    private final SynchronizationContext syncContext;
+    // Smoothed round trip times, accessed only by the probe round that is running
+    private final long[] rttNanos;
+
+    // Accessed from the synchronization context
+    private Listener2 listener;
+    private List<EquivalentAddressGroup> lastAddresses;
+
+    // Guarded by this
+    private boolean probing;
+    private boolean reprobe;
+    private Future<?> nextRound;
+
+    private volatile boolean shutdown;
+
+    LatencyOrderedResolver(String authority, List<InetSocketAddress> addresses, Duration probeInterval, Args args) {
+        this.authority = authority;
+        this.addresses = addresses.toArray(new InetSocketAddress[0]);
+        this.probeIntervalNanos = probeInterval.toNanos();
+        this.syncContext = args.getSynchronizationContext();
+        this.rttNanos = new long[this.addresses.length];
+        Arrays.fill(rttNanos, UNREACHABLE);
+    }
+
+    @Override
+    public String getServiceAuthority() {
+        return authority;
+    }
+
+    @Override
+    public void start(Listener2 listener) {
+        this.listener = listener;
+        publish(order(addresses, null));
+        PROBES.execute(this::probeRound);
+    }
+
+    /**
+     * Probes every address again now, rather than at the end of the current probe interval.
+     */
+    @Override
+    public void refresh() {
+        PROBES.execute(this::probeRound);
+    }
+
+    @Override
+    public void shutdown() {
+        shutdown = true;
+        synchronized (this) {
+            if (nextRound != null) {
+                nextRound.cancel(false);
+            }
+        }
+    }
+
+    private void probeRound() {
+        synchronized (this) {
+            if (shutdown) {
+                return;
+            }
+            if (probing) {
+                // Probe again as soon as the running round completes
+                reprobe = true;
+                return;
+            }
+            probing = true;
+            if (nextRound != null) {
+                nextRound.cancel(false);
+            }
+        }
+
+        long[] latest = new long[addresses.length];
+        AtomicInteger remaining = new AtomicInteger(addresses.length);
+        for (int i = 0; i < addresses.length; i++) {
+            int index = i;
+            PROBES.execute(() -> {
+                latest[index] = connectNanos(addresses[index]);
+                if (remaining.decrementAndGet() == 0) {
+                    completeRound(latest);
+                }
+            });
+        }
+    }
+
+    private void completeRound(long[] latest) {
+        for (int i = 0; i < addresses.length; i++) {
+            rttNanos[i] = smooth(rttNanos[i], latest[i]);
+        }
+        publish(order(addresses, rttNanos.clone()));
+
+        synchronized (this) {
+            probing = false;
+            if (shutdown) {
+                return;
+            }
+            if (reprobe) {
+                reprobe = false;
+                PROBES.execute(this::probeRound);
+            } else {
+                nextRound = PROBES.schedule(this::probeRound, probeIntervalNanos, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    private static long connectNanos(InetSocketAddress address) {
+        if (address.isUnresolved()) {
+            return UNREACHABLE;
+        }
+        try (Socket socket = new Socket()) {
+            long start = System.nanoTime();
+            socket.connect(address, (int) CONNECT_TIMEOUT.toMillis());
+            return Math.max(1, System.nanoTime() - start);
+        } catch (IOException ex) {
+            return UNREACHABLE;
+        }
+    }
+
+    private static ScheduledExecutorService newProbeExecutor() {
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(PROBE_THREADS,
+                new ThreadFactoryBuilder().setNameFormat("grpc-latency-probe-%d").setDaemon(true).build());
+        // Cancelled rounds of shut down resolvers should not stay queued until they were due
+        executor.setRemoveOnCancelPolicy(true);
+        return executor;
+    }
+
+    static long smooth(long previous, long latest) {
+        if (previous == UNREACHABLE || latest == UNREACHABLE) {
+            return latest;
+        }
+        return (long) (SMOOTHING * latest + (1 - SMOOTHING) * previous);
+    }
+
+    private void publish(List<EquivalentAddressGroup> ordered) {
+        syncContext.execute(() -> {
+            if (shutdown || (lastAddresses != null && isUpToDate(lastAddresses, ordered))) {
+                return;
+            }
+            lastAddresses = ordered;
+            listener.onResult(ResolutionResult.newBuilder()
+                    .setAddresses(ordered)
+                    .setAttributes(Attributes.EMPTY)
+                    .build());
+        });
+    }
+
+    /**
+     * Returns {@code true} if {@code published} has the same order and reachability as {@code latest}, and round trip
+     * times within {@link #MAX_RTT_DRIFT} of it.
+     */
+    static boolean isUpToDate(List<EquivalentAddressGroup> published, List<EquivalentAddressGroup> latest) {
+        for (int i = 0; i < published.size(); i++) {
+            if (!published.get(i).getAddresses().equals(latest.get(i).getAddresses())) {
+                return false;
+            }
+            Duration publishedRtt = published.get(i).getAttributes().get(StaticResolver.CONNECT_RTT);
+            Duration latestRtt = latest.get(i).getAttributes().get(StaticResolver.CONNECT_RTT);
+            if (publishedRtt == null || latestRtt == null) {
+                if (publishedRtt != latestRtt) {
+                    return false;
+                }
+                continue;
+            }
+            long publishedNanos = publishedRtt.toNanos();
+            if (Math.abs(latestRtt.toNanos() - publishedNanos) > MAX_RTT_DRIFT * publishedNanos) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Orders {@code addresses} by round trip time, fastest first, with unreachable addresses last in their original
+     * order.
+     *
+     * @param rttNanos the round trip time of each address, or {@code null} if no address has been probed yet
+     */
+    static List<EquivalentAddressGroup> order(InetSocketAddress[] addresses, long[] rttNanos) {
+        Integer[] indexes = new Integer[addresses.length];
+        for (int i = 0; i < indexes.length; i++) {
+            indexes[i] = i;
+        }
+        if (rttNanos != null) {
+            // A stable sort keeps equal and unreachable addresses in their configured order
+            Arrays.sort(indexes, Comparator.comparingLong(i -> rttNanos[i]));
+        }
+
+        List<EquivalentAddressGroup> ordered = new ArrayList<>(addresses.length);
+        for (int i : indexes) {
+            Attributes attributes = rttNanos == null || rttNanos[i] == UNREACHABLE ? Attributes.EMPTY :
+                    Attributes.newBuilder().set(StaticResolver.CONNECT_RTT, Duration.ofNanos(rttNanos[i])).build();
+            ordered.add(new EquivalentAddressGroup(addresses[i], attributes));
+        }
+        return Collections.unmodifiableList(ordered);
+    }
+}
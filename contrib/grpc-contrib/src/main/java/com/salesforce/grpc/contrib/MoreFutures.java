@@ -11,7 +11,9 @@ import com.google.common.util.concurrent.*;
 
 import javax.annotation.Nonnull;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
@@ -22,10 +24,52 @@ import static com.google.common.util.concurrent.Uninterruptibles.getUninterrupti
  * by Guava's {@link Futures} class.
  */
 public final class MoreFutures {
+    private static final UnaryOperator<Executor> NO_DECORATOR = UnaryOperator.identity();
+    private static final AtomicReference<UnaryOperator<Executor>> CALLBACK_EXECUTOR_DECORATOR =
+            new AtomicReference<>(NO_DECORATOR);
+
     private MoreFutures() {
         // prevent instantiation
     }
 
+    /**
+     * Installs a decorator applied to the {@code Executor} of every callback registered with {@code MoreFutures} or
+     * {@link FutureChain}. The decorator is called on the registering thread, when the callback is registered, so it
+     * can capture thread-local state such as the gRPC {@code Context} and restore it when the callback runs.
+     *
+     * <p>The decorator is shared by the whole JVM, so only one can be installed at a time: it must be removed with
+     * {@link #removeCallbackExecutorDecorator(UnaryOperator)} before another is installed. Code that only needs to
+     * decorate its own callbacks should pass a decorated executor instead.
+     *
+     * @see com.salesforce.grpc.contrib.context.AmbientContextExecutors#installFutureHooks()
+     * @param decorator The decorator to apply.
+     * @throws IllegalStateException if another decorator is already installed
+     */
+    public static void installCallbackExecutorDecorator(UnaryOperator<Executor> decorator) {
+        checkNotNull(decorator, "decorator");
+        checkState(CALLBACK_EXECUTOR_DECORATOR.compareAndSet(NO_DECORATOR, decorator),
+                "A callback executor decorator is already installed");
+    }
+
+    /**
+     * Removes a decorator installed with {@link #installCallbackExecutorDecorator(UnaryOperator)}, leaving any other
+     * installed decorator in place.
+     *
+     * @param decorator The decorator to remove.
+     * @return {@code true} if {@code decorator} was installed and has been removed
+     */
+    public static boolean removeCallbackExecutorDecorator(UnaryOperator<Executor> decorator) {
+        checkNotNull(decorator, "decorator");
+        return CALLBACK_EXECUTOR_DECORATOR.compareAndSet(decorator, NO_DECORATOR);
+    }
+
+    /**
+     * Applies the callback executor decorator to {@code executor}.
+     */
+    static Executor callbackExecutor(Executor executor) {
+        return CALLBACK_EXECUTOR_DECORATOR.get().apply(executor);
+    }
+
     /**
      * Registers separate success and failure callbacks to be run when the {@code Future}'s
      * computation is {@linkplain java.util.concurrent.Future#isDone() complete} or, if the
@@ -58,7 +102,7 @@ public final class MoreFutures {
                 failure.accept(t);
             }
         };
-        Futures.addCallback(future, futureCallback, executor);
+        Futures.addCallback(future, futureCallback, callbackExecutor(executor));
     }
 
     /**
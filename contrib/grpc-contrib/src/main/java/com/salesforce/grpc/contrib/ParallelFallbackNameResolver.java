@@ -0,0 +1,144 @@
+/*
+ *  Copyright (c) 2019, Salesforce.com, Inc.
+ *  All rights reserved.
+ *  Licensed under the BSD 3-Clause license.
+ *  For full license text, see LICENSE.txt file in the repo root  or https://opensource.org/licenses/BSD-3-Clause
+ */
+
+package com.salesforce.grpc.contrib;
+
+import io.grpc.*;
+
+import java.util.List;
+
+/**
+ * ParallelFallbackNameResolver runs several {@link NameResolver}s for the same target at once, and passes the channel
+ * the results of one of them, the active resolver.
+ * <p>
+ * The first resolver to return addresses becomes active, so startup is as fast as the fastest healthy resolver. When
+ * a resolver earlier in the list later returns addresses, it takes over, so the preferred resolver is used whenever
+ * it is healthy. When the active resolver reports an error or returns no addresses, the earliest resolver whose last
+ * result had addresses takes over immediately. The channel only sees an error when no resolver has addresses.
+ * <p>
+ * All methods run in the channel's {@link SynchronizationContext}.
+ */
+final class ParallelFallbackNameResolver extends NameResolver {
+    private static final int NONE = -1;
+
+    private final NameResolver[] resolvers;
+    private final SynchronizationContext syncContext;
+
+    // Accessed from the synchronization context
+    private final ResolutionResult[] healthyResults;
+    private final boolean[] failed;
+    private int active = NONE;
+    private Listener2 listener;
+    private boolean shutdown;
+
+    ParallelFallbackNameResolver(List<NameResolver> resolvers, SynchronizationContext syncContext) {
+        this.resolvers = resolvers.toArray(new NameResolver[0]);
+        this.syncContext = syncContext;
+        this.healthyResults = new ResolutionResult[this.resolvers.length];
+        this.failed = new boolean[this.resolvers.length];
+    }
+
+    @Override
+    public String getServiceAuthority() {
+        return resolvers[0].getServiceAuthority();
+    }
+
+    @Override
+    public void start(Listener2 listener) {
+        this.listener = listener;
+        for (int i = 0; i < resolvers.length; i++) {
+            resolvers[i].start(new ProbeListener(i));
+        }
+    }
+
+    @Override
+    public void refresh() {
+        for (NameResolver resolver : resolvers) {
+            resolver.refresh();
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        shutdown = true;
+        for (NameResolver resolver : resolvers) {
+            resolver.shutdown();
+        }
+    }
+
+    private void onResult(int index, ResolutionResult result) {
+        if (shutdown) {
+            return;
+        }
+        if (result.getAddresses().isEmpty()) {
+            onFailure(index, Status.UNAVAILABLE.withDescription("Resolver " + index + " returned no addresses"));
+            return;
+        }
+
+        healthyResults[index] = result;
+        failed[index] = false;
+        if (active == NONE || index <= active) {
+            active = index;
+            listener.onResult(result);
+        }
+    }
+
+    private void onFailure(int index, Status error) {
+        if (shutdown) {
+            return;
+        }
+        healthyResults[index] = null;
+        failed[index] = true;
+        if (active != NONE && active != index) {
+            // The active resolver is unaffected
+            return;
+        }
+
+        for (int i = 0; i < resolvers.length; i++) {
+            if (healthyResults[i] != null) {
+                active = i;
+                listener.onResult(healthyResults[i]);
+                return;
+            }
+        }
+
+        active = NONE;
+        if (allFailed()) {
+            listener.onError(error);
+        }
+    }
+
+    private boolean allFailed() {
+        for (boolean f : failed) {
+            if (!f) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Receives the results of one resolver, and hands them to the synchronization context.
+     */
+    private final class ProbeListener extends Listener2 {
+        private final int index;
+
+        ProbeListener(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public void onResult(ResolutionResult result) {
+            syncContext.execute(() -> ParallelFallbackNameResolver.this.onResult(index, result));
+        }
+
+        @Override
+        public void onError(Status error) {
+            syncContext.execute(() -> onFailure(index, error));
+        }
+    }
+}
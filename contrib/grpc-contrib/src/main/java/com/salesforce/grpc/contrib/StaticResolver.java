@@ -7,12 +7,24 @@
 
 package com.salesforce.grpc.contrib;
 
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
 import io.grpc.*;
 
 import javax.annotation.Nullable;
 import java.net.InetSocketAddress;
 import java.net.URI;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiFunction;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
 
 /**
  * StaticResolver is a gRPC NameResolverProvider and NameResolver Factory that resolves every request
@@ -26,6 +38,19 @@ import java.util.Collections;
  * <p>
  * StaticResolverProvider is best used in conjunction with the {@link FallbackResolver} and
  * {@link ManagedChannelBuilder#nameResolverFactory(NameResolver.Factory)}
+ * <p>
+ * {@link #fileProvider(Path)} resolves to a list of addresses read from a local file instead, and keeps the channel
+ * up to date as the file changes, so load balancers can spread requests across every address. The file lists one
+ * {@code host:port} per line, optionally followed by {@code name=value} attributes. A {@code weight} attribute is
+ * published as {@link #WEIGHT}, and the rest as {@link #ENDPOINT_ATTRIBUTES}. Blank lines and {@code #} comments are
+ * ignored. Replace the file atomically, by moving a new file into place, so a half written file is never read.
+ * <pre>
+ * 10.0.0.1:8080 weight=3 zone=us-east-1a
+ * 10.0.0.2:8080 zone=us-east-1b
+ * </pre>
+ * <p>
+ * {@link #provider(String, List, String)} also delivers a service config to the channel, so retry, hedging and
+ * per-method timeout policies can be defined next to the addresses they apply to.
  */
 public final class StaticResolver {
     private StaticResolver() {
@@ -34,6 +59,25 @@ public final class StaticResolver {
 
     public static final String DEFAULT_SCHEME = "mesh";
 
+    /**
+     * The weight of an address read from an endpoint file.
+     */
+    @EquivalentAddressGroup.Attr
+    public static final Attributes.Key<Integer> WEIGHT = Attributes.Key.create("weight");
+
+    /**
+     * The {@code name=value} attributes of an address read from an endpoint file, other than its weight.
+     */
+    @EquivalentAddressGroup.Attr
+    public static final Attributes.Key<Map<String, String>> ENDPOINT_ATTRIBUTES =
+            Attributes.Key.create("endpoint-attributes");
+
+    /**
+     * The smoothed TCP connect round trip time of an address, measured by a latency ordered resolver.
+     */
+    @EquivalentAddressGroup.Attr
+    public static final Attributes.Key<Duration> CONNECT_RTT = Attributes.Key.create("connect-rtt");
+
     /**
      * Constructs a StaticResolver provider that routes the mesh:// URI scheme to a static address.
      *
@@ -50,7 +94,67 @@ public final class StaticResolver {
      * @param staticAddress The static address to route all requests to.
      */
     public static NameResolverProvider provider(String scheme, InetSocketAddress staticAddress) {
-        return new StaticResolverProvider(scheme, staticAddress);
+        return fixedProvider(scheme, Collections.singletonList(staticAddress), null);
+    }
+
+    /**
+     * Constructs a StaticResolver provider that routes a configurable URI scheme to a static list of addresses, so
+     * load balancers can spread requests across all of them.
+     *
+     * @param scheme          The URI scheme to route.
+     * @param staticAddresses The static addresses to route all requests to.
+     */
+    public static NameResolverProvider provider(String scheme, List<InetSocketAddress> staticAddresses) {
+        return fixedProvider(scheme, staticAddresses, null);
+    }
+
+    /**
+     * Constructs a StaticResolver provider that routes a configurable URI scheme to a static list of addresses, and
+     * configures channels with a service config.
+     *
+     * @param scheme            The URI scheme to route.
+     * @param staticAddresses   The static addresses to route all requests to.
+     * @param serviceConfigJson The service config, as JSON. For example,
+     *                          {@code {"methodConfig": [{"name": [{"service": "acme.Inventory"}], "timeout": "1s"}]}}.
+     * @throws IllegalArgumentException if {@code serviceConfigJson} is not a JSON object
+     */
+    public static NameResolverProvider provider(String scheme, List<InetSocketAddress> staticAddresses,
+                                                String serviceConfigJson) {
+        return provider(scheme, staticAddresses, parseServiceConfig(serviceConfigJson));
+    }
+
+    /**
+     * Constructs a StaticResolver provider that routes a configurable URI scheme to a static list of addresses, and
+     * configures channels with a service config.
+     *
+     * @param scheme          The URI scheme to route.
+     * @param staticAddresses The static addresses to route all requests to.
+     * @param serviceConfig   The service config, in the form produced by parsing its JSON: maps, lists, strings,
+     *                        doubles and booleans.
+     */
+    public static NameResolverProvider provider(String scheme, List<InetSocketAddress> staticAddresses,
+                                                Map<String, ?> serviceConfig) {
+        checkNotNull(serviceConfig, "serviceConfig");
+        return fixedProvider(scheme, staticAddresses, Collections.unmodifiableMap(new LinkedHashMap<>(serviceConfig)));
+    }
+
+    /**
+     * Constructs a StaticResolver provider that routes a configurable URI scheme to a static list of addresses,
+     * ordered by TCP connect latency. Every address is probed in the background once per {@code probeInterval}, and
+     * its smoothed round trip time is published as {@link #CONNECT_RTT}. Pick-first channels connect to the fastest
+     * address first.
+     *
+     * @param scheme          The URI scheme to route.
+     * @param staticAddresses The static addresses to route all requests to.
+     * @param probeInterval   How often to measure each address's connect latency.
+     */
+    public static NameResolverProvider latencyOrderedProvider(String scheme, List<InetSocketAddress> staticAddresses,
+                                                              Duration probeInterval) {
+        checkArgument(!staticAddresses.isEmpty(), "staticAddresses must not be empty");
+        checkArgument(!probeInterval.isNegative() && !probeInterval.isZero(), "probeInterval must be positive");
+        List<InetSocketAddress> addresses = Collections.unmodifiableList(new ArrayList<>(staticAddresses));
+        return new StaticResolverProvider(scheme, (targetUri, args) ->
+                new LatencyOrderedResolver(targetUri.getAuthority(), addresses, probeInterval, args));
     }
 
     /**
@@ -69,56 +173,151 @@ public final class StaticResolver {
      * @param staticAddress The static address to route all requests to.
      */
     public static NameResolver.Factory factory(String scheme, InetSocketAddress staticAddress) {
-        return new StaticResolverFactory(scheme, staticAddress);
+        return new StaticResolverFactory(scheme, provider(scheme, staticAddress));
+    }
+
+    /**
+     * Constructs a StaticResolver factory that routes a configurable URI scheme to a static list of addresses.
+     *
+     * @param scheme          The URI scheme to route.
+     * @param staticAddresses The static addresses to route all requests to.
+     */
+    public static NameResolver.Factory factory(String scheme, List<InetSocketAddress> staticAddresses) {
+        return new StaticResolverFactory(scheme, provider(scheme, staticAddresses));
     }
 
     /**
-     * A provider of static name resolution.
+     * Constructs a StaticResolver factory that routes a configurable URI scheme to a static list of addresses, and
+     * configures channels with a service config.
+     *
+     * @param scheme            The URI scheme to route.
+     * @param staticAddresses   The static addresses to route all requests to.
+     * @param serviceConfigJson The service config, as JSON.
+     * @throws IllegalArgumentException if {@code serviceConfigJson} is not a JSON object
+     */
+    public static NameResolver.Factory factory(String scheme, List<InetSocketAddress> staticAddresses,
+                                               String serviceConfigJson) {
+        return new StaticResolverFactory(scheme, provider(scheme, staticAddresses, serviceConfigJson));
+    }
+
+    /**
+     * Constructs a StaticResolver factory that routes a configurable URI scheme to a static list of addresses, and
+     * configures channels with a service config.
+     *
+     * @param scheme          The URI scheme to route.
+     * @param staticAddresses The static addresses to route all requests to.
+     * @param serviceConfig   The service config, in the form produced by parsing its JSON.
+     */
+    public static NameResolver.Factory factory(String scheme, List<InetSocketAddress> staticAddresses,
+                                               Map<String, ?> serviceConfig) {
+        return new StaticResolverFactory(scheme, provider(scheme, staticAddresses, serviceConfig));
+    }
+
+    /**
+     * Constructs a StaticResolver factory that routes a configurable URI scheme to a static list of addresses,
+     * ordered by TCP connect latency.
+     *
+     * @param scheme          The URI scheme to route.
+     * @param staticAddresses The static addresses to route all requests to.
+     * @param probeInterval   How often to measure each address's connect latency.
+     */
+    public static NameResolver.Factory latencyOrderedFactory(String scheme, List<InetSocketAddress> staticAddresses,
+                                                             Duration probeInterval) {
+        return new StaticResolverFactory(scheme, latencyOrderedProvider(scheme, staticAddresses, probeInterval));
+    }
+
+    /**
+     * Constructs a StaticResolver provider that routes the mesh:// URI scheme to the addresses listed in a file.
+     *
+     * @param endpointFile The file listing the addresses to route requests to.
+     */
+    public static NameResolverProvider fileProvider(Path endpointFile) {
+        return fileProvider(DEFAULT_SCHEME, endpointFile);
+    }
+
+    /**
+     * Constructs a StaticResolver provider that routes a configurable URI scheme to the addresses listed in a file.
+     * The file is watched, and changes are pushed to the channel as they happen.
+     *
+     * @param scheme       The URI scheme to route.
+     * @param endpointFile The file listing the addresses to route requests to.
+     */
+    public static NameResolverProvider fileProvider(String scheme, Path endpointFile) {
+        checkNotNull(endpointFile, "endpointFile");
+        return new StaticResolverProvider(scheme, (targetUri, args) ->
+                new EndpointFileResolver(targetUri.getAuthority(), endpointFile, args));
+    }
+
+    /**
+     * Constructs a StaticResolver factory that routes the mesh:// URI scheme to the addresses listed in a file.
+     *
+     * @param endpointFile The file listing the addresses to route requests to.
+     */
+    public static NameResolver.Factory fileFactory(Path endpointFile) {
+        return fileFactory(DEFAULT_SCHEME, endpointFile);
+    }
+
+    /**
+     * Constructs a StaticResolver factory that routes a configurable URI scheme to the addresses listed in a file.
+     *
+     * @param scheme       The URI scheme to route.
+     * @param endpointFile The file listing the addresses to route requests to.
+     */
+    public static NameResolver.Factory fileFactory(String scheme, Path endpointFile) {
+        return new StaticResolverFactory(scheme, fileProvider(scheme, endpointFile));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, ?> parseServiceConfig(String serviceConfigJson) {
+        checkNotNull(serviceConfigJson, "serviceConfigJson");
+        Object parsed;
+        try {
+            // Gson reads objects as maps, arrays as lists and numbers as doubles, as the service config parser expects
+            parsed = new Gson().fromJson(serviceConfigJson, Object.class);
+        } catch (JsonParseException e) {
+            throw new IllegalArgumentException("Malformed service config JSON", e);
+        }
+        checkArgument(parsed instanceof Map, "Service config JSON must be an object");
+        return (Map<String, ?>) parsed;
+    }
+
+    private static NameResolverProvider fixedProvider(String scheme, List<InetSocketAddress> staticAddresses,
+                                                      @Nullable Map<String, ?> serviceConfig) {
+        checkArgument(!staticAddresses.isEmpty(), "staticAddresses must not be empty");
+        List<EquivalentAddressGroup> groups = new ArrayList<>(staticAddresses.size());
+        for (InetSocketAddress staticAddress : staticAddresses) {
+            groups.add(new EquivalentAddressGroup(checkNotNull(staticAddress, "staticAddress")));
+        }
+        List<EquivalentAddressGroup> addresses = Collections.unmodifiableList(groups);
+        return new StaticResolverProvider(scheme, (targetUri, args) ->
+                new FixedResolver(targetUri, addresses, serviceConfig, args));
+    }
+
+    /**
+     * A provider of static name resolution, which routes one URI scheme to the resolvers made by
+     * {@code resolverFactory}.
      */
     private static class StaticResolverProvider extends NameResolverProvider {
         private final String scheme;
-        private final InetSocketAddress staticAddress;
+        private final BiFunction<URI, NameResolver.Args, NameResolver> resolverFactory;
 
         /**
-         * Constructs a StaticResolverProvider tha routes a configurable URI scheme to a static address.
+         * Constructs a StaticResolverProvider tha routes a configurable URI scheme to the resolvers made by
+         * {@code resolverFactory}.
          *
-         * @param scheme        The URI scheme to route.
-         * @param staticAddress The static address to route all requests to.
+         * @param scheme          The URI scheme to route.
+         * @param resolverFactory Makes the resolver of each target URI with the routed scheme.
          */
-        StaticResolverProvider(String scheme, InetSocketAddress staticAddress) {
-            this.scheme = scheme;
-            this.staticAddress = staticAddress;
+        StaticResolverProvider(String scheme, BiFunction<URI, NameResolver.Args, NameResolver> resolverFactory) {
+            this.scheme = checkNotNull(scheme, "scheme");
+            this.resolverFactory = resolverFactory;
         }
 
         @Nullable
         @Override
         public NameResolver newNameResolver(URI targetUri, NameResolver.Args args) {
             if (scheme.equals(targetUri.getScheme())) {
-                final String authority = targetUri.getAuthority();
-
-                return new NameResolver() {
-                    @Override
-                    public String getServiceAuthority() {
-                        return authority;
-                    }
-
-                    @Override
-                    public void start(NameResolver.Listener listener) {
-                        try {
-                            listener.onAddresses(
-                                    Collections.singletonList(new EquivalentAddressGroup(staticAddress)),
-                                    Attributes.EMPTY
-                            );
-                        } catch (Throwable e) {
-                            listener.onError(Status.UNKNOWN);
-                        }
-                    }
-
-                    @Override
-                    public void shutdown() {
-
-                    }
-                };
+                return resolverFactory.apply(targetUri, args);
             } else {
                 return null;
             }
@@ -141,15 +340,61 @@ public final class StaticResolver {
     }
 
     /**
-     * A factory for using StaticResolverProvider directly.
+     * Resolves to a fixed list of addresses, and optionally a service config.
+     */
+    private static final class FixedResolver extends NameResolver {
+        private final URI targetUri;
+        private final List<EquivalentAddressGroup> addresses;
+        @Nullable
+        private final Map<String, ?> serviceConfig;
+        private final NameResolver.Args args;
+
+        FixedResolver(URI targetUri, List<EquivalentAddressGroup> addresses, @Nullable Map<String, ?> serviceConfig,
+                      NameResolver.Args args) {
+            this.targetUri = targetUri;
+            this.addresses = addresses;
+            this.serviceConfig = serviceConfig;
+            this.args = args;
+        }
+
+        @Override
+        public String getServiceAuthority() {
+            return targetUri.getAuthority();
+        }
+
+        @Override
+        public void start(NameResolver.Listener2 listener) {
+            try {
+                ResolutionResult.Builder result = ResolutionResult.newBuilder()
+                        .setAddresses(addresses)
+                        .setAttributes(Attributes.EMPTY);
+                if (serviceConfig != null) {
+                    // Parsed by each channel, which validates it against the channel's own settings
+                    result.setServiceConfig(args.getServiceConfigParser().parseServiceConfig(serviceConfig));
+                }
+                listener.onResult(result.build());
+            } catch (RuntimeException e) {
+                listener.onError(Status.UNKNOWN.withCause(e)
+                        .withDescription("Failed to resolve static addresses for " + targetUri));
+            }
+        }
+
+        @Override
+        public void shutdown() {
+
+        }
+    }
+
+    /**
+     * A factory for using a StaticResolver provider directly.
      */
     private static class StaticResolverFactory extends NameResolver.Factory {
         private String scheme;
-        private StaticResolverProvider provider;
+        private NameResolverProvider provider;
 
-        StaticResolverFactory(String scheme, InetSocketAddress staticAddress) {
+        StaticResolverFactory(String scheme, NameResolverProvider provider) {
             this.scheme = scheme;
-            this.provider = new StaticResolverProvider(scheme, staticAddress);
+            this.provider = provider;
         }
 
         @Nullable
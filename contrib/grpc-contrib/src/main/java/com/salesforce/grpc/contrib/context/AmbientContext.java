@@ -11,8 +11,12 @@ import io.grpc.Context;
 import io.grpc.Metadata;
 
 import javax.annotation.Nullable;
-import javax.annotation.concurrent.NotThreadSafe;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.function.BiConsumer;
 
 import static com.google.common.base.Preconditions.*;
 
@@ -22,12 +26,20 @@ import static com.google.common.base.Preconditions.*;
  * and {@link AmbientContextServerInterceptor}. The interface for this class is very similar to gRPC's {@code Metadata}
  * class.
  *
- * <p>This class is not thread safe, implementations should ensure that ambient context reads and writes do
- * not occur in multiple threads concurrently.
+ * <p>Ambient context entries are stored in a persistent hash trie rather than in a {@code Metadata}. Entries are keyed
+ * by name, so lookups do not require a linear search, and {@link #fork(Context)} shares the trie with the forked
+ * context instead of copying it. Values are stored in their parsed form: reading a value with the same
+ * {@code Metadata.Key} instance used to write it returns the stored object without marshalling. Frequently read keys
+ * can be registered as {@link AmbientContextKey}s, which are read by array index rather than by hash lookup.
+ *
+ * <p>By default this class is not thread safe, implementations should ensure that ambient context reads and writes
+ * do not occur in multiple threads concurrently. An ambient context created with
+ * {@link #initialize(Context, boolean) initialize(context, true)} is thread safe: reads are lock-free, and writes
+ * atomically swap in a modified copy of the persistent trie, so parallel tasks working on the same request can read
+ * and enrich a shared ambient context without forking it.
  *
  * <p>See package javadoc for more info.
  */
-@NotThreadSafe
 public final class AmbientContext {
     static final Context.Key<AmbientContext> DATA_KEY = Context.key("AmbientContext");
 
@@ -38,10 +50,39 @@ public final class AmbientContext {
      * provided gRPC {@code Context}.
      */
     public static Context initialize(Context context) {
+        return initialize(context, false);
+    }
+
+    /**
+     * Attaches an empty ambient context to the provided gRPC {@code Context}.
+     *
+     * @param threadSafe if true, the ambient context (and any context forked from it) may be read and modified from
+     *                   multiple threads concurrently.
+     *
+     * @throws IllegalStateException  if an ambient context has already been attached to the
+     * provided gRPC {@code Context}.
+     */
+    public static Context initialize(Context context, boolean threadSafe) {
+        return initialize(context, threadSafe, AmbientContextBudget.UNLIMITED);
+    }
+
+    /**
+     * Attaches an empty ambient context to the provided gRPC {@code Context}.
+     *
+     * @param threadSafe if true, the ambient context (and any context forked from it) may be read and modified from
+     *                   multiple threads concurrently.
+     * @param budget the budget enforced by {@link #put(Metadata.Key, Object)} on the ambient context (and any context
+     *               forked from it).
+     *
+     * @throws IllegalStateException  if an ambient context has already been attached to the
+     * provided gRPC {@code Context}.
+     */
+    public static Context initialize(Context context, boolean threadSafe, AmbientContextBudget budget) {
         checkNotNull(context, "context");
+        checkNotNull(budget, "budget");
         checkState(DATA_KEY.get(context) == null,
                 "AmbientContext has already been created in the scope of the current context");
-        return context.withValue(DATA_KEY, new AmbientContext());
+        return context.withValue(DATA_KEY, new AmbientContext(threadSafe, budget));
     }
 
     /**
@@ -62,19 +103,64 @@ public final class AmbientContext {
         return DATA_KEY.get() != null;
     }
 
-    private Metadata contextMetadata;
-    private Object freezeKey = null;
+    private static final AtomicReferenceFieldUpdater<AmbientContext, State> STATE_UPDATER =
+            AtomicReferenceFieldUpdater.newUpdater(AmbientContext.class, State.class, "state");
+
+    // Freezes captured snapshots. It is never exposed, so captured snapshots can never be thawed.
+    private static final Object CAPTURE_FREEZE_KEY = new Object();
+
+    private final boolean threadSafe;
+    private final AmbientContextBudget budget;
+    private volatile State state;
+    // {parent Context, entries, captured Context} of the most recent capture()
+    private volatile Object[] lastCapture;
 
     AmbientContext() {
-        this.contextMetadata = new Metadata();
+        this(false);
+    }
+
+    AmbientContext(boolean threadSafe) {
+        this(threadSafe, AmbientContextBudget.UNLIMITED);
+    }
+
+    AmbientContext(boolean threadSafe, AmbientContextBudget budget) {
+        this.threadSafe = threadSafe;
+        this.budget = budget;
+        this.state = State.EMPTY;
     }
 
     /**
-     * Copy constructor.
+     * Copy constructor. The copy shares the other context's persistent entries, so copying is constant time.
      */
     AmbientContext(AmbientContext other) {
-        this();
-        this.contextMetadata.merge(other.contextMetadata);
+        this.threadSafe = other.threadSafe;
+        this.budget = other.budget;
+        State otherState = other.state;
+        this.state = new State(otherState.entries, otherState.slots, null);
+    }
+
+    /**
+     * Returns {@code parent} with this ambient context replaced by a permanently frozen snapshot of its current
+     * contents, for handing to work that runs asynchronously. The snapshot is constant time to create, and is reused
+     * until this ambient context or {@code parent} changes.
+     */
+    Context capture(Context parent) {
+        State current = state;
+        if (current.freezeKey == CAPTURE_FREEZE_KEY) {
+            // Already a captured snapshot
+            return parent;
+        }
+
+        Object[] cached = lastCapture;
+        if (cached != null && cached[0] == parent && cached[1] == current.entries) {
+            return (Context) cached[2];
+        }
+
+        AmbientContext snapshot = new AmbientContext(threadSafe, budget);
+        snapshot.state = new State(current.entries, current.slots, CAPTURE_FREEZE_KEY);
+        Context captured = parent.withValue(DATA_KEY, snapshot);
+        lastCapture = new Object[]{parent, current.entries, captured};
+        return captured;
     }
 
     /**
@@ -89,11 +175,27 @@ public final class AmbientContext {
      * @throws IllegalStateException if the AmbientContext is already frozen
      */
     public Object freeze() {
-        checkState(!isFrozen(), "AmbientContext already frozen. Cannot freeze() twice.");
-        freezeKey = new Object();
+        Object freezeKey = new Object();
+        freeze(freezeKey);
         return freezeKey;
     }
 
+    /**
+     * Freezes the AmbientContext with a caller supplied freeze key. Callers that repeatedly freeze and thaw the same
+     * context, like {@link AmbientContextFreezeServerInterceptor}, reuse one key, so that freezing contents that have
+     * not changed since they were last frozen with that key reuses the frozen state, with its cached snapshots, and
+     * thawing it restores the state it was frozen from. Freezing after a modification allocates a new frozen state.
+     *
+     * @throws IllegalStateException if the AmbientContext is already frozen
+     */
+    void freeze(Object freezeKey) {
+        State current;
+        do {
+            current = state;
+            checkState(current.freezeKey == null, "AmbientContext already frozen. Cannot freeze() twice.");
+        } while (!swap(current, current.withFreezeKey(freezeKey)));
+    }
+
     /**
      * Makes the AmbientContext mutable again, after {@link #freeze()} has been called. A "freeze key" is needed to
      * unfreeze the AmbientContext, ensuring only the code that froze the context can subsequently thaw it.
@@ -107,16 +209,22 @@ public final class AmbientContext {
      * @throws IllegalArgumentException if the {@code freezeKey} is incorrect
      */
     public void thaw(Object freezeKey) {
-        checkState(isFrozen(), "AmbientContext is not frozen. Cannot thaw().");
-        checkArgument(this.freezeKey == freezeKey,
-                "The provided freezeKey is not the same object returned by freeze()");
-        this.freezeKey = null;
+        State current;
+        do {
+            current = state;
+            checkState(current.freezeKey != null, "AmbientContext is not frozen. Cannot thaw().");
+            checkArgument(current.freezeKey == freezeKey,
+                    "The provided freezeKey is not the same object returned by freeze()");
+        } while (!swap(current, current.withFreezeKey(null)));
     }
 
     /**
      * Similar to {@link #initialize(Context)}, {@code fork()} attaches a shallow clone of this {@code AmbientContext}
      * to a provided gRPC {@code Context}. Use {@code fork()} when you want create a temporary context scope.
      *
+     * <p>Forking is constant time. The forked context shares its entries with this context until either one is
+     * modified, and modifications to one are never visible to the other.
+     *
      * @param context
      * @return
      */
@@ -128,21 +236,44 @@ public final class AmbientContext {
      * @return true of the AmbientContext has been frozen
      */
     public boolean isFrozen() {
-        return freezeKey != null;
+        return state.freezeKey != null;
+    }
+
+    /**
+     * @return true if the AmbientContext may be accessed from multiple threads concurrently
+     */
+    public boolean isThreadSafe() {
+        return threadSafe;
     }
 
-    private void checkFreeze() {
-        checkState(freezeKey == null, "AmbientContext cannot be modified while frozen");
+    private static void checkFreeze(State state) {
+        checkState(state.freezeKey == null, "AmbientContext cannot be modified while frozen");
+    }
+
+    /**
+     * Replaces {@code expected} with {@code update}. Thread safe contexts use a compare-and-swap, so a concurrent
+     * modification makes this method return false and the caller must retry against the new state.
+     */
+    private boolean swap(State expected, State update) {
+        if (threadSafe) {
+            return STATE_UPDATER.compareAndSet(this, expected, update);
+        }
+        state = update;
+        return true;
     }
 
     /**
      * Returns true if a value is defined for the given key.
-     *
-     * <p>This is done by linear search, so if it is followed by {@link #get} or {@link #getAll},
-     * prefer calling them directly and checking the return value against {@code null}.
      */
     public boolean containsKey(Metadata.Key<?> key) {
-        return contextMetadata.containsKey(key);
+        return state.entries.get(key.name()) != null;
+    }
+
+    /**
+     * Returns true if a value is defined for the given registered key.
+     */
+    public boolean containsKey(AmbientContextKey<?> key) {
+        return lookup(state, key) != null;
     }
 
     /**
@@ -152,8 +283,13 @@ public final class AmbientContext {
      * @throws IllegalStateException  if the AmbientContext is frozen
      */
     public <T> void discardAll(Metadata.Key<T> key) {
-        checkFreeze();
-        contextMetadata.discardAll(key);
+        String name = key.name();
+        int slot = AmbientContextKey.slotOf(name);
+        State current;
+        do {
+            current = state;
+            checkFreeze(current);
+        } while (!swap(current, current.with(name, slot, null)));
     }
 
     /**
@@ -163,7 +299,19 @@ public final class AmbientContext {
      */
     @Nullable
     public <T> T get(Metadata.Key<T> key) {
-        return contextMetadata.get(key);
+        ContextValues values = state.entries.get(key.name());
+        return values == null ? null : values.last(key);
+    }
+
+    /**
+     * Returns the last ambient context entry added for a registered key, parsed as T.
+     *
+     * @return the parsed metadata entry or null if there are none.
+     */
+    @Nullable
+    public <T> T get(AmbientContextKey<T> key) {
+        ContextValues values = lookup(state, key);
+        return values == null ? null : values.last(key.metadataKey());
     }
 
     /**
@@ -173,7 +321,48 @@ public final class AmbientContext {
      */
     @Nullable
     public <T> Iterable<T> getAll(final Metadata.Key<T> key) {
-        return contextMetadata.getAll(key);
+        ContextValues values = state.entries.get(key.name());
+        return values == null ? null : values.all(key);
+    }
+
+    /**
+     * Returns all the ambient context entries for a registered key, in the order they were received, parsed as T,
+     * or null if there are none.
+     */
+    @Nullable
+    public <T> Iterable<T> getAll(AmbientContextKey<T> key) {
+        ContextValues values = lookup(state, key);
+        return values == null ? null : values.all(key.metadataKey());
+    }
+
+    /**
+     * Finds the values of a registered key, falling back to the trie for values stored before the key was registered.
+     */
+    @Nullable
+    private static ContextValues lookup(State current, AmbientContextKey<?> key) {
+        ContextValues values = current.slot(key.slot());
+        return values != null ? values : current.entries.get(key.metadataKey().name());
+    }
+
+    /**
+     * Checks every required key against a single snapshot of the ambient context, without building its key set.
+     *
+     * @return the first required key with no values, or {@code null} if every required key is present
+     */
+    @Nullable
+    String firstMissingKey(RequiredContextKeys required) {
+        State current = state;
+        for (int i = 0; i < required.size(); i++) {
+            int slot = required.slot(i);
+            if (slot >= 0 && current.slot(slot) != null) {
+                continue;
+            }
+            // Fall back to the trie for unregistered keys, and for values stored before their key was registered
+            if (current.entries.get(required.name(i)) == null) {
+                return required.name(i);
+            }
+        }
+        return null;
     }
 
     /**
@@ -182,19 +371,90 @@ public final class AmbientContext {
      * @return unmodifiable Set of keys
      */
     public Set<String> keys() {
-        return contextMetadata.keys();
+        HashTrieMap<String, ContextValues> entries = state.entries;
+        Set<String> keys = new HashSet<>(entries.size());
+        entries.forEach((name, values) -> keys.add(name));
+        return Collections.unmodifiableSet(keys);
     }
 
     /**
      * Adds the {@code key, value} pair. If {@code key} already has values, {@code value} is added to
      * the end. Duplicate values for the same key are permitted.
      *
+     * <p>If the ambient context was initialized with an {@link AmbientContextBudget}, a value that would exceed the
+     * budget is handled according to the budget's {@link AmbientContextBudget.Policy}.
+     *
      * @throws NullPointerException if key or value is null
      * @throws IllegalStateException  if the AmbientContext is frozen
+     * @throws AmbientContextBudget.BudgetExceededException if the value exceeds a budget limit with the
+     *     {@code FAIL} policy
      */
     public <T> void put(Metadata.Key<T> key, T value) {
-        checkFreeze();
-        contextMetadata.put(key, value);
+        checkNotNull(key, "key");
+        put(key, AmbientContextKey.slotOf(key.name()), value, budget);
+    }
+
+    /**
+     * Adds the {@code key, value} pair, enforcing {@code putBudget} rather than this context's own budget.
+     */
+    <T> void put(Metadata.Key<T> key, T value, AmbientContextBudget putBudget) {
+        put(key, AmbientContextKey.slotOf(key.name()), value, putBudget);
+    }
+
+    /**
+     * Adds a value for a registered key. If {@code key} already has values, {@code value} is added to
+     * the end. Duplicate values for the same key are permitted.
+     *
+     * @throws NullPointerException if key or value is null
+     * @throws IllegalStateException  if the AmbientContext is frozen
+     */
+    public <T> void put(AmbientContextKey<T> key, T value) {
+        checkNotNull(key, "key");
+        put(key.metadataKey(), key.slot(), value, budget);
+    }
+
+    private <T> void put(Metadata.Key<T> key, int slot, T value, AmbientContextBudget putBudget) {
+        checkNotNull(value, "value");
+        String name = key.name();
+        AmbientContextBudget.Limit violated;
+        while (true) {
+            State current = state;
+            checkFreeze(current);
+            ContextValues values = current.entries.get(name);
+            ContextValues updated = values == null ? ContextValues.of(key, value) : values.append(key, value);
+
+            violated = null;
+            if (!putBudget.isUnlimited()) {
+                if (values == null && putBudget.exceedsKeys(current.entries.size() + 1)) {
+                    violated = AmbientContextBudget.Limit.KEYS;
+                } else if (putBudget.exceedsValuesPerKey(updated.size())) {
+                    violated = AmbientContextBudget.Limit.VALUES_PER_KEY;
+                } else if (putBudget.limitsTotalBytes() && putBudget.exceedsTotalBytes(
+                        current.totalBytes() - serializedSize(values) + updated.serializedSize())) {
+                    violated = AmbientContextBudget.Limit.TOTAL_BYTES;
+                }
+            }
+
+            if (violated != null) {
+                if (putBudget.policy(violated) == AmbientContextBudget.Policy.FAIL) {
+                    putBudget.violate(violated, name);
+                }
+                // TRUNCATE discards the new value, DROP_KEY discards every value for the key
+                updated = putBudget.policy(violated) == AmbientContextBudget.Policy.DROP_KEY ? null : values;
+            }
+
+            if (updated == values || swap(current, current.with(name, slot, updated))) {
+                break;
+            }
+        }
+
+        if (violated != null) {
+            putBudget.recordViolation(violated);
+        }
+    }
+
+    private static long serializedSize(@Nullable ContextValues values) {
+        return values == null ? 0 : values.serializedSize();
     }
 
     /**
@@ -208,8 +468,25 @@ public final class AmbientContext {
      * @throws IllegalStateException  if the AmbientContext is frozen
      */
     public <T> boolean remove(Metadata.Key<T> key, T value) {
-        checkFreeze();
-        return contextMetadata.remove(key, value);
+        checkNotNull(value, "value");
+        String name = key.name();
+        int slot = AmbientContextKey.slotOf(name);
+        State current;
+        ContextValues remaining;
+        do {
+            current = state;
+            checkFreeze(current);
+            ContextValues values = current.entries.get(name);
+            if (values == null) {
+                return false;
+            }
+
+            remaining = values.remove(key, value);
+            if (remaining == values) {
+                return false;
+            }
+        } while (!swap(current, current.with(name, slot, remaining)));
+        return true;
     }
 
     /**
@@ -218,12 +495,315 @@ public final class AmbientContext {
      * @throws IllegalStateException  if the AmbientContext is frozen
      */
     public <T> Iterable<T> removeAll(Metadata.Key<T> key) {
-        checkFreeze();
-        return contextMetadata.removeAll(key);
+        String name = key.name();
+        int slot = AmbientContextKey.slotOf(name);
+        State current;
+        ContextValues values;
+        do {
+            current = state;
+            checkFreeze(current);
+            values = current.entries.get(name);
+            if (values == null) {
+                return null;
+            }
+        } while (!swap(current, current.with(name, slot, null)));
+        return values.all(key);
+    }
+
+    /**
+     * Returns the ambient context entries whose names start with {@code headerPrefix} as a serialized
+     * {@code Metadata}, suitable for bulk merging into outbound headers with {@link Metadata#merge(Metadata)}.
+     *
+     * <p>While the ambient context is frozen its contents cannot change, so the snapshot for each prefix (and each
+     * propagation policy key set, budget, and encoding) is serialized once and shared by every outbound call until
+     * the context is thawed. Budget violations found while serializing a snapshot are counted again each time it is
+     * reused, so violation counters count outbound calls either way. Callers must not modify the returned
+     * {@code Metadata}.
+     */
+    Metadata propagatedHeaders(String headerPrefix) {
+        return propagatedHeaders(headerPrefix, AmbientContextPropagationPolicy.Keys.all(),
+                AmbientContextBudget.UNLIMITED, AmbientContextEncoding.HEADERS);
+    }
+
+    /**
+     * Returns the ambient context entries whose names start with {@code headerPrefix} and are selected by
+     * {@code keys}, limited to {@code headerBudget}, as a serialized {@code Metadata} in {@code encoding}.
+     *
+     * @throws AmbientContextBudget.BudgetExceededException if the entries exceed a budget limit with the
+     *     {@code FAIL} policy
+     */
+    Metadata propagatedHeaders(String headerPrefix, AmbientContextPropagationPolicy.Keys keys,
+                               AmbientContextBudget headerBudget, AmbientContextEncoding encoding) {
+        State current = state;
+        return current.freezeKey == null ?
+                encode(current.entries, headerPrefix, keys, headerBudget, encoding, null) :
+                current.snapshot(headerPrefix, keys, headerBudget, encoding);
+    }
+
+    /**
+     * @param violations if not {@code null}, counts the budget violations of each limit, indexed by ordinal
+     */
+    private static Metadata encode(HashTrieMap<String, ContextValues> entries, String headerPrefix,
+                                   AmbientContextPropagationPolicy.Keys keys, AmbientContextBudget headerBudget,
+                                   AmbientContextEncoding encoding, @Nullable long[] violations) {
+        Metadata headers = serialize(entries, headerPrefix, keys, headerBudget, violations);
+        return encoding.isPacked() ? encoding.pack(headers, headerPrefix) : headers;
+    }
+
+    private static Metadata serialize(HashTrieMap<String, ContextValues> entries, String headerPrefix,
+                                      AmbientContextPropagationPolicy.Keys keys, AmbientContextBudget headerBudget,
+                                      @Nullable long[] violations) {
+        Metadata headers = new Metadata();
+        BiConsumer<String, ContextValues> writer = headerBudget.isUnlimited() ?
+                (name, values) -> values.writeTo(headers) :
+                new BudgetedWriter(headers, headerBudget, violations);
+
+        String[] allowedNames = keys.allowedNames();
+        if (allowedNames != null) {
+            // Probe the trie for each allowed name rather than scanning every entry
+            for (String name : allowedNames) {
+                ContextValues values = name.startsWith(headerPrefix) ? entries.get(name) : null;
+                if (values != null) {
+                    writer.accept(name, values);
+                }
+            }
+        } else {
+            entries.forEach((name, values) -> {
+                if (name.startsWith(headerPrefix) && keys.test(name)) {
+                    writer.accept(name, values);
+                }
+            });
+        }
+        return headers;
     }
 
     @Override
     public String toString() {
-        return (isFrozen() ? "[FROZEN] " : "[THAWED] ") + contextMetadata.toString();
+        State current = state;
+        return (current.freezeKey != null ? "[FROZEN] " : "[THAWED] ") + serialize(current.entries, "",
+                AmbientContextPropagationPolicy.Keys.all(), AmbientContextBudget.UNLIMITED, null).toString();
+    }
+
+    /**
+     * Writes ambient context entries into outbound headers, enforcing a budget as it goes.
+     */
+    private static final class BudgetedWriter implements BiConsumer<String, ContextValues> {
+        private final Metadata headers;
+        private final AmbientContextBudget budget;
+        @Nullable
+        private final long[] violations;
+        private int keys;
+        private long bytes;
+
+        BudgetedWriter(Metadata headers, AmbientContextBudget budget, @Nullable long[] violations) {
+            this.headers = headers;
+            this.budget = budget;
+            this.violations = violations;
+        }
+
+        @Override
+        public void accept(String name, ContextValues values) {
+            if (budget.exceedsKeys(keys + 1)) {
+                violate(AmbientContextBudget.Limit.KEYS, name);
+                return;
+            }
+
+            if (budget.exceedsValuesPerKey(values.size())) {
+                if (violate(AmbientContextBudget.Limit.VALUES_PER_KEY, name) ==
+                        AmbientContextBudget.Policy.DROP_KEY) {
+                    return;
+                }
+                values = values.truncate(budget.maxValuesPerKey());
+                if (values == null) {
+                    return;
+                }
+            }
+
+            if (budget.limitsTotalBytes() && budget.exceedsTotalBytes(bytes + values.serializedSize())) {
+                if (violate(AmbientContextBudget.Limit.TOTAL_BYTES, name) ==
+                        AmbientContextBudget.Policy.DROP_KEY) {
+                    return;
+                }
+                values = values.truncateToBytes(budget.maxTotalBytes() - bytes);
+                if (values == null) {
+                    return;
+                }
+            }
+
+            values.writeTo(headers);
+            keys++;
+            if (budget.limitsTotalBytes()) {
+                bytes += values.serializedSize();
+            }
+        }
+
+        private AmbientContextBudget.Policy violate(AmbientContextBudget.Limit limit, String name) {
+            AmbientContextBudget.Policy policy = budget.violate(limit, name);
+            if (violations != null) {
+                violations[limit.ordinal()]++;
+            }
+            return policy;
+        }
+    }
+
+    /**
+     * An immutable snapshot of the ambient context's entries and freeze status. Every modification installs a new
+     * {@code State}, so a frozen {@code State} is never modified and can safely cache its serialized headers.
+     *
+     * <p>Values for registered {@link AmbientContextKey}s are held both in the trie and in a slot array indexed by
+     * {@link AmbientContextKey#slot()}. The slot array is copied on write, and may be shorter than the number of
+     * registered keys if later keys have never been written.
+     */
+    private static final class State {
+        // The number of distinct prefix, keys, budget, and encoding combinations whose snapshots are cached while frozen
+        private static final int MAX_SNAPSHOTS = 8;
+
+        static final State EMPTY = new State(HashTrieMap.empty(), new ContextValues[0], null);
+
+        private final HashTrieMap<String, ContextValues> entries;
+        private final ContextValues[] slots;
+        private final Object freezeKey;
+        private volatile Snapshot[] snapshots = new Snapshot[0];
+        // Serialized size of every entry, computed on first use and then maintained incrementally
+        private volatile long totalBytes = -1;
+        // A thawed state remembers the last state frozen from it, and a frozen state remembers the state it was
+        // frozen from, so freezing and thawing with the same key repeatedly swaps between two existing states
+        private volatile State frozen;
+        private final State thawed;
+
+        State(HashTrieMap<String, ContextValues> entries, ContextValues[] slots, Object freezeKey) {
+            this(entries, slots, freezeKey, null);
+        }
+
+        private State(HashTrieMap<String, ContextValues> entries, ContextValues[] slots, Object freezeKey,
+                      State thawed) {
+            this.entries = entries;
+            this.slots = slots;
+            this.freezeKey = freezeKey;
+            this.thawed = thawed;
+        }
+
+        long totalBytes() {
+            long bytes = totalBytes;
+            if (bytes < 0) {
+                long[] sum = new long[1];
+                entries.forEach((name, values) -> sum[0] += values.serializedSize());
+                bytes = sum[0];
+                totalBytes = bytes;
+            }
+            return bytes;
+        }
+
+        @Nullable
+        ContextValues slot(int slot) {
+            return slot < slots.length ? slots[slot] : null;
+        }
+
+        /**
+         * @return a copy of this state with {@code values} stored under {@code name}, or with {@code name} removed if
+         *     {@code values} is null
+         */
+        State with(String name, int slot, @Nullable ContextValues values) {
+            HashTrieMap<String, ContextValues> newEntries = values == null ?
+                    entries.remove(name) :
+                    entries.put(name, values);
+
+            ContextValues[] newSlots = slots;
+            if (slot >= 0) {
+                newSlots = Arrays.copyOf(slots, Math.max(slots.length, slot + 1));
+                newSlots[slot] = values;
+            }
+
+            State newState = new State(newEntries, newSlots, freezeKey);
+            long bytes = totalBytes;
+            if (bytes >= 0) {
+                newState.totalBytes = bytes - serializedSize(entries.get(name)) + serializedSize(values);
+            }
+            return newState;
+        }
+
+        State withFreezeKey(@Nullable Object newFreezeKey) {
+            if (newFreezeKey == null) {
+                if (thawed != null) {
+                    return thawed;
+                }
+                State newState = new State(entries, slots, null);
+                newState.totalBytes = totalBytes;
+                return newState;
+            }
+
+            State newState = frozen;
+            if (newState == null || newState.freezeKey != newFreezeKey) {
+                newState = new State(entries, slots, newFreezeKey, this);
+                newState.totalBytes = totalBytes;
+                frozen = newState;
+            }
+            return newState;
+        }
+
+        Metadata snapshot(String headerPrefix, AmbientContextPropagationPolicy.Keys keys,
+                          AmbientContextBudget headerBudget, AmbientContextEncoding encoding) {
+            Snapshot[] current = snapshots;
+            for (Snapshot snapshot : current) {
+                if (snapshot.matches(headerPrefix, keys, headerBudget, encoding)) {
+                    snapshot.recountViolations();
+                    return snapshot.headers;
+                }
+            }
+
+            long[] violations = headerBudget.isUnlimited() ? null : new long[AmbientContextBudget.Limit.values().length];
+            Metadata headers = encode(entries, headerPrefix, keys, headerBudget, encoding, violations);
+            if (current.length < MAX_SNAPSHOTS) {
+                Snapshot[] updated = Arrays.copyOf(current, current.length + 1);
+                updated[current.length] = new Snapshot(headerPrefix, keys, headerBudget, encoding, headers,
+                        violations);
+                snapshots = updated;
+            }
+            return headers;
+        }
+    }
+
+    /**
+     * Serialized outbound headers, the prefix, keys, budget, and encoding they were built with, and the budget
+     * violations found while building them.
+     */
+    private static final class Snapshot {
+        private final String headerPrefix;
+        private final AmbientContextPropagationPolicy.Keys keys;
+        private final AmbientContextBudget budget;
+        private final AmbientContextEncoding encoding;
+        private final Metadata headers;
+        @Nullable
+        private final long[] violations;
+
+        Snapshot(String headerPrefix, AmbientContextPropagationPolicy.Keys keys, AmbientContextBudget budget,
+                 AmbientContextEncoding encoding, Metadata headers, @Nullable long[] violations) {
+            this.headerPrefix = headerPrefix;
+            this.keys = keys;
+            this.budget = budget;
+            this.encoding = encoding;
+            this.headers = headers;
+            this.violations = violations;
+        }
+
+        /**
+         * Counts the budget violations of these headers again, for another outbound call that uses them.
+         */
+        void recountViolations() {
+            if (violations == null) {
+                return;
+            }
+            for (AmbientContextBudget.Limit limit : AmbientContextBudget.Limit.values()) {
+                if (violations[limit.ordinal()] > 0) {
+                    budget.recordViolations(limit, violations[limit.ordinal()]);
+                }
+            }
+        }
+
+        boolean matches(String otherPrefix, AmbientContextPropagationPolicy.Keys otherKeys,
+                        AmbientContextBudget otherBudget, AmbientContextEncoding otherEncoding) {
+            return keys == otherKeys && budget == otherBudget && encoding == otherEncoding &&
+                    headerPrefix.equals(otherPrefix);
+        }
     }
 }
@@ -0,0 +1,236 @@
+/*
+ *  Copyright (c) 2019, Salesforce.com, Inc.
+ *  All rights reserved.
+ *  Licensed under the BSD 3-Clause license.
+ *  For full license text, see LICENSE.txt file in the repo root  or https://opensource.org/licenses/BSD-3-Clause
+ */
+
+package com.salesforce.grpc.contrib.context;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * {@code AmbientContextBudget} bounds how much data an ambient context may carry. Without a budget, a single oversized
+ * value placed in the ambient context by a misbehaving service is re-propagated by every hop of the call graph.
+ *
+ * <p>A budget can limit the total serialized size of the ambient context, the number of keys, and the number of values
+ * per key. Each limit has a {@link Policy} that decides what happens when the limit is exceeded, and a counter
+ * recording how often the limit fired. Budgets are enforced by {@link AmbientContext#put(io.grpc.Metadata.Key, Object)},
+ * by {@link AmbientContextServerInterceptor} for inbound headers, and by {@link AmbientContextClientInterceptor} for
+ * outbound headers.
+ *
+ * <pre>
+ * AmbientContextBudget budget = AmbientContextBudget.newBuilder()
+ *         .maxTotalBytes(8192, AmbientContextBudget.Policy.DROP_KEY)
+ *         .maxKeys(32, AmbientContextBudget.Policy.FAIL)
+ *         .maxValuesPerKey(4, AmbientContextBudget.Policy.TRUNCATE)
+ *         .build();
+ * </pre>
+ */
+public final class AmbientContextBudget {
+    /**
+     * A budget that does not limit the ambient context.
+     */
+    public static final AmbientContextBudget UNLIMITED = newBuilder().build();
+
+    /**
+     * The limits a budget can enforce.
+     */
+    public enum Limit {
+        /**
+         * The total size of all serialized ambient context names and values, in bytes.
+         */
+        TOTAL_BYTES,
+        /**
+         * The number of distinct ambient context keys.
+         */
+        KEYS,
+        /**
+         * The number of values stored under a single ambient context key.
+         */
+        VALUES_PER_KEY
+    }
+
+    /**
+     * What to do with a value that would exceed a limit.
+     */
+    public enum Policy {
+        /**
+         * Discard the value that would exceed the limit, keeping the values that fit.
+         */
+        TRUNCATE,
+        /**
+         * Discard every value of the key that would exceed the limit.
+         */
+        DROP_KEY,
+        /**
+         * Reject the operation. {@code AmbientContext.put()} and {@code AmbientContextClientInterceptor} throw a
+         * {@link BudgetExceededException}, and {@code AmbientContextServerInterceptor} closes the call with
+         * {@code RESOURCE_EXHAUSTED}.
+         */
+        FAIL
+    }
+
+    /**
+     * BudgetExceededException is thrown when a limit with the {@link Policy#FAIL} policy is exceeded.
+     */
+    public static class BudgetExceededException extends RuntimeException {
+        private final Limit limit;
+
+        public BudgetExceededException(Limit limit, String message) {
+            super(message);
+            this.limit = limit;
+        }
+
+        /**
+         * @return the limit that was exceeded
+         */
+        public Limit getLimit() {
+            return limit;
+        }
+    }
+
+    /**
+     * @return a new {@code AmbientContextBudget} builder
+     */
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    private final long maxTotalBytes;
+    private final int maxKeys;
+    private final int maxValuesPerKey;
+    private final Map<Limit, Policy> policies;
+    private final Map<Limit, LongAdder> violations = new EnumMap<>(Limit.class);
+
+    private AmbientContextBudget(Builder builder) {
+        this.maxTotalBytes = builder.maxTotalBytes;
+        this.maxKeys = builder.maxKeys;
+        this.maxValuesPerKey = builder.maxValuesPerKey;
+        this.policies = new EnumMap<>(builder.policies);
+        for (Limit limit : Limit.values()) {
+            violations.put(limit, new LongAdder());
+        }
+    }
+
+    /**
+     * @return how many times {@code limit} has been exceeded since this budget was created
+     */
+    public long violations(Limit limit) {
+        return violations.get(limit).sum();
+    }
+
+    /**
+     * @return the policy applied when {@code limit} is exceeded, or {@code null} if the limit is not set
+     */
+    public Policy policy(Limit limit) {
+        return policies.get(limit);
+    }
+
+    boolean isUnlimited() {
+        return policies.isEmpty();
+    }
+
+    boolean limitsTotalBytes() {
+        return policies.containsKey(Limit.TOTAL_BYTES);
+    }
+
+    boolean exceedsTotalBytes(long totalBytes) {
+        return limitsTotalBytes() && totalBytes > maxTotalBytes;
+    }
+
+    long maxTotalBytes() {
+        return maxTotalBytes;
+    }
+
+    boolean exceedsKeys(int keys) {
+        return policies.containsKey(Limit.KEYS) && keys > maxKeys;
+    }
+
+    boolean exceedsValuesPerKey(int values) {
+        return policies.containsKey(Limit.VALUES_PER_KEY) && values > maxValuesPerKey;
+    }
+
+    int maxValuesPerKey() {
+        return maxValuesPerKey;
+    }
+
+    void recordViolation(Limit limit) {
+        violations.get(limit).increment();
+    }
+
+    void recordViolations(Limit limit, long count) {
+        violations.get(limit).add(count);
+    }
+
+    /**
+     * Counts a violation of {@code limit} and returns the policy to apply, throwing if the policy is
+     * {@link Policy#FAIL}.
+     */
+    Policy violate(Limit limit, String name) {
+        recordViolation(limit);
+        Policy policy = policies.get(limit);
+        if (policy == Policy.FAIL) {
+            throw new BudgetExceededException(limit, "Ambient context key " + name + " exceeds the " + limit + " limit");
+        }
+        return policy;
+    }
+
+    @Override
+    public String toString() {
+        return "AmbientContextBudget{maxTotalBytes=" + maxTotalBytes + ", maxKeys=" + maxKeys +
+                ", maxValuesPerKey=" + maxValuesPerKey + ", policies=" + policies + "}";
+    }
+
+    /**
+     * Builds an {@link AmbientContextBudget}. Limits that are not set are not enforced.
+     */
+    public static final class Builder {
+        private long maxTotalBytes = Long.MAX_VALUE;
+        private int maxKeys = Integer.MAX_VALUE;
+        private int maxValuesPerKey = Integer.MAX_VALUE;
+        private final Map<Limit, Policy> policies = new EnumMap<>(Limit.class);
+
+        private Builder() { }
+
+        /**
+         * Limits the total size of all serialized ambient context names and values.
+         */
+        public Builder maxTotalBytes(long maxTotalBytes, Policy policy) {
+            checkArgument(maxTotalBytes >= 0, "maxTotalBytes must be non-negative");
+            this.maxTotalBytes = maxTotalBytes;
+            policies.put(Limit.TOTAL_BYTES, checkNotNull(policy, "policy"));
+            return this;
+        }
+
+        /**
+         * Limits the number of distinct ambient context keys. {@link Policy#TRUNCATE} and {@link Policy#DROP_KEY}
+         * behave identically for this limit: the key that would exceed the limit is discarded.
+         */
+        public Builder maxKeys(int maxKeys, Policy policy) {
+            checkArgument(maxKeys >= 0, "maxKeys must be non-negative");
+            this.maxKeys = maxKeys;
+            policies.put(Limit.KEYS, checkNotNull(policy, "policy"));
+            return this;
+        }
+
+        /**
+         * Limits the number of values stored under a single ambient context key.
+         */
+        public Builder maxValuesPerKey(int maxValuesPerKey, Policy policy) {
+            checkArgument(maxValuesPerKey >= 0, "maxValuesPerKey must be non-negative");
+            this.maxValuesPerKey = maxValuesPerKey;
+            policies.put(Limit.VALUES_PER_KEY, checkNotNull(policy, "policy"));
+            return this;
+        }
+
+        public AmbientContextBudget build() {
+            return new AmbientContextBudget(this);
+        }
+    }
+}
@@ -7,8 +7,14 @@
 
 package com.salesforce.grpc.contrib.context;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import io.grpc.*;
 
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
 /**
  * {@code AmbientContextClientInterceptor} transparently deserializes prefixed request headers into an ambient context.
  * Header values can be accessed using the {@link AmbientContext} class.
@@ -16,10 +22,27 @@ import io.grpc.*;
  * <p>Each {@code AmbientContextClientInterceptor} marshals headers with a know prefix. If multiple prefixes are needed,
  * add multiple {@code AmbientContextClientInterceptor} instances to the gRPC interceptor chain.
  *
+ * <p>An optional {@link AmbientContextPropagationPolicy} limits which keys are propagated to each method. Keys that
+ * a method does not need are never serialized onto its calls.
+ *
+ * <p>An optional {@link AmbientContextEncoding} packs every propagated key into a single header. The
+ * {@link AmbientContextServerInterceptor} of every called service must use the same encoding.
+ *
+ * <p>An optional {@link AmbientContextBudget} bounds the outbound headers. If a budget limit with the {@code FAIL}
+ * policy is exceeded, the call fails with {@code RESOURCE_EXHAUSTED} before any headers are sent. The failure is
+ * delivered on the call's executor, if {@code CallOptions} has one, and never from within {@code start()}.
+ *
  * <p>See package javadoc for more info.
  */
 public class AmbientContextClientInterceptor implements ClientInterceptor {
-    private String headerPrefix;
+    // Delivers budget failures of calls without an executor of their own
+    private static final Executor FAILURE_EXECUTOR = Executors.newCachedThreadPool(
+            new ThreadFactoryBuilder().setNameFormat("grpc-ambient-context-failure-%d").setDaemon(true).build());
+
+    private final String headerPrefix;
+    private final AmbientContextPropagationPolicy policy;
+    private final AmbientContextBudget budget;
+    private final AmbientContextEncoding encoding;
 
     /**
      * Constructs an {@code AmbientContextClientInterceptor} that marshals request headers with a know prefix into the
@@ -28,44 +51,126 @@ public class AmbientContextClientInterceptor implements ClientInterceptor {
      * @param headerPrefix the header prefix to marshal.
      */
     public AmbientContextClientInterceptor(String headerPrefix) {
+        this(headerPrefix, AmbientContextPropagationPolicy.PROPAGATE_ALL, AmbientContextBudget.UNLIMITED);
+    }
+
+    /**
+     * Constructs an {@code AmbientContextClientInterceptor} that marshals request headers with a know prefix into the
+     * {@link AmbientContext}, limited to {@code budget}.
+     *
+     * @param headerPrefix the header prefix to marshal.
+     * @param budget the budget enforced on outbound headers.
+     */
+    public AmbientContextClientInterceptor(String headerPrefix, AmbientContextBudget budget) {
+        this(headerPrefix, AmbientContextPropagationPolicy.PROPAGATE_ALL, budget);
+    }
+
+    /**
+     * Constructs an {@code AmbientContextClientInterceptor} that marshals request headers with a know prefix into the
+     * {@link AmbientContext}, propagating only the keys {@code policy} selects for each method.
+     *
+     * @param headerPrefix the header prefix to marshal.
+     * @param policy the policy selecting which keys to propagate to each method.
+     */
+    public AmbientContextClientInterceptor(String headerPrefix, AmbientContextPropagationPolicy policy) {
+        this(headerPrefix, policy, AmbientContextBudget.UNLIMITED);
+    }
+
+    /**
+     * Constructs an {@code AmbientContextClientInterceptor} that marshals request headers with a know prefix into the
+     * {@link AmbientContext}, propagating only the keys {@code policy} selects for each method, limited to
+     * {@code budget}.
+     *
+     * @param headerPrefix the header prefix to marshal.
+     * @param policy the policy selecting which keys to propagate to each method.
+     * @param budget the budget enforced on outbound headers.
+     */
+    public AmbientContextClientInterceptor(String headerPrefix, AmbientContextPropagationPolicy policy,
+                                           AmbientContextBudget budget) {
+        this(headerPrefix, policy, budget, AmbientContextEncoding.HEADERS);
+    }
+
+    /**
+     * Constructs an {@code AmbientContextClientInterceptor} that marshals request headers with a know prefix into the
+     * {@link AmbientContext}, using {@code encoding} on the wire.
+     *
+     * @param headerPrefix the header prefix to marshal.
+     * @param encoding the wire encoding of the propagated headers.
+     */
+    public AmbientContextClientInterceptor(String headerPrefix, AmbientContextEncoding encoding) {
+        this(headerPrefix, AmbientContextPropagationPolicy.PROPAGATE_ALL, AmbientContextBudget.UNLIMITED, encoding);
+    }
+
+    /**
+     * Constructs an {@code AmbientContextClientInterceptor} that marshals request headers with a know prefix into the
+     * {@link AmbientContext}, propagating only the keys {@code policy} selects for each method, limited to
+     * {@code budget}, using {@code encoding} on the wire.
+     *
+     * @param headerPrefix the header prefix to marshal.
+     * @param policy the policy selecting which keys to propagate to each method.
+     * @param budget the budget enforced on outbound headers.
+     * @param encoding the wire encoding of the propagated headers.
+     */
+    public AmbientContextClientInterceptor(String headerPrefix, AmbientContextPropagationPolicy policy,
+                                           AmbientContextBudget budget, AmbientContextEncoding encoding) {
         this.headerPrefix = headerPrefix;
+        this.policy = checkNotNull(policy, "policy");
+        this.budget = checkNotNull(budget, "budget");
+        this.encoding = checkNotNull(encoding, "encoding");
     }
 
     @Override
     public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(MethodDescriptor<ReqT, RespT> method, CallOptions callOptions, Channel next) {
-        if (AmbientContext.isPresent()) {
+        // Keys are resolved once per method and cached by the policy
+        AmbientContextPropagationPolicy.Keys keys = policy.keysFor(method);
+        if (AmbientContext.isPresent() && !keys.isNone()) {
             return new ForwardingClientCall.SimpleForwardingClientCall<ReqT, RespT>(next.newCall(method, callOptions)) {
+                // Set when the budget fails the call, after which the delegate is cancelled and never started
+                private boolean failed;
+
                 @Override
                 public void start(Listener<RespT> responseListener, Metadata headers) {
-                    AmbientContext ctx = AmbientContext.current();
+                    AmbientContext ctx = AmbientContext.DATA_KEY.get();
                     if (ctx != null) {
-                        for (String keyString : ctx.keys()) {
-                            if (keyString.startsWith(headerPrefix)) {
-                                if (keyString.endsWith(Metadata.BINARY_HEADER_SUFFIX)) {
-                                    Metadata.Key<byte[]> key = Metadata.Key.of(keyString, Metadata.BINARY_BYTE_MARSHALLER);
-                                    Iterable<byte[]> values = ctx.getAll(key);
-                                    if (values != null) {
-                                        for (byte[] value : values) {
-                                            headers.put(key, value);
-                                        }
-                                    }
-                                } else {
-                                    Metadata.Key<String> key = Metadata.Key.of(keyString, Metadata.ASCII_STRING_MARSHALLER);
-                                    Iterable<String> values = ctx.getAll(key);
-                                    if (values != null) {
-                                        for (String value : values) {
-                                            headers.put(key, value);
-                                        }
-                                    }
-                                }
-                            }
+                        try {
+                            headers.merge(ctx.propagatedHeaders(headerPrefix, keys, budget, encoding));
+                        } catch (AmbientContextBudget.BudgetExceededException ex) {
+                            failed = true;
+                            delegate().cancel(ex.getMessage(), ex);
+                            // Listeners are never called from start(), so close the call as its transport would
+                            Status status = Status.RESOURCE_EXHAUSTED.withDescription(ex.getMessage()).withCause(ex);
+                            Executor executor = callOptions.getExecutor();
+                            (executor != null ? executor : FAILURE_EXECUTOR).execute(Context.current().wrap(
+                                    () -> responseListener.onClose(status, new Metadata())));
+                            return;
                         }
                     }
                     super.start(responseListener, headers);
                 }
+
+                @Override
+                public void request(int numMessages) {
+                    if (!failed) {
+                        super.request(numMessages);
+                    }
+                }
+
+                @Override
+                public void sendMessage(ReqT message) {
+                    if (!failed) {
+                        super.sendMessage(message);
+                    }
+                }
+
+                @Override
+                public void halfClose() {
+                    if (!failed) {
+                        super.halfClose();
+                    }
+                }
             };
         } else {
-            // Noop if ambient context is absent
+            // Noop if ambient context is absent, or the method needs none of its keys
             return next.newCall(method, callOptions);
         }
     }
@@ -0,0 +1,266 @@
+/*
+ *  Copyright (c) 2019, Salesforce.com, Inc.
+ *  All rights reserved.
+ *  Licensed under the BSD 3-Clause license.
+ *  For full license text, see LICENSE.txt file in the repo root  or https://opensource.org/licenses/BSD-3-Clause
+ */
+
+package com.salesforce.grpc.contrib.context;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.WireFormat;
+import io.grpc.Metadata;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * {@code AmbientContextEncoding} selects how {@link AmbientContextClientInterceptor} and
+ * {@link AmbientContextServerInterceptor} put the ambient context on the wire.
+ *
+ * <p>{@link #HEADERS}, the default, sends each ambient context key as its own header. {@link #packed(String...)}
+ * packs every propagated key into a single binary header named {@code <prefix>packed-bin}, so a deep call chain pays
+ * for one header and one HPACK table entry instead of one per key. A server using the packed encoding also accepts
+ * individual headers, so clients can be migrated one at a time. Clients must not use the packed encoding until every
+ * server they call does.
+ *
+ * <p>The packed header holds a protobuf message, equivalent to:
+ * <pre>
+ * message PackedContext {
+ *     repeated Entry entries = 1;
+ * }
+ * message Entry {
+ *     string name_suffix = 1;          // key name, without the header prefix
+ *     uint32 dictionary_index = 2;     // or, the key name's index in the dictionary
+ *     repeated bytes values = 3;       // serialized values, in order
+ * }
+ * </pre>
+ *
+ * <p>Key names found in the optional dictionary are sent as a small integer instead of a string. Clients and servers
+ * must be configured with the same dictionary, in the same order. Names can be appended to the end of the dictionary
+ * without breaking compatibility, provided servers are updated before clients.
+ */
+public final class AmbientContextEncoding {
+    /**
+     * Sends each ambient context key as its own header.
+     */
+    public static final AmbientContextEncoding HEADERS = new AmbientContextEncoding(false, new String[0]);
+
+    static final String PACKED_HEADER_SUFFIX = "packed" + Metadata.BINARY_HEADER_SUFFIX;
+
+    private static final int ENTRY_FIELD = 1;
+    private static final int NAME_SUFFIX_FIELD = 1;
+    private static final int DICTIONARY_INDEX_FIELD = 2;
+    private static final int VALUES_FIELD = 3;
+    // Protobuf tags are the field number shifted left three bits, or'd with the wire type
+    private static final int TAG_TYPE_BITS = 3;
+    private static final int ENTRY_TAG = (ENTRY_FIELD << TAG_TYPE_BITS) | WireFormat.WIRETYPE_LENGTH_DELIMITED;
+    private static final int NAME_SUFFIX_TAG = (NAME_SUFFIX_FIELD << TAG_TYPE_BITS) | WireFormat.WIRETYPE_LENGTH_DELIMITED;
+    private static final int DICTIONARY_INDEX_TAG = (DICTIONARY_INDEX_FIELD << TAG_TYPE_BITS) | WireFormat.WIRETYPE_VARINT;
+    private static final int VALUES_TAG = (VALUES_FIELD << TAG_TYPE_BITS) | WireFormat.WIRETYPE_LENGTH_DELIMITED;
+
+    private final boolean packed;
+    private final String[] dictionary;
+    private final Map<String, Integer> dictionaryIndex = new HashMap<>();
+    // Packed header keys, one per header prefix
+    private final MetadataKeyCache packedKeys = new MetadataKeyCache(16);
+
+    private AmbientContextEncoding(boolean packed, String[] dictionary) {
+        this.packed = packed;
+        this.dictionary = dictionary;
+        for (int i = 0; i < dictionary.length; i++) {
+            dictionaryIndex.putIfAbsent(dictionary[i], i);
+        }
+    }
+
+    /**
+     * Packs every propagated ambient context key into a single binary header.
+     *
+     * @param dictionary well-known key names to send as integers instead of strings. Clients and servers must use
+     *                   the same dictionary.
+     */
+    public static AmbientContextEncoding packed(String... dictionary) {
+        checkNotNull(dictionary, "dictionary");
+        String[] normalized = new String[dictionary.length];
+        for (int i = 0; i < dictionary.length; i++) {
+            normalized[i] = checkNotNull(dictionary[i], "dictionary must not contain null").toLowerCase(Locale.ROOT);
+        }
+        return new AmbientContextEncoding(true, normalized);
+    }
+
+    boolean isPacked() {
+        return packed;
+    }
+
+    /**
+     * @return the name of the packed header for {@code headerPrefix}
+     */
+    static String packedHeaderName(String headerPrefix) {
+        return headerPrefix + PACKED_HEADER_SUFFIX;
+    }
+
+    /**
+     * Packs serialized ambient context headers, all starting with {@code headerPrefix}, into a single header.
+     */
+    Metadata pack(Metadata headers, String headerPrefix) {
+        byte[][] serialized = MetadataKeyCache.serialize(headers);
+        if (serialized.length == 0) {
+            return headers;
+        }
+        String[] names = new String[serialized.length / 2];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = new String(serialized[i * 2], StandardCharsets.US_ASCII);
+        }
+
+        // Consecutive values of the same key share an entry
+        int size = 0;
+        int[] entrySizes = new int[names.length];
+        for (int start = 0, end; start < names.length; start = end) {
+            end = endOfEntry(names, start);
+            entrySizes[start] = entrySize(names[start], headerPrefix, serialized, start, end);
+            size += CodedOutputStream.computeTagSize(ENTRY_FIELD) +
+                    CodedOutputStream.computeUInt32SizeNoTag(entrySizes[start]) + entrySizes[start];
+        }
+
+        byte[] packedBytes = new byte[size];
+        CodedOutputStream out = CodedOutputStream.newInstance(packedBytes);
+        try {
+            for (int start = 0, end; start < names.length; start = end) {
+                end = endOfEntry(names, start);
+                out.writeTag(ENTRY_FIELD, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+                out.writeUInt32NoTag(entrySizes[start]);
+                Integer index = dictionaryIndex.get(names[start]);
+                if (index != null) {
+                    out.writeUInt32(DICTIONARY_INDEX_FIELD, index);
+                } else {
+                    out.writeString(NAME_SUFFIX_FIELD, names[start].substring(headerPrefix.length()));
+                }
+                for (int i = start; i < end; i++) {
+                    out.writeByteArray(VALUES_FIELD, serialized[i * 2 + 1]);
+                }
+            }
+            out.checkNoSpaceLeft();
+        } catch (IOException ex) {
+            // Writing to a correctly sized array cannot fail
+            throw new IllegalStateException(ex);
+        }
+
+        Metadata packedHeaders = new Metadata();
+        packedHeaders.put(packedKeys.key(packedHeaderName(headerPrefix)), packedBytes);
+        return packedHeaders;
+    }
+
+    private static int endOfEntry(String[] names, int start) {
+        int end = start + 1;
+        while (end < names.length && names[end].equals(names[start])) {
+            end++;
+        }
+        return end;
+    }
+
+    private int entrySize(String name, String headerPrefix, byte[][] serialized, int start, int end) {
+        Integer index = dictionaryIndex.get(name);
+        int size = index != null ?
+                CodedOutputStream.computeUInt32Size(DICTIONARY_INDEX_FIELD, index) :
+                CodedOutputStream.computeStringSize(NAME_SUFFIX_FIELD, name.substring(headerPrefix.length()));
+        for (int i = start; i < end; i++) {
+            size += CodedOutputStream.computeByteArraySize(VALUES_FIELD, serialized[i * 2 + 1]);
+        }
+        return size;
+    }
+
+    /**
+     * Receives the key/value pairs unpacked from a packed header.
+     */
+    interface UnpackedEntryConsumer {
+        void accept(Metadata.Key<byte[]> key, byte[] value);
+    }
+
+    /**
+     * Unpacks a packed header, passing each value to {@code consumer} with its raw {@code Metadata.Key}.
+     *
+     * @throws IllegalArgumentException if the packed header is malformed
+     */
+    void unpack(byte[] packedBytes, String headerPrefix, MetadataKeyCache keyCache, UnpackedEntryConsumer consumer) {
+        try {
+            CodedInputStream in = CodedInputStream.newInstance(packedBytes);
+            int tag;
+            while ((tag = in.readTag()) != 0) {
+                if (tag != ENTRY_TAG) {
+                    in.skipField(tag);
+                    continue;
+                }
+                int limit = in.pushLimit(in.readRawVarint32());
+                unpackEntry(in, headerPrefix, keyCache, consumer);
+                in.popLimit(limit);
+            }
+        } catch (IOException ex) {
+            throw new IllegalArgumentException("Malformed packed ambient context header", ex);
+        }
+    }
+
+    private void unpackEntry(CodedInputStream in, String headerPrefix, MetadataKeyCache keyCache,
+                             UnpackedEntryConsumer consumer) throws IOException {
+        String name = null;
+        Metadata.Key<byte[]> key = null;
+        int tag;
+        while ((tag = in.readTag()) != 0) {
+            switch (tag) {
+                case NAME_SUFFIX_TAG:
+                    name = headerPrefix + in.readString();
+                    break;
+                case DICTIONARY_INDEX_TAG:
+                    int index = in.readUInt32();
+                    if (index >= dictionary.length) {
+                        throw new IllegalArgumentException("Unknown packed ambient context dictionary index " + index);
+                    }
+                    name = dictionary[index];
+                    break;
+                case VALUES_TAG:
+                    if (key == null) {
+                        key = validKey(name, headerPrefix, keyCache);
+                    }
+                    byte[] value = in.readByteArray();
+                    if (!MetadataKeyCache.isBinary(name)) {
+                        checkAscii(name, value);
+                    }
+                    consumer.accept(key, value);
+                    break;
+                default:
+                    in.skipField(tag);
+            }
+        }
+    }
+
+    private static Metadata.Key<byte[]> validKey(String name, String headerPrefix, MetadataKeyCache keyCache) {
+        if (name == null) {
+            throw new IllegalArgumentException("Packed ambient context entry has no name");
+        }
+        if (!name.startsWith(headerPrefix) || name.equals(packedHeaderName(headerPrefix))) {
+            throw new IllegalArgumentException("Packed ambient context key " + name + " is not allowed");
+        }
+        // Metadata.Key validates the name
+        return keyCache.key(name);
+    }
+
+    private static void checkAscii(String name, byte[] value) {
+        for (byte b : value) {
+            if (b < ' ' || b > '~') {
+                throw new IllegalArgumentException("Packed ambient context key " + name + " has a non-ASCII value");
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return packed ? "AmbientContextEncoding{packed, dictionary=" + Arrays.toString(dictionary) + "}" :
+                "AmbientContextEncoding{headers}";
+    }
+}
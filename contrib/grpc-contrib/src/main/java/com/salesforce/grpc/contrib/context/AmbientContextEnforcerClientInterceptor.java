@@ -18,7 +18,7 @@ import io.grpc.*;
  * failing downstream service calls if the ambient context is missing or incomplete.
  */
 public class AmbientContextEnforcerClientInterceptor implements ClientInterceptor {
-    private String[] requiredContextKeys = {};
+    private RequiredContextKeys requiredContextKeys = RequiredContextKeys.NONE;
 
     /**
      * Constructs an {@code AmbientContextEnforcerClientInterceptor} with no required context keys.
@@ -30,7 +30,7 @@ public class AmbientContextEnforcerClientInterceptor implements ClientIntercepto
      * Constructs an {@code AmbientContextEnforcerClientInterceptor} with a set of required context keys.
      */
     public AmbientContextEnforcerClientInterceptor(String... requiredContextKeys) {
-        this.requiredContextKeys = requiredContextKeys;
+        this.requiredContextKeys = RequiredContextKeys.of(requiredContextKeys);
     }
 
     /**
@@ -45,15 +45,15 @@ public class AmbientContextEnforcerClientInterceptor implements ClientIntercepto
     @Override
     public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(MethodDescriptor<ReqT, RespT> method, CallOptions callOptions, Channel next) {
         // Throw if ambient context is missing
-        if (!AmbientContext.isPresent()) {
+        AmbientContext ctx = AmbientContext.DATA_KEY.get();
+        if (ctx == null) {
             throw missingContextException();
         }
 
         // Throw if required context keys are missing
-        for (String requiredKey : requiredContextKeys) {
-            if (!AmbientContext.current().keys().contains(requiredKey)) {
-                throw incompleteContextException(requiredKey);
-            }
+        String missingKey = ctx.firstMissingKey(requiredContextKeys);
+        if (missingKey != null) {
+            throw incompleteContextException(missingKey);
         }
 
         return next.newCall(method, callOptions);
@@ -9,15 +9,36 @@ package com.salesforce.grpc.contrib.context;
 
 import io.grpc.*;
 
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
 /**
  * Some uses of ambient context, like distributed tracing, break down if a service fails to propagate the context
  * to downstream services.
  *
  * <p>{@code AmbientContextEnforcerServerInterceptor} is used to enforce context propagation by <i>catastrophically</i>
  * failing a service call if the ambient context is missing or incomplete.
+ *
+ * <p>Required keys can vary by method by overriding {@link #requiredContextKeys(MethodDescriptor)}, which can also
+ * exempt methods like health checks and server reflection from enforcement entirely. Each method's requirements are
+ * resolved and precompiled the first time it is called.
+ * <pre>
+ * new AmbientContextEnforcerServerInterceptor("ctx-trace-id") {
+ *     protected Collection&lt;String&gt; requiredContextKeys(MethodDescriptor&lt;?, ?&gt; method) {
+ *         return "grpc.health.v1.Health".equals(method.getServiceName()) ?
+ *                 null : super.requiredContextKeys(method);
+ *     }
+ * };
+ * </pre>
  */
 public class AmbientContextEnforcerServerInterceptor implements ServerInterceptor {
+    // Marks methods exempt from enforcement in the requirements cache
+    private static final RequiredContextKeys EXEMPT = new RequiredContextKeys(new String[0]);
+
     private String[] requiredContextKeys = {};
+    private final ConcurrentMap<String, RequiredContextKeys> requirementsByMethod = new ConcurrentHashMap<>();
 
     /**
      * Constructs an {@code AmbientContextEnforcerServerInterceptor} with no required context keys.
@@ -34,23 +55,50 @@ public class AmbientContextEnforcerServerInterceptor implements ServerIntercepto
 
     @Override
     public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers, ServerCallHandler<ReqT, RespT> next) {
+        RequiredContextKeys required = requirements(call.getMethodDescriptor());
+        if (required == EXEMPT) {
+            return next.startCall(call, headers);
+        }
+
         // Throw if ambient context is missing
-        if (!AmbientContext.isPresent()) {
+        AmbientContext ctx = AmbientContext.DATA_KEY.get();
+        if (ctx == null) {
             call.close(missingContextStatus(), new Metadata());
             return new ServerCall.Listener<ReqT>() { };
         }
 
         // Throw if required context keys are missing
-        for (String requiredKey : requiredContextKeys) {
-            if (!AmbientContext.current().keys().contains(requiredKey)) {
-                call.close(incompleteContextStatus(requiredKey), new Metadata());
-                return new ServerCall.Listener<ReqT>() { };
-            }
+        String missingKey = ctx.firstMissingKey(required);
+        if (missingKey != null) {
+            call.close(incompleteContextStatus(missingKey), new Metadata());
+            return new ServerCall.Listener<ReqT>() { };
         }
 
         return next.startCall(call, headers);
     }
 
+    private RequiredContextKeys requirements(MethodDescriptor<?, ?> method) {
+        RequiredContextKeys required = requirementsByMethod.get(method.getFullMethodName());
+        if (required == null) {
+            Collection<String> keys = requiredContextKeys(method);
+            required = keys == null ? EXEMPT : RequiredContextKeys.of(keys);
+            requirementsByMethod.putIfAbsent(method.getFullMethodName(), required);
+        }
+        return required;
+    }
+
+    /**
+     * Override this method to require different context keys for different methods. It is called once per method,
+     * the first time the method is called, and the result is cached.
+     *
+     * @return the context keys required by {@code method}, or {@code null} to skip enforcement for {@code method}
+     *     entirely, including the check that an ambient context is present. By default, every method requires the
+     *     context keys passed to the constructor.
+     */
+    protected Collection<String> requiredContextKeys(MethodDescriptor<?, ?> method) {
+        return Arrays.asList(requiredContextKeys);
+    }
+
     /**
      * Override this method to change the gRPC {@code Status} returned when the ambient context is missing
      * entirely, perhaps to reference your own internal documentation.
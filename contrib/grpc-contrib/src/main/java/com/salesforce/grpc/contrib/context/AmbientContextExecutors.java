@@ -0,0 +1,332 @@
+/*
+ *  Copyright (c) 2019, Salesforce.com, Inc.
+ *  All rights reserved.
+ *  Licensed under the BSD 3-Clause license.
+ *  For full license text, see LICENSE.txt file in the repo root  or https://opensource.org/licenses/BSD-3-Clause
+ */
+
+package com.salesforce.grpc.contrib.context;
+
+import com.salesforce.grpc.contrib.MoreFutures;
+import io.grpc.Context;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.function.UnaryOperator;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * {@code AmbientContextExecutors} decorates executors so that tasks run with the gRPC {@code Context} and
+ * {@link AmbientContext} of the code that submitted them, rather than losing both when work hops to another thread.
+ *
+ * <p>Each task sees a frozen snapshot of the ambient context as it was when the task was submitted. Later changes
+ * made by the submitting code are not visible to the task, and the task cannot modify the submitter's ambient
+ * context. Snapshots are constant time to create and are shared by every task submitted while the ambient context
+ * is unchanged, so the only per-task allocation is the task wrapper itself.
+ *
+ * <p>This holds even for thread-safe ambient contexts: parallel sub-tasks always get a frozen snapshot, so they cannot
+ * enrich the parent's ambient context. Sub-tasks should return their results to the parent instead, which can then
+ * add them to its own ambient context.
+ *
+ * <pre>
+ * ExecutorService executor = AmbientContextExecutors.wrap(Executors.newFixedThreadPool(8));
+ * CompletableFuture.supplyAsync(() -&gt; AmbientContext.current().get(TENANT_ID), executor);
+ * </pre>
+ *
+ * <p>To run {@link com.salesforce.grpc.contrib.FutureChain} and {@link MoreFutures} callbacks in the context they
+ * were registered from, pass them an executor decorated with {@link #fixedContextExecutor(Executor)}.
+ * {@link #installFutureHooks()} does this for every callback in the JVM, whichever executor it is given.
+ */
+public final class AmbientContextExecutors {
+    private AmbientContextExecutors() {
+        // prevent instantiation
+    }
+
+    /**
+     * Decorates {@code executor} so that each task runs in the context it was submitted from.
+     */
+    public static Executor wrap(Executor executor) {
+        checkNotNull(executor, "executor");
+        if (executor instanceof ContextExecutor || executor instanceof ContextExecutorService) {
+            return executor;
+        }
+        return new ContextExecutor(executor);
+    }
+
+    /**
+     * Decorates {@code executorService} so that each task runs in the context it was submitted from.
+     */
+    public static ExecutorService wrap(ExecutorService executorService) {
+        checkNotNull(executorService, "executorService");
+        if (executorService instanceof ContextExecutorService) {
+            return executorService;
+        }
+        return new ContextExecutorService(executorService);
+    }
+
+    /**
+     * Decorates {@code scheduledExecutorService} so that each task runs in the context it was scheduled from.
+     */
+    public static ScheduledExecutorService wrap(ScheduledExecutorService scheduledExecutorService) {
+        checkNotNull(scheduledExecutorService, "scheduledExecutorService");
+        if (scheduledExecutorService instanceof ContextScheduledExecutorService) {
+            return scheduledExecutorService;
+        }
+        return new ContextScheduledExecutorService(scheduledExecutorService);
+    }
+
+    /**
+     * Decorates {@code executor} so that every task runs in the current context, captured now, regardless of which
+     * context submits it. Use this for callbacks that are registered now but submitted later, by whichever thread
+     * completes a future.
+     */
+    public static Executor fixedContextExecutor(Executor executor) {
+        checkNotNull(executor, "executor");
+        Context captured = capture();
+        return task -> executor.execute(new ContextRunnable(captured, task));
+    }
+
+    /**
+     * Makes {@link com.salesforce.grpc.contrib.FutureChain} and {@link MoreFutures} callbacks run in the context
+     * they were registered from, by decorating their executors with {@link #fixedContextExecutor(Executor)}.
+     *
+     * <p>This installs the callback executor decorator of the whole JVM, which can only be installed once at a time.
+     * Libraries should pass {@link #fixedContextExecutor(Executor)} to the callbacks they register instead.
+     *
+     * @return a handle that removes the decorator when closed
+     * @throws IllegalStateException if future hooks or another callback executor decorator are already installed
+     */
+    public static FutureHooks installFutureHooks() {
+        // A new decorator instance for each install, so a stale handle can never remove a later install
+        UnaryOperator<Executor> decorator = new UnaryOperator<Executor>() {
+            @Override
+            public Executor apply(Executor executor) {
+                return fixedContextExecutor(executor);
+            }
+        };
+        MoreFutures.installCallbackExecutorDecorator(decorator);
+        return new FutureHooks(decorator);
+    }
+
+    /**
+     * Removes the callback executor decorator that {@link #installFutureHooks()} installed.
+     */
+    public static final class FutureHooks implements AutoCloseable {
+        private final UnaryOperator<Executor> decorator;
+
+        private FutureHooks(UnaryOperator<Executor> decorator) {
+            this.decorator = decorator;
+        }
+
+        @Override
+        public void close() {
+            MoreFutures.removeCallbackExecutorDecorator(decorator);
+        }
+    }
+
+    /**
+     * Captures the current gRPC {@code Context}, with its ambient context replaced by a frozen snapshot.
+     */
+    static Context capture() {
+        Context current = Context.current();
+        AmbientContext ambientContext = AmbientContext.DATA_KEY.get(current);
+        return ambientContext == null ? current : ambientContext.capture(current);
+    }
+
+    /**
+     * Runs a {@code Runnable} in a captured context.
+     */
+    private static final class ContextRunnable implements Runnable {
+        private final Context context;
+        private final Runnable delegate;
+
+        ContextRunnable(Context context, Runnable delegate) {
+            this.context = context;
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void run() {
+            Context previous = context.attach();
+            try {
+                delegate.run();
+            } finally {
+                context.detach(previous);
+            }
+        }
+    }
+
+    /**
+     * Runs a {@code Callable} in a captured context.
+     *
+     * @param <V> the result type
+     */
+    private static final class ContextCallable<V> implements Callable<V> {
+        private final Context context;
+        private final Callable<V> delegate;
+
+        ContextCallable(Context context, Callable<V> delegate) {
+            this.context = context;
+            this.delegate = delegate;
+        }
+
+        @Override
+        public V call() throws Exception {
+            Context previous = context.attach();
+            try {
+                return delegate.call();
+            } finally {
+                context.detach(previous);
+            }
+        }
+    }
+
+    private static Runnable contextual(Runnable task) {
+        return new ContextRunnable(capture(), checkNotNull(task, "task"));
+    }
+
+    private static <V> Callable<V> contextual(Callable<V> task) {
+        return new ContextCallable<>(capture(), checkNotNull(task, "task"));
+    }
+
+    private static <V> List<Callable<V>> contextual(Collection<? extends Callable<V>> tasks) {
+        Context captured = capture();
+        List<Callable<V>> contextualTasks = new ArrayList<>(tasks.size());
+        for (Callable<V> task : tasks) {
+            contextualTasks.add(new ContextCallable<>(captured, checkNotNull(task, "task")));
+        }
+        return contextualTasks;
+    }
+
+    /**
+     * An {@code Executor} that runs each task in the context it was submitted from.
+     */
+    private static final class ContextExecutor implements Executor {
+        private final Executor delegate;
+
+        ContextExecutor(Executor delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            delegate.execute(contextual(command));
+        }
+    }
+
+    /**
+     * An {@code ExecutorService} that runs each task in the context it was submitted from.
+     */
+    private static class ContextExecutorService implements ExecutorService {
+        private final ExecutorService delegate;
+
+        ContextExecutorService(ExecutorService delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            delegate.execute(contextual(command));
+        }
+
+        @Override
+        public <T> Future<T> submit(Callable<T> task) {
+            return delegate.submit(contextual(task));
+        }
+
+        @Override
+        public <T> Future<T> submit(Runnable task, T result) {
+            return delegate.submit(contextual(task), result);
+        }
+
+        @Override
+        public Future<?> submit(Runnable task) {
+            return delegate.submit(contextual(task));
+        }
+
+        @Override
+        public <T> List<Future<T>> invokeAll(Collection<? extends Callable<T>> tasks) throws InterruptedException {
+            return delegate.invokeAll(contextual(tasks));
+        }
+
+        @Override
+        public <T> List<Future<T>> invokeAll(Collection<? extends Callable<T>> tasks, long timeout, TimeUnit unit)
+                throws InterruptedException {
+            return delegate.invokeAll(contextual(tasks), timeout, unit);
+        }
+
+        @Override
+        public <T> T invokeAny(Collection<? extends Callable<T>> tasks)
+                throws InterruptedException, ExecutionException {
+            return delegate.invokeAny(contextual(tasks));
+        }
+
+        @Override
+        public <T> T invokeAny(Collection<? extends Callable<T>> tasks, long timeout, TimeUnit unit)
+                throws InterruptedException, ExecutionException, TimeoutException {
+            return delegate.invokeAny(contextual(tasks), timeout, unit);
+        }
+
+        @Override
+        public void shutdown() {
+            delegate.shutdown();
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return delegate.shutdownNow();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return delegate.isShutdown();
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return delegate.isTerminated();
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            return delegate.awaitTermination(timeout, unit);
+        }
+    }
+
+    /**
+     * A {@code ScheduledExecutorService} that runs each task in the context it was scheduled from.
+     */
+    private static final class ContextScheduledExecutorService extends ContextExecutorService
+            implements ScheduledExecutorService {
+        private final ScheduledExecutorService delegate;
+
+        ContextScheduledExecutorService(ScheduledExecutorService delegate) {
+            super(delegate);
+            this.delegate = delegate;
+        }
+
+        @Override
+        public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+            return delegate.schedule(contextual(command), delay, unit);
+        }
+
+        @Override
+        public <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit) {
+            return delegate.schedule(contextual(callable), delay, unit);
+        }
+
+        @Override
+        public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit) {
+            return delegate.scheduleAtFixedRate(contextual(command), initialDelay, period, unit);
+        }
+
+        @Override
+        public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay,
+                                                         TimeUnit unit) {
+            return delegate.scheduleWithFixedDelay(contextual(command), initialDelay, delay, unit);
+        }
+    }
+}
@@ -12,47 +12,68 @@ import io.grpc.*;
 /**
  * {@code AmbientContextFreezeServerInterceptor} freezes the current {@link AmbientContext} for all downstream
  * operations. The best place to put this interceptor is at the end of the gRPC interceptor chain.
+ *
+ * <p>The ambient context is resolved once per call, and every listener event freezes and thaws it with the same
+ * freeze key, so streaming calls do not allocate on each message.
  */
 public class AmbientContextFreezeServerInterceptor implements ServerInterceptor {
     @Override
     public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers, ServerCallHandler<ReqT, RespT> next) {
+        AmbientContext ctx = AmbientContext.DATA_KEY.get();
+        if (ctx == null) {
+            // Nothing to freeze
+            return next.startCall(call, headers);
+        }
+
+        Object freezeKey = new Object();
         return new ForwardingServerCallListener.SimpleForwardingServerCallListener<ReqT>(next.startCall(call, headers)) {
             @Override
             public void onMessage(ReqT message) {
-                freezeAndThaw(() -> super.onMessage(message));
+                ctx.freeze(freezeKey);
+                try {
+                    super.onMessage(message);
+                } finally {
+                    ctx.thaw(freezeKey);
+                }
             }
 
             @Override
             public void onHalfClose() {
-                freezeAndThaw(super::onHalfClose);
+                ctx.freeze(freezeKey);
+                try {
+                    super.onHalfClose();
+                } finally {
+                    ctx.thaw(freezeKey);
+                }
             }
 
             @Override
             public void onCancel() {
-                freezeAndThaw(super::onCancel);
+                ctx.freeze(freezeKey);
+                try {
+                    super.onCancel();
+                } finally {
+                    ctx.thaw(freezeKey);
+                }
             }
 
             @Override
             public void onComplete() {
-                freezeAndThaw(super::onComplete);
+                ctx.freeze(freezeKey);
+                try {
+                    super.onComplete();
+                } finally {
+                    ctx.thaw(freezeKey);
+                }
             }
 
             @Override
             public void onReady() {
-                freezeAndThaw(super::onReady);
-            }
-
-            private void freezeAndThaw(Runnable delegate) {
-                if (AmbientContext.isPresent()) {
-                    Object freezeKey = AmbientContext.current().freeze();
-                    try {
-                        delegate.run();
-                    } finally {
-                        AmbientContext.current().thaw(freezeKey);
-                    }
-                } else {
-
-                    delegate.run();
+                ctx.freeze(freezeKey);
+                try {
+                    super.onReady();
+                } finally {
+                    ctx.thaw(freezeKey);
                 }
             }
         };
@@ -0,0 +1,102 @@
+/*
+ *  Copyright (c) 2019, Salesforce.com, Inc.
+ *  All rights reserved.
+ *  Licensed under the BSD 3-Clause license.
+ *  For full license text, see LICENSE.txt file in the repo root  or https://opensource.org/licenses/BSD-3-Clause
+ */
+
+package com.salesforce.grpc.contrib.context;
+
+import io.grpc.Metadata;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * {@code AmbientContextKey} is a well-known ambient context key, registered once at startup and assigned a fixed slot
+ * in every {@link AmbientContext}. Reading a registered key with {@link AmbientContext#get(AmbientContextKey)} is a
+ * single array index instead of a hash lookup, and the value parsed with the registered key's marshaller is cached.
+ *
+ * <p>Registered keys are typically held in {@code static final} fields, alongside the {@code Metadata.Key} they wrap.
+ * <pre>
+ * static final AmbientContextKey&lt;String&gt; TENANT_ID = AmbientContextKey.register(
+ *         Metadata.Key.of("ctx-tenant-id", Metadata.ASCII_STRING_MARSHALLER));
+ * </pre>
+ *
+ * <p>Values for a registered key can still be read and written with the wrapped {@code Metadata.Key}, or with any
+ * other {@code Metadata.Key} of the same name.
+ *
+ * @param <T> the type of the key's values
+ */
+public final class AmbientContextKey<T> {
+    /**
+     * The maximum number of keys that can be registered.
+     */
+    public static final int MAX_REGISTERED_KEYS = 256;
+
+    private static final ConcurrentMap<String, AmbientContextKey<?>> REGISTRY = new ConcurrentHashMap<>();
+
+    private final Metadata.Key<T> metadataKey;
+    private final int slot;
+
+    private AmbientContextKey(Metadata.Key<T> metadataKey, int slot) {
+        this.metadataKey = metadataKey;
+        this.slot = slot;
+    }
+
+    /**
+     * Registers a well-known ambient context key. Registering the same {@code Metadata.Key} instance more than once
+     * returns the original registration.
+     *
+     * @param metadataKey the {@code Metadata.Key} to register
+     * @return the registered key
+     *
+     * @throws IllegalArgumentException if a different {@code Metadata.Key} with the same name is already registered
+     * @throws IllegalStateException if {@link #MAX_REGISTERED_KEYS} keys are already registered
+     */
+    @SuppressWarnings("unchecked")
+    public static synchronized <T> AmbientContextKey<T> register(Metadata.Key<T> metadataKey) {
+        checkNotNull(metadataKey, "metadataKey");
+
+        AmbientContextKey<?> existing = REGISTRY.get(metadataKey.name());
+        if (existing != null) {
+            checkArgument(existing.metadataKey == metadataKey,
+                    "A different Metadata.Key named %s is already registered", metadataKey.name());
+            return (AmbientContextKey<T>) existing;
+        }
+
+        checkState(REGISTRY.size() < MAX_REGISTERED_KEYS,
+                "Cannot register more than %s AmbientContextKeys", MAX_REGISTERED_KEYS);
+        AmbientContextKey<T> key = new AmbientContextKey<>(metadataKey, REGISTRY.size());
+        REGISTRY.put(metadataKey.name(), key);
+        return key;
+    }
+
+    /**
+     * @return the slot assigned to the key registered under {@code name}, or -1 if no key is registered
+     */
+    static int slotOf(String name) {
+        AmbientContextKey<?> key = REGISTRY.get(name);
+        return key == null ? -1 : key.slot;
+    }
+
+    /**
+     * @return the {@code Metadata.Key} this key was registered with
+     */
+    public Metadata.Key<T> metadataKey() {
+        return metadataKey;
+    }
+
+    int slot() {
+        return slot;
+    }
+
+    @Override
+    public String toString() {
+        return "AmbientContextKey{name=" + metadataKey.name() + ", slot=" + slot + "}";
+    }
+}
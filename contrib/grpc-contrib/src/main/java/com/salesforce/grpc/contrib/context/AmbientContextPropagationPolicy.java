@@ -0,0 +1,262 @@
+/*
+ *  Copyright (c) 2019, Salesforce.com, Inc.
+ *  All rights reserved.
+ *  Licensed under the BSD 3-Clause license.
+ *  For full license text, see LICENSE.txt file in the repo root  or https://opensource.org/licenses/BSD-3-Clause
+ */
+
+package com.salesforce.grpc.contrib.context;
+
+import io.grpc.MethodDescriptor;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Predicate;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * {@code AmbientContextPropagationPolicy} decides which ambient context keys {@link AmbientContextClientInterceptor}
+ * propagates to each downstream method. Most services only need a few of the keys an ambient context carries, and
+ * propagating the rest wastes header bytes on every call.
+ *
+ * <p>Keys are selected per method, per service, or by a predicate on the {@code MethodDescriptor}. The most specific
+ * rule wins: a method rule is used before any predicate rule, predicate rules are tried in the order they were added,
+ * and a service rule is used only if no method or predicate rule matched. Methods matching no rule use the default
+ * keys, which propagate everything unless changed with {@link Builder#otherwise(Keys)}.
+ *
+ * <p>Each method is resolved once, the first time it is called, and the result is cached.
+ *
+ * <pre>
+ * AmbientContextPropagationPolicy policy = AmbientContextPropagationPolicy.newBuilder()
+ *         .forService("acme.Inventory", Keys.allow("ctx-tenant-id", "ctx-trace-id"))
+ *         .forMethod("acme.Billing/Charge", Keys.deny("ctx-debug"))
+ *         .forMethods(method -&gt; method.getType() == MethodDescriptor.MethodType.BIDI_STREAMING, Keys.none())
+ *         .build();
+ * </pre>
+ */
+public final class AmbientContextPropagationPolicy {
+    /**
+     * A policy that propagates every key to every method.
+     */
+    public static final AmbientContextPropagationPolicy PROPAGATE_ALL = newBuilder().build();
+
+    /**
+     * @return a new {@code AmbientContextPropagationPolicy} builder
+     */
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    private final Map<String, Keys> methodKeys;
+    private final Map<String, Keys> serviceKeys;
+    private final List<Predicate<MethodDescriptor<?, ?>>> predicates;
+    private final List<Keys> predicateKeys;
+    private final Keys defaultKeys;
+    private final ConcurrentMap<String, Keys> resolved = new ConcurrentHashMap<>();
+
+    private AmbientContextPropagationPolicy(Builder builder) {
+        this.methodKeys = new HashMap<>(builder.methodKeys);
+        this.serviceKeys = new HashMap<>(builder.serviceKeys);
+        this.predicates = new ArrayList<>(builder.predicates);
+        this.predicateKeys = new ArrayList<>(builder.predicateKeys);
+        this.defaultKeys = builder.defaultKeys;
+    }
+
+    /**
+     * @return the keys to propagate to {@code method}
+     */
+    Keys keysFor(MethodDescriptor<?, ?> method) {
+        Keys keys = resolved.get(method.getFullMethodName());
+        if (keys == null) {
+            keys = resolve(method);
+            resolved.putIfAbsent(method.getFullMethodName(), keys);
+        }
+        return keys;
+    }
+
+    private Keys resolve(MethodDescriptor<?, ?> method) {
+        Keys keys = methodKeys.get(method.getFullMethodName());
+        if (keys != null) {
+            return keys;
+        }
+
+        for (int i = 0; i < predicates.size(); i++) {
+            if (predicates.get(i).test(method)) {
+                return predicateKeys.get(i);
+            }
+        }
+
+        String serviceName = method.getServiceName();
+        keys = serviceName == null ? null : serviceKeys.get(serviceName);
+        return keys != null ? keys : defaultKeys;
+    }
+
+    /**
+     * A set of ambient context key names to propagate.
+     */
+    public static final class Keys {
+        private static final Keys ALL = new Keys(null, null);
+        private static final Keys NONE = new Keys(new String[0], null);
+
+        // Exactly one of allowed or denied is non-null, unless every key is propagated
+        private final String[] allowed;
+        private final Set<String> denied;
+
+        private Keys(String[] allowed, Set<String> denied) {
+            this.allowed = allowed;
+            this.denied = denied;
+        }
+
+        /**
+         * @return keys that propagate every ambient context key
+         */
+        public static Keys all() {
+            return ALL;
+        }
+
+        /**
+         * @return keys that propagate no ambient context keys
+         */
+        public static Keys none() {
+            return NONE;
+        }
+
+        /**
+         * @return keys that propagate only the named ambient context keys
+         */
+        public static Keys allow(String... names) {
+            return allow(Arrays.asList(names));
+        }
+
+        /**
+         * @return keys that propagate only the named ambient context keys
+         */
+        public static Keys allow(Collection<String> names) {
+            Set<String> normalized = normalize(names);
+            return normalized.isEmpty() ? NONE : new Keys(normalized.toArray(new String[0]), null);
+        }
+
+        /**
+         * @return keys that propagate every ambient context key except the named keys
+         */
+        public static Keys deny(String... names) {
+            return deny(Arrays.asList(names));
+        }
+
+        /**
+         * @return keys that propagate every ambient context key except the named keys
+         */
+        public static Keys deny(Collection<String> names) {
+            Set<String> normalized = normalize(names);
+            return normalized.isEmpty() ? ALL : new Keys(null, normalized);
+        }
+
+        private static Set<String> normalize(Collection<String> names) {
+            checkNotNull(names, "names");
+            Set<String> normalized = new LinkedHashSet<>();
+            for (String name : names) {
+                checkNotNull(name, "names must not contain null");
+                normalized.add(name.toLowerCase(Locale.ROOT));
+            }
+            return normalized;
+        }
+
+        boolean isNone() {
+            return allowed != null && allowed.length == 0;
+        }
+
+        /**
+         * @return the names to propagate if this is an allow-list, so callers can look them up directly instead of
+         *     scanning every key, or {@code null} otherwise
+         */
+        @Nullable
+        String[] allowedNames() {
+            return allowed;
+        }
+
+        boolean test(String name) {
+            if (allowed != null) {
+                for (String allowedName : allowed) {
+                    if (allowedName.equals(name)) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+            return denied == null || !denied.contains(name);
+        }
+
+        @Override
+        public String toString() {
+            if (allowed != null) {
+                return "Keys{allow=" + Arrays.toString(allowed) + "}";
+            }
+            return denied == null ? "Keys{all}" : "Keys{deny=" + denied + "}";
+        }
+    }
+
+    /**
+     * Builds an {@link AmbientContextPropagationPolicy}.
+     */
+    public static final class Builder {
+        private final Map<String, Keys> methodKeys = new HashMap<>();
+        private final Map<String, Keys> serviceKeys = new HashMap<>();
+        private final List<Predicate<MethodDescriptor<?, ?>>> predicates = new ArrayList<>();
+        private final List<Keys> predicateKeys = new ArrayList<>();
+        private Keys defaultKeys = Keys.ALL;
+
+        private Builder() { }
+
+        /**
+         * Propagates {@code keys} to a single method.
+         *
+         * @param fullMethodName the full method name, for example {@code "helloworld.Greeter/SayHello"}
+         */
+        public Builder forMethod(String fullMethodName, Keys keys) {
+            methodKeys.put(checkNotNull(fullMethodName, "fullMethodName"), checkNotNull(keys, "keys"));
+            return this;
+        }
+
+        /**
+         * Propagates {@code keys} to every method of a service.
+         *
+         * @param serviceName the fully qualified service name, for example {@code "helloworld.Greeter"}
+         */
+        public Builder forService(String serviceName, Keys keys) {
+            serviceKeys.put(checkNotNull(serviceName, "serviceName"), checkNotNull(keys, "keys"));
+            return this;
+        }
+
+        /**
+         * Propagates {@code keys} to every method matching {@code methods}.
+         */
+        public Builder forMethods(Predicate<MethodDescriptor<?, ?>> methods, Keys keys) {
+            predicates.add(checkNotNull(methods, "methods"));
+            predicateKeys.add(checkNotNull(keys, "keys"));
+            return this;
+        }
+
+        /**
+         * Propagates {@code keys} to every method not matched by another rule.
+         */
+        public Builder otherwise(Keys keys) {
+            this.defaultKeys = checkNotNull(keys, "keys");
+            return this;
+        }
+
+        public AmbientContextPropagationPolicy build() {
+            return new AmbientContextPropagationPolicy(this);
+        }
+    }
+}
@@ -9,6 +9,14 @@ package com.salesforce.grpc.contrib.context;
 
 import io.grpc.*;
 
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
 /**
  * {@code AmbientContextServerInterceptor} transparently serializes prefixed ambient context values into outbound request
  * headers.
@@ -16,10 +24,26 @@ import io.grpc.*;
  * <p>Each {@code AmbientContextServerInterceptor} marshals headers with a know prefix. If multiple prefixes are needed,
  * add multiple {@code AmbientContextServerInterceptor} instances to the gRPC interceptor chain.
  *
+ * <p>Header values are copied into the ambient context in their serialized form. Each value is decoded the first
+ * time it is read with a typed {@code Metadata.Key}, and values that are never read are forwarded to downstream
+ * services byte-for-byte.
+ *
+ * <p>An optional {@link AmbientContextEncoding} accepts ambient context packed into a single header by an
+ * {@link AmbientContextClientInterceptor} using the same encoding. Individually sent headers are still accepted.
+ * Malformed packed headers close the call with {@code INVALID_ARGUMENT}.
+ *
+ * <p>An optional {@link AmbientContextBudget} bounds the inbound ambient context. If a budget limit with the
+ * {@code FAIL} policy is exceeded, the call is closed with {@code RESOURCE_EXHAUSTED}.
+ *
  * <p>See package javadoc for more info.
  */
 public class AmbientContextServerInterceptor implements ServerInterceptor {
-    private String headerPrefix;
+    private final String headerPrefix;
+    private final MetadataKeyCache keyCache;
+    private final Metadata.Key<byte[]>[] allowedKeys;
+    private final AmbientContextBudget budget;
+    private final AmbientContextEncoding encoding;
+    private final Metadata.Key<byte[]> packedKey;
 
     /**
      * Constructs an {@code AmbientContextServerInterceptor} that marshals ambient context values with a know prefix
@@ -29,44 +53,143 @@ public class AmbientContextServerInterceptor implements ServerInterceptor {
      * @param headerPrefix the header prefix to marshal.
      */
     public AmbientContextServerInterceptor(String headerPrefix) {
-        this.headerPrefix = headerPrefix;
+        this(headerPrefix, MetadataKeyCache.DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * Constructs an {@code AmbientContextServerInterceptor} that marshals ambient context values with a know prefix
+     * into outbound request headers. {@code Metadata.Key}s for matching header names are interned, up to
+     * {@code maxCachedKeys} distinct names, so they are not rebuilt on every call.
+     *
+     * @param headerPrefix the header prefix to marshal.
+     * @param maxCachedKeys the maximum number of distinct header names to intern.
+     */
+    public AmbientContextServerInterceptor(String headerPrefix, int maxCachedKeys) {
+        this(headerPrefix, maxCachedKeys, AmbientContextBudget.UNLIMITED, AmbientContextEncoding.HEADERS);
+    }
+
+    /**
+     * Constructs an {@code AmbientContextServerInterceptor} that marshals ambient context values with a know prefix
+     * into outbound request headers, limited to {@code budget}.
+     *
+     * @param headerPrefix the header prefix to marshal.
+     * @param budget the budget enforced on the inbound ambient context.
+     */
+    public AmbientContextServerInterceptor(String headerPrefix, AmbientContextBudget budget) {
+        this(headerPrefix, MetadataKeyCache.DEFAULT_MAX_SIZE, budget, AmbientContextEncoding.HEADERS);
+    }
+
+    /**
+     * Constructs an {@code AmbientContextServerInterceptor} that marshals ambient context values with a know prefix
+     * into outbound request headers, accepting headers in {@code encoding}.
+     *
+     * @param headerPrefix the header prefix to marshal.
+     * @param encoding the wire encoding of inbound headers.
+     */
+    public AmbientContextServerInterceptor(String headerPrefix, AmbientContextEncoding encoding) {
+        this(headerPrefix, MetadataKeyCache.DEFAULT_MAX_SIZE, AmbientContextBudget.UNLIMITED, encoding);
+    }
+
+    /**
+     * Constructs an {@code AmbientContextServerInterceptor} that marshals ambient context values with a know prefix
+     * into outbound request headers, limited to {@code budget}, accepting headers in {@code encoding}.
+     *
+     * @param headerPrefix the header prefix to marshal.
+     * @param budget the budget enforced on the inbound ambient context.
+     * @param encoding the wire encoding of inbound headers.
+     */
+    public AmbientContextServerInterceptor(String headerPrefix, AmbientContextBudget budget,
+                                           AmbientContextEncoding encoding) {
+        this(headerPrefix, MetadataKeyCache.DEFAULT_MAX_SIZE, budget, encoding);
+    }
+
+    private AmbientContextServerInterceptor(String headerPrefix, int maxCachedKeys, AmbientContextBudget budget,
+                                            AmbientContextEncoding encoding) {
+        this.headerPrefix = checkNotNull(headerPrefix, "headerPrefix");
+        this.keyCache = new MetadataKeyCache(maxCachedKeys);
+        this.allowedKeys = null;
+        this.budget = checkNotNull(budget, "budget");
+        this.encoding = checkNotNull(encoding, "encoding");
+        this.packedKey = encoding.isPacked() ?
+                keyCache.key(AmbientContextEncoding.packedHeaderName(headerPrefix)) : null;
+    }
+
+    /**
+     * Constructs an {@code AmbientContextServerInterceptor} that only marshals an explicit allow-list of prefixed
+     * header names. The {@code Metadata.Key}s for the allow-list are built once, and inbound headers are probed
+     * directly by key, rather than by scanning every inbound header name for the prefix.
+     *
+     * @param headerPrefix the header prefix to marshal.
+     * @param allowedKeyNames the header names to marshal. Each name must start with {@code headerPrefix}.
+     */
+    public AmbientContextServerInterceptor(String headerPrefix, Collection<String> allowedKeyNames) {
+        this(headerPrefix, allowedKeyNames, AmbientContextBudget.UNLIMITED);
+    }
+
+    /**
+     * Constructs an {@code AmbientContextServerInterceptor} that only marshals an explicit allow-list of prefixed
+     * header names, limited to {@code budget}.
+     *
+     * @param headerPrefix the header prefix to marshal.
+     * @param allowedKeyNames the header names to marshal. Each name must start with {@code headerPrefix}.
+     * @param budget the budget enforced on the inbound ambient context.
+     */
+    public AmbientContextServerInterceptor(String headerPrefix, Collection<String> allowedKeyNames,
+                                           AmbientContextBudget budget) {
+        this.budget = checkNotNull(budget, "budget");
+        this.encoding = AmbientContextEncoding.HEADERS;
+        this.packedKey = null;
+        this.headerPrefix = checkNotNull(headerPrefix, "headerPrefix");
+        checkNotNull(allowedKeyNames, "allowedKeyNames");
+        this.keyCache = new MetadataKeyCache(allowedKeyNames.size());
+
+        Set<String> distinctNames = new LinkedHashSet<>();
+        for (String name : allowedKeyNames) {
+            checkNotNull(name, "allowedKeyNames must not contain null");
+            distinctNames.add(name.toLowerCase(Locale.ROOT));
+        }
+
+        this.allowedKeys = newKeyArray(distinctNames.size());
+        int i = 0;
+        for (String name : distinctNames) {
+            checkArgument(name.startsWith(headerPrefix),
+                    "Allowed key %s does not start with header prefix %s", name, headerPrefix);
+            this.allowedKeys[i++] = keyCache.key(name);
+        }
     }
 
     @Override
     public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers, ServerCallHandler<ReqT, RespT> next) {
         AmbientContext ctx = AmbientContext.DATA_KEY.get();
         // Only initialize ctx if not yet initialized
-        ctx = ctx != null ? ctx : new AmbientContext();
+        ctx = ctx != null ? ctx : new AmbientContext(false, budget);
 
         boolean found = false;
-        for (String keyName : headers.keys()) {
-            if (!keyName.startsWith(headerPrefix)) {
-                continue;
-            }
-
-            if (keyName.endsWith(Metadata.BINARY_HEADER_SUFFIX)) {
-                Metadata.Key<byte[]> key = Metadata.Key.of(keyName, Metadata.BINARY_BYTE_MARSHALLER);
-                Iterable<byte[]> values = headers.getAll(key);
-                if (values == null) {
-                    continue;
-                }
-
-                for (byte[] value : values) {
-                    ctx.put(key, value);
+        try {
+            if (allowedKeys != null) {
+                for (Metadata.Key<byte[]> key : allowedKeys) {
+                    found |= transfer(key, headers, ctx, budget);
                 }
             } else {
-                Metadata.Key<String> key = Metadata.Key.of(keyName, Metadata.ASCII_STRING_MARSHALLER);
-                Iterable<String> values = headers.getAll(key);
-                if (values == null) {
-                    continue;
-                }
+                for (String keyName : headers.keys()) {
+                    if (!keyName.startsWith(headerPrefix)) {
+                        continue;
+                    }
 
-                for (String value : values) {
-                    ctx.put(key, value);
+                    // Compared by name, since keys are only interned while the key cache has room
+                    if (packedKey != null && keyName.equals(packedKey.name())) {
+                        found |= unpack(headers, ctx);
+                    } else {
+                        found |= transfer(keyCache.key(keyName), headers, ctx, budget);
+                    }
                 }
             }
-
-            found = true;
+        } catch (AmbientContextBudget.BudgetExceededException ex) {
+            call.close(Status.RESOURCE_EXHAUSTED.withDescription(ex.getMessage()), new Metadata());
+            return new ServerCall.Listener<ReqT>() { };
+        } catch (IllegalArgumentException ex) {
+            call.close(Status.INVALID_ARGUMENT.withDescription(ex.getMessage()), new Metadata());
+            return new ServerCall.Listener<ReqT>() { };
         }
 
         if (found) {
@@ -76,4 +199,38 @@ public class AmbientContextServerInterceptor implements ServerInterceptor {
             return next.startCall(call, headers);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Copies the serialized values of a header into the ambient context. Values are decoded lazily, the first time
+     * they are read from the ambient context with a typed key.
+     */
+    private static boolean transfer(Metadata.Key<byte[]> key, Metadata headers, AmbientContext ctx,
+                                    AmbientContextBudget budget) {
+        Iterable<byte[]> values = headers.getAll(key);
+        if (values == null) {
+            return false;
+        }
+
+        for (byte[] value : values) {
+            ctx.put(key, value, budget);
+        }
+        return true;
+    }
+
+    /**
+     * Copies the values of a packed header into the ambient context, still in their serialized form.
+     *
+     * @throws IllegalArgumentException if the packed header is malformed
+     */
+    private boolean unpack(Metadata headers, AmbientContext ctx) {
+        for (byte[] packed : headers.getAll(packedKey)) {
+            encoding.unpack(packed, headerPrefix, keyCache, (key, value) -> ctx.put(key, value, budget));
+        }
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Metadata.Key<byte[]>[] newKeyArray(int size) {
+        return (Metadata.Key<byte[]>[]) new Metadata.Key<?>[size];
+    }
+}
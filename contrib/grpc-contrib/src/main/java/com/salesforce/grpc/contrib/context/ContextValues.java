@@ -0,0 +1,210 @@
+/*
+ *  Copyright (c) 2019, Salesforce.com, Inc.
+ *  All rights reserved.
+ *  Licensed under the BSD 3-Clause license.
+ *  For full license text, see LICENSE.txt file in the repo root  or https://opensource.org/licenses/BSD-3-Clause
+ */
+
+package com.salesforce.grpc.contrib.context;
+
+import io.grpc.Metadata;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * {@code ContextValues} is the immutable list of values stored under a single ambient context key name.
+ *
+ * <p>Unlike {@code Metadata}, values are held in their parsed form alongside the {@code Metadata.Key} that was used to
+ * store them. Reading a value back with the same key instance returns it without any marshalling. Reading it with a
+ * different key instance of the same name converts it through the two keys' marshallers, exactly as a round trip
+ * through {@code Metadata} would. The most recent such conversion of the last value, and of the list of all values,
+ * is cached, so repeated reads with the same key instance only convert once.
+ */
+@Immutable
+final class ContextValues {
+    // Alternating Metadata.Key, value pairs in insertion order
+    private final Object[] keysAndValues;
+    // {key, value} of the last value, converted for the most recent key that differed from the stored key
+    private volatile Object[] convertedLast;
+    // {key, values} of all values, read with the most recent key that was used to list them
+    private volatile Object[] convertedAll;
+    // Serialized size of all names and values, computed on first use
+    private volatile long serializedSize = -1;
+
+    private ContextValues(Object[] keysAndValues) {
+        this.keysAndValues = keysAndValues;
+    }
+
+    static <T> ContextValues of(Metadata.Key<T> key, T value) {
+        return new ContextValues(new Object[]{key, value});
+    }
+
+    /**
+     * @return the number of values
+     */
+    int size() {
+        return keysAndValues.length / 2;
+    }
+
+    /**
+     * @return a copy of these values with {@code value} added to the end
+     */
+    <T> ContextValues append(Metadata.Key<T> key, T value) {
+        Object[] newKeysAndValues = new Object[keysAndValues.length + 2];
+        System.arraycopy(keysAndValues, 0, newKeysAndValues, 0, keysAndValues.length);
+        newKeysAndValues[keysAndValues.length] = key;
+        newKeysAndValues[keysAndValues.length + 1] = value;
+        return new ContextValues(newKeysAndValues);
+    }
+
+    /**
+     * @return the last value, parsed as {@code T}
+     */
+    @SuppressWarnings("unchecked")
+    <T> T last(Metadata.Key<T> key) {
+        int i = keysAndValues.length - 2;
+        if (keysAndValues[i] == key) {
+            return (T) keysAndValues[i + 1];
+        }
+
+        Object[] cached = convertedLast;
+        if (cached != null && cached[0] == key) {
+            return (T) cached[1];
+        }
+        T value = convert((Metadata.Key<?>) keysAndValues[i], keysAndValues[i + 1], key);
+        convertedLast = new Object[]{key, value};
+        return value;
+    }
+
+    /**
+     * @return all values in insertion order, parsed as {@code T}
+     */
+    @SuppressWarnings("unchecked")
+    <T> List<T> all(Metadata.Key<T> key) {
+        Object[] cached = convertedAll;
+        if (cached != null && cached[0] == key) {
+            return (List<T>) cached[1];
+        }
+        List<T> values = new ArrayList<>(size());
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            values.add(valueAt(i, key));
+        }
+        List<T> unmodifiable = Collections.unmodifiableList(values);
+        convertedAll = new Object[]{key, unmodifiable};
+        return unmodifiable;
+    }
+
+    /**
+     * @return a copy of these values without the first occurrence of {@code value}, {@code this} if {@code value} is
+     *     not present, or {@code null} if no values remain
+     */
+    @Nullable
+    <T> ContextValues remove(Metadata.Key<T> key, T value) {
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            if (value.equals(valueAt(i, key))) {
+                if (keysAndValues.length == 2) {
+                    return null;
+                }
+                Object[] newKeysAndValues = new Object[keysAndValues.length - 2];
+                System.arraycopy(keysAndValues, 0, newKeysAndValues, 0, i);
+                System.arraycopy(keysAndValues, i + 2, newKeysAndValues, i, newKeysAndValues.length - i);
+                return new ContextValues(newKeysAndValues);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * @return a copy of these values holding only the first {@code maxValues}, or {@code null} if none remain
+     */
+    @Nullable
+    ContextValues truncate(int maxValues) {
+        if (maxValues >= size()) {
+            return this;
+        }
+        if (maxValues <= 0) {
+            return null;
+        }
+        Object[] newKeysAndValues = new Object[maxValues * 2];
+        System.arraycopy(keysAndValues, 0, newKeysAndValues, 0, newKeysAndValues.length);
+        return new ContextValues(newKeysAndValues);
+    }
+
+    /**
+     * @return a copy of these values holding the longest run of leading values whose serialized size fits in
+     *     {@code maxBytes}, or {@code null} if none fit
+     */
+    @Nullable
+    ContextValues truncateToBytes(long maxBytes) {
+        byte[][] serialized = serialize();
+        long bytes = 0;
+        int fit = 0;
+        while (fit < size()) {
+            bytes += serialized[fit * 2].length + serialized[fit * 2 + 1].length;
+            if (bytes > maxBytes) {
+                break;
+            }
+            fit++;
+        }
+        return truncate(fit);
+    }
+
+    /**
+     * @return the total size of every serialized name and value, in bytes
+     */
+    long serializedSize() {
+        long size = serializedSize;
+        if (size < 0) {
+            size = 0;
+            for (byte[] bytes : serialize()) {
+                size += bytes.length;
+            }
+            serializedSize = size;
+        }
+        return size;
+    }
+
+    private byte[][] serialize() {
+        Metadata scratch = new Metadata();
+        writeTo(scratch);
+        return MetadataKeyCache.serialize(scratch);
+    }
+
+    /**
+     * Serializes every value into {@code headers}, using the key each value was stored with.
+     */
+    void writeTo(Metadata headers) {
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            putUnchecked(headers, (Metadata.Key<?>) keysAndValues[i], keysAndValues[i + 1]);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T valueAt(int i, Metadata.Key<T> key) {
+        Metadata.Key<?> storedKey = (Metadata.Key<?>) keysAndValues[i];
+        Object storedValue = keysAndValues[i + 1];
+        if (storedKey == key) {
+            return (T) storedValue;
+        }
+        return convert(storedKey, storedValue, key);
+    }
+
+    /**
+     * Converts a value stored with one key into the type of another key with the same name, by serializing it with
+     * the first key's marshaller and parsing it with the second's.
+     */
+    static <T> T convert(Metadata.Key<?> storedKey, Object storedValue, Metadata.Key<T> key) {
+        Metadata scratch = new Metadata();
+        putUnchecked(scratch, storedKey, storedValue);
+        return scratch.get(key);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> void putUnchecked(Metadata headers, Metadata.Key<T> key, Object value) {
+        headers.put(key, (T) value);
+    }
+}
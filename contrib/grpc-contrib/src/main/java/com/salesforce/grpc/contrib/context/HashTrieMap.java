@@ -0,0 +1,328 @@
+/*
+ *  Copyright (c) 2019, Salesforce.com, Inc.
+ *  All rights reserved.
+ *  Licensed under the BSD 3-Clause license.
+ *  For full license text, see LICENSE.txt file in the repo root  or https://opensource.org/licenses/BSD-3-Clause
+ */
+
+package com.salesforce.grpc.contrib.context;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import java.util.function.BiConsumer;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * {@code HashTrieMap} is an immutable, persistent hash array mapped trie (HAMT). Every modification returns a new map
+ * that shares all unmodified structure with the original, so copying a map is free and a modification only copies
+ * the handful of nodes on the path to the modified entry.
+ *
+ * <p>Iteration order is unspecified. Null keys and values are not permitted.
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+@Immutable
+final class HashTrieMap<K, V> {
+    private static final int BITS_PER_LEVEL = 5;
+    private static final int LEVEL_MASK = (1 << BITS_PER_LEVEL) - 1;
+
+    private static final HashTrieMap<?, ?> EMPTY = new HashTrieMap<>(BitmapNode.EMPTY, 0);
+
+    private final Node root;
+    private final int size;
+
+    private HashTrieMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    /**
+     * @return the empty map
+     */
+    @SuppressWarnings("unchecked")
+    static <K, V> HashTrieMap<K, V> empty() {
+        return (HashTrieMap<K, V>) EMPTY;
+    }
+
+    /**
+     * @return the number of entries in the map
+     */
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return the value mapped to {@code key}, or {@code null} if there is none
+     */
+    @Nullable
+    @SuppressWarnings("unchecked")
+    V get(K key) {
+        return (V) root.get(key, key.hashCode(), 0);
+    }
+
+    /**
+     * @return a map with {@code key} mapped to {@code value}
+     */
+    HashTrieMap<K, V> put(K key, V value) {
+        checkNotNull(key, "key");
+        checkNotNull(value, "value");
+        boolean[] added = new boolean[1];
+        Node newRoot = root.put(key, key.hashCode(), 0, value, added);
+        if (newRoot == root) {
+            return this;
+        }
+        return new HashTrieMap<>(newRoot, added[0] ? size + 1 : size);
+    }
+
+    /**
+     * @return a map without an entry for {@code key}
+     */
+    HashTrieMap<K, V> remove(K key) {
+        Node newRoot = root.remove(key, key.hashCode(), 0);
+        if (newRoot == root) {
+            return this;
+        }
+        if (newRoot == null) {
+            return empty();
+        }
+        return new HashTrieMap<>(newRoot, size - 1);
+    }
+
+    /**
+     * Visits every entry in the map.
+     */
+    @SuppressWarnings("unchecked")
+    void forEach(BiConsumer<? super K, ? super V> action) {
+        root.forEach((BiConsumer<Object, Object>) action);
+    }
+
+    /**
+     * A node in the trie.
+     */
+    private abstract static class Node {
+        abstract Object get(Object key, int hash, int shift);
+
+        abstract Node put(Object key, int hash, int shift, Object value, boolean[] added);
+
+        @Nullable
+        abstract Node remove(Object key, int hash, int shift);
+
+        abstract void forEach(BiConsumer<Object, Object> action);
+    }
+
+    /**
+     * A node holding up to 32 children, indexed by five bits of the key hash. Children are stored in a compact array
+     * of key/value pairs. A pair with a {@code null} key holds a sub-node in its value position.
+     */
+    private static final class BitmapNode extends Node {
+        static final BitmapNode EMPTY = new BitmapNode(0, new Object[0]);
+
+        private final int bitmap;
+        private final Object[] array;
+
+        BitmapNode(int bitmap, Object[] array) {
+            this.bitmap = bitmap;
+            this.array = array;
+        }
+
+        private static int bit(int hash, int shift) {
+            return 1 << ((hash >>> shift) & LEVEL_MASK);
+        }
+
+        private int index(int bit) {
+            return Integer.bitCount(bitmap & (bit - 1));
+        }
+
+        @Override
+        Object get(Object key, int hash, int shift) {
+            int bit = bit(hash, shift);
+            if ((bitmap & bit) == 0) {
+                return null;
+            }
+
+            int idx = index(bit);
+            Object k = array[2 * idx];
+            Object v = array[2 * idx + 1];
+            if (k == null) {
+                return ((Node) v).get(key, hash, shift + BITS_PER_LEVEL);
+            }
+            return key.equals(k) ? v : null;
+        }
+
+        @Override
+        Node put(Object key, int hash, int shift, Object value, boolean[] added) {
+            int bit = bit(hash, shift);
+            int idx = index(bit);
+
+            if ((bitmap & bit) != 0) {
+                Object k = array[2 * idx];
+                Object v = array[2 * idx + 1];
+                if (k == null) {
+                    Node child = ((Node) v).put(key, hash, shift + BITS_PER_LEVEL, value, added);
+                    return child == v ? this : withValueAt(idx, child);
+                }
+                if (key.equals(k)) {
+                    return value == v ? this : withValueAt(idx, value);
+                }
+
+                added[0] = true;
+                Node child = createNode(shift + BITS_PER_LEVEL, k, v, key, hash, value);
+                Object[] newArray = array.clone();
+                newArray[2 * idx] = null;
+                newArray[2 * idx + 1] = child;
+                return new BitmapNode(bitmap, newArray);
+            }
+
+            added[0] = true;
+            Object[] newArray = new Object[array.length + 2];
+            System.arraycopy(array, 0, newArray, 0, 2 * idx);
+            newArray[2 * idx] = key;
+            newArray[2 * idx + 1] = value;
+            System.arraycopy(array, 2 * idx, newArray, 2 * idx + 2, array.length - 2 * idx);
+            return new BitmapNode(bitmap | bit, newArray);
+        }
+
+        @Override
+        Node remove(Object key, int hash, int shift) {
+            int bit = bit(hash, shift);
+            if ((bitmap & bit) == 0) {
+                return this;
+            }
+
+            int idx = index(bit);
+            Object k = array[2 * idx];
+            Object v = array[2 * idx + 1];
+            if (k == null) {
+                Node child = ((Node) v).remove(key, hash, shift + BITS_PER_LEVEL);
+                if (child == v) {
+                    return this;
+                }
+                if (child != null) {
+                    return withValueAt(idx, child);
+                }
+            } else if (!key.equals(k)) {
+                return this;
+            }
+
+            if (bitmap == bit) {
+                return null;
+            }
+            Object[] newArray = new Object[array.length - 2];
+            System.arraycopy(array, 0, newArray, 0, 2 * idx);
+            System.arraycopy(array, 2 * idx + 2, newArray, 2 * idx, newArray.length - 2 * idx);
+            return new BitmapNode(bitmap & ~bit, newArray);
+        }
+
+        @Override
+        void forEach(BiConsumer<Object, Object> action) {
+            for (int i = 0; i < array.length; i += 2) {
+                if (array[i] == null) {
+                    ((Node) array[i + 1]).forEach(action);
+                } else {
+                    action.accept(array[i], array[i + 1]);
+                }
+            }
+        }
+
+        private BitmapNode withValueAt(int idx, Object value) {
+            Object[] newArray = array.clone();
+            newArray[2 * idx + 1] = value;
+            return new BitmapNode(bitmap, newArray);
+        }
+
+        private static Node createNode(int shift, Object key1, Object value1, Object key2, int hash2, Object value2) {
+            int hash1 = key1.hashCode();
+            if (hash1 == hash2) {
+                return new CollisionNode(hash1, new Object[]{key1, value1, key2, value2});
+            }
+
+            boolean[] ignored = new boolean[1];
+            return EMPTY
+                    .put(key1, hash1, shift, value1, ignored)
+                    .put(key2, hash2, shift, value2, ignored);
+        }
+    }
+
+    /**
+     * A node holding key/value pairs whose keys have identical hash codes.
+     */
+    private static final class CollisionNode extends Node {
+        private final int hash;
+        private final Object[] array;
+
+        CollisionNode(int hash, Object[] array) {
+            this.hash = hash;
+            this.array = array;
+        }
+
+        private int find(Object key) {
+            for (int i = 0; i < array.length; i += 2) {
+                if (key.equals(array[i])) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        Object get(Object key, int hash, int shift) {
+            int i = find(key);
+            return i < 0 ? null : array[i + 1];
+        }
+
+        @Override
+        Node put(Object key, int hash, int shift, Object value, boolean[] added) {
+            if (hash != this.hash) {
+                // Push this node down a level so it can sit beside the new key
+                Node parent = new BitmapNode(BitmapNode.bit(this.hash, shift), new Object[]{null, this});
+                return parent.put(key, hash, shift, value, added);
+            }
+
+            int i = find(key);
+            if (i >= 0) {
+                if (array[i + 1] == value) {
+                    return this;
+                }
+                Object[] newArray = array.clone();
+                newArray[i + 1] = value;
+                return new CollisionNode(hash, newArray);
+            }
+
+            added[0] = true;
+            Object[] newArray = new Object[array.length + 2];
+            System.arraycopy(array, 0, newArray, 0, array.length);
+            newArray[array.length] = key;
+            newArray[array.length + 1] = value;
+            return new CollisionNode(hash, newArray);
+        }
+
+        @Override
+        Node remove(Object key, int hash, int shift) {
+            int i = find(key);
+            if (i < 0) {
+                return this;
+            }
+            if (array.length == 2) {
+                return null;
+            }
+
+            Object[] newArray = new Object[array.length - 2];
+            System.arraycopy(array, 0, newArray, 0, i);
+            System.arraycopy(array, i + 2, newArray, i, newArray.length - i);
+            return new CollisionNode(hash, newArray);
+        }
+
+        @Override
+        void forEach(BiConsumer<Object, Object> action) {
+            for (int i = 0; i < array.length; i += 2) {
+                action.accept(array[i], array[i + 1]);
+            }
+        }
+    }
+}
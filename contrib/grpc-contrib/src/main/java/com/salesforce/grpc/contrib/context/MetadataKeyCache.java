@@ -0,0 +1,118 @@
+/*
+ *  Copyright (c) 2019, Salesforce.com, Inc.
+ *  All rights reserved.
+ *  Licensed under the BSD 3-Clause license.
+ *  For full license text, see LICENSE.txt file in the repo root  or https://opensource.org/licenses/BSD-3-Clause
+ */
+
+package com.salesforce.grpc.contrib.context;
+
+import io.grpc.Metadata;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * {@code MetadataKeyCache} interns the {@code Metadata.Key} instances used to marshal ambient context headers, so
+ * that key name validation and marshaller binding happen once per header name instead of once per call.
+ *
+ * <p>Every key is a raw {@code byte[]} key: binary keys (names ending in {@code -bin}) are bound to
+ * {@link Metadata#BINARY_BYTE_MARSHALLER} and all other keys to an ASCII marshaller. Values read with these keys are
+ * the header's serialized bytes, so ambient context values are only decoded when they are first read with a typed
+ * key, and values that are never read are forwarded downstream unchanged. Binary values are forwarded as the same
+ * array. ASCII values are copied through a {@code String} on the way in and out, since the public {@code Metadata}
+ * API offers no way to pass the bytes of an ASCII header through untouched.
+ *
+ * <p>The cache is bounded. Once {@code maxSize} header names have been interned, keys for new names are constructed
+ * on demand and not retained, protecting the cache from callers that send unbounded sets of header names.
+ */
+final class MetadataKeyCache {
+    static final int DEFAULT_MAX_SIZE = 1024;
+
+    private static final Metadata.AsciiMarshaller<byte[]> RAW_ASCII_MARSHALLER =
+            new Metadata.AsciiMarshaller<byte[]>() {
+                @Override
+                public String toAsciiString(byte[] value) {
+                    return new String(value, StandardCharsets.US_ASCII);
+                }
+
+                @Override
+                public byte[] parseAsciiString(String serialized) {
+                    return serialized.getBytes(StandardCharsets.US_ASCII);
+                }
+            };
+
+    // Keys used to read back serialized headers
+    private static final MetadataKeyCache SERIALIZATION_KEYS = new MetadataKeyCache();
+
+    private final ConcurrentMap<String, Metadata.Key<byte[]>> keys = new ConcurrentHashMap<>();
+    private final int maxSize;
+
+    MetadataKeyCache() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    MetadataKeyCache(int maxSize) {
+        checkArgument(maxSize >= 0, "maxSize must be non-negative");
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Returns the interned raw key for a header name, binding the marshaller appropriate to the name's suffix.
+     */
+    Metadata.Key<byte[]> key(String name) {
+        Metadata.Key<byte[]> key = keys.get(name);
+        if (key != null) {
+            return key;
+        }
+
+        key = newKey(name);
+        if (keys.size() < maxSize) {
+            Metadata.Key<byte[]> existing = keys.putIfAbsent(name, key);
+            if (existing != null) {
+                return existing;
+            }
+        }
+        return key;
+    }
+
+    /**
+     * @return the number of interned keys
+     */
+    int size() {
+        return keys.size();
+    }
+
+    /**
+     * Serializes {@code headers} as alternating name and value bytes, with the values of each name kept together in
+     * the order they were added.
+     */
+    static byte[][] serialize(Metadata headers) {
+        List<byte[]> serialized = new ArrayList<>();
+        for (String name : headers.keys()) {
+            byte[] nameBytes = name.getBytes(StandardCharsets.US_ASCII);
+            for (byte[] value : headers.getAll(SERIALIZATION_KEYS.key(name))) {
+                serialized.add(nameBytes);
+                serialized.add(value);
+            }
+        }
+        return serialized.toArray(new byte[0][]);
+    }
+
+    static boolean isBinary(String name) {
+        return name.endsWith(Metadata.BINARY_HEADER_SUFFIX);
+    }
+
+    private static Metadata.Key<byte[]> newKey(String name) {
+        if (isBinary(name)) {
+            return Metadata.Key.of(name, Metadata.BINARY_BYTE_MARSHALLER);
+        } else {
+            return Metadata.Key.of(name, RAW_ASCII_MARSHALLER);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ *  Copyright (c) 2019, Salesforce.com, Inc.
+ *  All rights reserved.
+ *  Licensed under the BSD 3-Clause license.
+ *  For full license text, see LICENSE.txt file in the repo root  or https://opensource.org/licenses/BSD-3-Clause
+ */
+
+package com.salesforce.grpc.contrib.context;
+
+import javax.annotation.concurrent.Immutable;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * {@code RequiredContextKeys} is a set of ambient context key names precompiled for validation. Each name is
+ * normalized once, and names of registered {@link AmbientContextKey}s are resolved to their slots, so that
+ * {@link AmbientContext#firstMissingKey(RequiredContextKeys)} can check every name in a single pass without building
+ * the context's key set.
+ */
+@Immutable
+final class RequiredContextKeys {
+    static final RequiredContextKeys NONE = new RequiredContextKeys(new String[0]);
+
+    private final String[] names;
+    // The registered slot of each name, or -1
+    private final int[] slots;
+
+    RequiredContextKeys(String[] names) {
+        this.names = names;
+        this.slots = new int[names.length];
+        for (int i = 0; i < names.length; i++) {
+            slots[i] = AmbientContextKey.slotOf(names[i]);
+        }
+    }
+
+    static RequiredContextKeys of(String... names) {
+        return of(Arrays.asList(names));
+    }
+
+    static RequiredContextKeys of(Collection<String> names) {
+        checkNotNull(names, "names");
+        Set<String> normalized = new LinkedHashSet<>();
+        for (String name : names) {
+            checkNotNull(name, "names must not contain null");
+            normalized.add(name.toLowerCase(Locale.ROOT));
+        }
+        return normalized.isEmpty() ? NONE : new RequiredContextKeys(normalized.toArray(new String[0]));
+    }
+
+    int size() {
+        return names.length;
+    }
+
+    String name(int i) {
+        return names[i];
+    }
+
+    int slot(int i) {
+        return slots[i];
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(names);
+    }
+}
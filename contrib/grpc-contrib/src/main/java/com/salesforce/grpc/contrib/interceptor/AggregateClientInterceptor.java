@@ -7,9 +7,9 @@
 
 package com.salesforce.grpc.contrib.interceptor;
 
-import com.google.common.collect.Lists;
 import io.grpc.*;
 
+import java.lang.ref.WeakReference;
 import java.util.Arrays;
 import java.util.List;
 
@@ -20,9 +20,17 @@ import static com.google.common.base.Preconditions.checkNotNull;
  * AggregateClientInterceptor is used to bundle multiple {@link ClientInterceptor} implementations into a single
  * {@code ClientInterceptor}. Each inner {@code ClientInterceptor} is applied in order when
  * {@link AggregateClientInterceptor#interceptCall(MethodDescriptor, CallOptions, Channel)} is called.
+ *
+ * <p>The chain of inner interceptors is compiled for the {@code Channel} it is called with, and reused by later calls
+ * on the same channel, so {@code interceptCall()} usually allocates nothing beyond what the inner interceptors do.
+ * A compiled chain holds its channel strongly, so interceptors that keep {@code next} to call it later always can.
+ * Only the most recently compiled chain is cached, and only weakly, so the cache does not keep unused channels alive;
+ * calls on a different channel compile a new chain, as {@link ClientInterceptors#intercept} would.
  */
 public class AggregateClientInterceptor implements ClientInterceptor {
-    private final List<ClientInterceptor> interceptors;
+    // In reverse order, so the last interceptor to call is the most nested
+    private final ClientInterceptor[] reversedInterceptors;
+    private volatile WeakReference<CompiledChain> lastChain = new WeakReference<>(null);
 
     /**
      * Construct a AggregateClientInterceptor from one or more {@link ClientInterceptor}s. The inner
@@ -44,17 +52,42 @@ public class AggregateClientInterceptor implements ClientInterceptor {
         checkNotNull(interceptors, "interceptors");
         checkArgument(interceptors.size() > 0,
                 "AggregateClientInterceptor requires at least one inner ClientInterceptor.");
-        this.interceptors = interceptors;
+        this.reversedInterceptors = new ClientInterceptor[interceptors.size()];
+        for (int i = 0; i < reversedInterceptors.length; i++) {
+            reversedInterceptors[i] = checkNotNull(interceptors.get(reversedInterceptors.length - 1 - i),
+                    "interceptor");
+        }
     }
 
     @Override
     public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(MethodDescriptor<ReqT, RespT> method, CallOptions callOptions, Channel next) {
-        // reverse the interceptors list so that the last interceptor to call is the most nested interceptor
-        for (ClientInterceptor interceptor : Lists.reverse(interceptors)) {
-            next = new InterceptorChannel(next, interceptor);
+        return chainFor(next).newCall(method, callOptions);
+    }
+
+    private Channel chainFor(Channel next) {
+        CompiledChain chain = lastChain.get();
+        if (chain == null || chain.next != next) {
+            chain = new CompiledChain(next, reversedInterceptors);
+            lastChain = new WeakReference<>(chain);
         }
+        return chain.head;
+    }
 
-        return next.newCall(method, callOptions);
+    /**
+     * The interceptor chain compiled for a {@link Channel}.
+     */
+    private static final class CompiledChain {
+        private final Channel next;
+        private final Channel head;
+
+        private CompiledChain(Channel next, ClientInterceptor[] reversedInterceptors) {
+            this.next = next;
+            Channel channel = next;
+            for (ClientInterceptor interceptor : reversedInterceptors) {
+                channel = new InterceptorChannel(channel, interceptor);
+            }
+            this.head = channel;
+        }
     }
 
     /**
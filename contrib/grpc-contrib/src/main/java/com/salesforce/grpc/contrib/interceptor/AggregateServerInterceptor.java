@@ -7,11 +7,12 @@
 
 package com.salesforce.grpc.contrib.interceptor;
 
-import com.google.common.collect.Lists;
 import io.grpc.*;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
@@ -20,9 +21,19 @@ import static com.google.common.base.Preconditions.checkNotNull;
  * AggregateClientInterceptor is used to bundle multiple {@link ServerInterceptor} implementations into a single
  * {@code ServerInterceptor}. Each inner {@code ServerInterceptor} is applied in order when
  * {@link AggregateServerInterceptor#interceptCall(ServerCall, Metadata, ServerCallHandler)} is called.
+ *
+ * <p>The chain of inner interceptors is composed once for each method, and reused by every later call to that method.
+ * If a method is called with more than one {@code next} handler, for example because the aggregate is shared by
+ * several services, its chain is composed on every call instead. Inner {@link SelectiveServerInterceptor}s are left
+ * out of the chain of methods they do not apply to.
  */
 public class AggregateServerInterceptor implements ServerInterceptor {
-    private final List<ServerInterceptor> interceptors;
+    // In reverse order, so the last interceptor to call is the most nested
+    private final ServerInterceptor[] reversedInterceptors;
+    private final ConcurrentMap<MethodDescriptor<?, ?>, ComposedHandler<?, ?>> handlers = new ConcurrentHashMap<>();
+
+    // Marks methods called with more than one next handler, whose chains are not cached
+    private static final ComposedHandler<?, ?> UNCACHED = new ComposedHandler<>(null, null);
 
     /**
      * Construct a AggregateServerInterceptor from one or more {@link ServerInterceptor}s. The inner
@@ -44,17 +55,65 @@ public class AggregateServerInterceptor implements ServerInterceptor {
         checkNotNull(interceptors, "interceptors");
         checkArgument(interceptors.size() > 0,
                 "AggregateServerInterceptor requires at least one inner ServerInterceptor.");
-        this.interceptors = interceptors;
+        this.reversedInterceptors = new ServerInterceptor[interceptors.size()];
+        for (int i = 0; i < reversedInterceptors.length; i++) {
+            reversedInterceptors[i] = checkNotNull(interceptors.get(reversedInterceptors.length - 1 - i),
+                    "interceptor");
+        }
     }
 
     @Override
     public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers, ServerCallHandler<ReqT, RespT> next) {
-        // reverse the interceptors list so that the last interceptor to call is the most nested interceptor
-        for (ServerInterceptor interceptor : Lists.reverse(interceptors)) {
+        // Without a call there is no method to compose for, so every interceptor applies
+        MethodDescriptor<ReqT, RespT> method = call == null ? null : call.getMethodDescriptor();
+        return handlerFor(method, next).startCall(call, headers);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <ReqT, RespT> ServerCallHandler<ReqT, RespT> handlerFor(MethodDescriptor<ReqT, RespT> method, ServerCallHandler<ReqT, RespT> next) {
+        if (method == null) {
+            return compose(null, next);
+        }
+        ComposedHandler<ReqT, RespT> handler = (ComposedHandler<ReqT, RespT>) handlers.get(method);
+        if (handler == null) {
+            handler = (ComposedHandler<ReqT, RespT>) handlers.computeIfAbsent(method,
+                    m -> new ComposedHandler<>(next, compose(method, next)));
+        }
+        if (handler.next == next) {
+            return handler.head;
+        }
+        // next is stable per method, unless this aggregate is shared by several servers or services. Caching one
+        // chain per next would thrash, so the method's chain is composed on every call from now on.
+        if (handler != UNCACHED) {
+            handlers.put(method, UNCACHED);
+        }
+        return compose(method, next);
+    }
+
+    private <ReqT, RespT> ServerCallHandler<ReqT, RespT> compose(MethodDescriptor<ReqT, RespT> method, ServerCallHandler<ReqT, RespT> next) {
+        for (ServerInterceptor interceptor : reversedInterceptors) {
+            if (method != null && interceptor instanceof SelectiveServerInterceptor &&
+                    !((SelectiveServerInterceptor) interceptor).appliesTo(method)) {
+                continue;
+            }
             next = new InterceptorServerCallHandler<>(next, interceptor);
         }
+        return next;
+    }
 
-        return next.startCall(call, headers);
+    /**
+     * The composed handler chain of one method, and the handler it was composed around.
+     * @param <ReqT>
+     * @param <RespT>
+     */
+    private static final class ComposedHandler<ReqT, RespT> {
+        private final ServerCallHandler<ReqT, RespT> next;
+        private final ServerCallHandler<ReqT, RespT> head;
+
+        private ComposedHandler(ServerCallHandler<ReqT, RespT> next, ServerCallHandler<ReqT, RespT> head) {
+            this.next = next;
+            this.head = head;
+        }
     }
 
     /**
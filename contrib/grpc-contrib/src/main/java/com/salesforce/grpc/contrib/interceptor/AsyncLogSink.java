@@ -0,0 +1,160 @@
+/*
+ *  Copyright (c) 2019, Salesforce.com, Inc.
+ *  All rights reserved.
+ *  Licensed under the BSD 3-Clause license.
+ *  For full license text, see LICENSE.txt file in the repo root  or https://opensource.org/licenses/BSD-3-Clause
+ */
+
+package com.salesforce.grpc.contrib.interceptor;
+
+import java.io.Closeable;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * AsyncLogSink moves the formatting and writing of log lines off the calling thread. Callers hand it a format string
+ * and raw argument references, which are stored in a bounded lock-free ring buffer. A single background thread
+ * formats them with {@link String#format(String, Object...)} and passes the result to the caller's log target.
+ *
+ * <p>When the buffer is full, new log events are dropped instead of blocking the caller, and counted in
+ * {@link #dropped()}. Arguments are formatted some time after they are offered, so they must not be mutated
+ * afterwards.
+ *
+ * <p>One sink can be shared by several interceptors. Its thread is a daemon, parks while there is nothing to format,
+ * and stops when the sink is closed.
+ */
+public final class AsyncLogSink implements Closeable {
+    private static final int MAX_CAPACITY = Integer.highestOneBit(Integer.MAX_VALUE);
+
+    private final AtomicReferenceArray<Event> events;
+    private final int mask;
+    // Next slot to claim, advanced by producers
+    private final AtomicLong tail = new AtomicLong();
+    // Next slot to format, advanced only by the background thread
+    private final AtomicLong head = new AtomicLong();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder written = new LongAdder();
+    private final Thread writer;
+    // Set by the background thread before it parks, so producers know to wake it
+    private volatile boolean waiting;
+    private volatile boolean closed;
+
+    /**
+     * Creates a sink that buffers up to {@code capacity} log events, rounded up to a power of two.
+     */
+    public AsyncLogSink(int capacity) {
+        checkArgument(capacity > 0, "capacity must be positive");
+        checkArgument(capacity <= MAX_CAPACITY, "capacity is too large");
+        int size = Integer.highestOneBit(capacity - 1) << 1;
+        this.events = new AtomicReferenceArray<>(Math.max(1, size));
+        this.mask = events.length() - 1;
+
+        this.writer = new Thread(this::drain, "grpc-async-log-sink");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Buffers a log event for {@code target}, or drops it if the buffer is full.
+     *
+     * @return {@code true} if the event was buffered
+     */
+    public boolean offer(Consumer<String> target, String format, Object... args) {
+        long slot;
+        do {
+            slot = tail.get();
+            if (closed || slot - head.get() >= events.length()) {
+                dropped.increment();
+                return false;
+            }
+        } while (!tail.compareAndSet(slot, slot + 1));
+
+        events.lazySet((int) slot & mask, new Event(target, format, args));
+        if (waiting) {
+            LockSupport.unpark(writer);
+        }
+        return true;
+    }
+
+    /**
+     * Returns the number of log events dropped because the buffer was full or the sink was closed.
+     */
+    public long dropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * Returns the number of log events formatted and written.
+     */
+    public long written() {
+        return written.sum();
+    }
+
+    /**
+     * Stops the background thread, after writing the log events already buffered.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(writer);
+    }
+
+    private void drain() {
+        while (true) {
+            long slot = head.get();
+            if (slot == tail.get()) {
+                if (closed) {
+                    return;
+                }
+                waiting = true;
+                // Check again after announcing, so an event offered in between is not left waiting
+                if (slot == tail.get() && !closed) {
+                    LockSupport.park(this);
+                }
+                waiting = false;
+                continue;
+            }
+
+            int index = (int) slot & mask;
+            Event event = events.get(index);
+            if (event == null) {
+                // Claimed, but not yet published
+                Thread.yield();
+                continue;
+            }
+            events.lazySet(index, null);
+            head.lazySet(slot + 1);
+            write(event);
+        }
+    }
+
+    private void write(Event event) {
+        try {
+            event.target.accept(String.format(event.format, event.args));
+            written.increment();
+        } catch (RuntimeException ex) {
+            // A failing toString() or log target must not stop the sink
+            dropped.increment();
+        }
+    }
+
+    /**
+     * A buffered log event.
+     */
+    private static final class Event {
+        private final Consumer<String> target;
+        private final String format;
+        private final Object[] args;
+
+        private Event(Consumer<String> target, String format, Object[] args) {
+            this.target = target;
+            this.format = format;
+            this.args = args;
+        }
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ *  Copyright (c) 2019, Salesforce.com, Inc.
+ *  All rights reserved.
+ *  Licensed under the BSD 3-Clause license.
+ *  For full license text, see LICENSE.txt file in the repo root  or https://opensource.org/licenses/BSD-3-Clause
+ */
+
+package com.salesforce.grpc.contrib.interceptor;
+
+import io.grpc.*;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Predicate;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * ClientInterceptorPipeline is a {@link ClientInterceptor} made of ordered stages. Each stage belongs to an
+ * {@link InterceptorPhase}, and may apply to only some methods.
+ *
+ * <ul>
+ *     <li>Stages run in phase order, and in the order they were added within a phase.</li>
+ *     <li>Stages that do not apply to a method are left out of its interceptor chain, which is compiled once per
+ *     method.</li>
+ *     <li>A {@link Guard} stage rejects a call by failing it, before any later stage is called or wraps the call.</li>
+ * </ul>
+ */
+public final class ClientInterceptorPipeline implements ClientInterceptor {
+    // Stands in for a method no stage applies to, since the chain map cannot hold null
+    private static final ClientInterceptor PASS_THROUGH = new ClientInterceptor() {
+        @Override
+        public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(MethodDescriptor<ReqT, RespT> method, CallOptions callOptions, Channel next) {
+            return next.newCall(method, callOptions);
+        }
+    };
+
+    private final List<Stage> stages;
+    private final ConcurrentMap<MethodDescriptor<?, ?>, ClientInterceptor> chains = new ConcurrentHashMap<>();
+
+    private ClientInterceptorPipeline(List<Stage> stages) {
+        this.stages = stages;
+    }
+
+    /**
+     * Creates a builder for an empty pipeline.
+     */
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    @Override
+    public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(MethodDescriptor<ReqT, RespT> method, CallOptions callOptions, Channel next) {
+        ClientInterceptor chain = chains.get(method);
+        if (chain == null) {
+            chain = chains.computeIfAbsent(method, this::compile);
+        }
+        return chain.interceptCall(method, callOptions, next);
+    }
+
+    private ClientInterceptor compile(MethodDescriptor<?, ?> method) {
+        List<ClientInterceptor> applicable = new ArrayList<>();
+        for (Stage stage : stages) {
+            if (stage.appliesTo.test(method)) {
+                applicable.add(stage.interceptor);
+            }
+        }
+        return applicable.isEmpty() ? PASS_THROUGH : new AggregateClientInterceptor(applicable);
+    }
+
+    /**
+     * Decides whether a call may proceed, without wrapping it.
+     */
+    @FunctionalInterface
+    public interface Guard {
+        /**
+         * Returns {@code null} to let the call proceed, or the status to fail it with.
+         */
+        @Nullable
+        Status check(MethodDescriptor<?, ?> method, CallOptions callOptions);
+    }
+
+    /**
+     * Builds a {@link ClientInterceptorPipeline}.
+     */
+    public static final class Builder {
+        private final List<Stage> stages = new ArrayList<>();
+
+        private Builder() {
+        }
+
+        /**
+         * Adds a stage that intercepts every method.
+         */
+        public Builder add(InterceptorPhase phase, ClientInterceptor interceptor) {
+            return add(phase, method -> true, interceptor);
+        }
+
+        /**
+         * Adds a stage that intercepts the methods matched by {@code appliesTo}. The predicate is evaluated once per
+         * method.
+         */
+        public Builder add(InterceptorPhase phase, Predicate<MethodDescriptor<?, ?>> appliesTo,
+                           ClientInterceptor interceptor) {
+            stages.add(new Stage(checkNotNull(phase, "phase"), checkNotNull(appliesTo, "appliesTo"),
+                    checkNotNull(interceptor, "interceptor")));
+            return this;
+        }
+
+        /**
+         * Adds a stage that checks every method.
+         */
+        public Builder guard(InterceptorPhase phase, Guard guard) {
+            return guard(phase, method -> true, guard);
+        }
+
+        /**
+         * Adds a stage that checks the methods matched by {@code appliesTo}. The predicate is evaluated once per
+         * method.
+         */
+        public Builder guard(InterceptorPhase phase, Predicate<MethodDescriptor<?, ?>> appliesTo, Guard guard) {
+            return add(phase, appliesTo, new GuardInterceptor(checkNotNull(guard, "guard")));
+        }
+
+        /**
+         * Builds the pipeline.
+         */
+        public ClientInterceptorPipeline build() {
+            checkState(!stages.isEmpty(), "ClientInterceptorPipeline requires at least one stage.");
+            List<Stage> ordered = new ArrayList<>(stages);
+            // List.sort is stable, preserving the order stages were added within a phase
+            ordered.sort(Comparator.comparing(stage -> stage.phase));
+            return new ClientInterceptorPipeline(ordered);
+        }
+    }
+
+    /**
+     * A stage, its phase, and the methods it applies to.
+     */
+    private static final class Stage {
+        private final InterceptorPhase phase;
+        private final Predicate<MethodDescriptor<?, ?>> appliesTo;
+        private final ClientInterceptor interceptor;
+
+        private Stage(InterceptorPhase phase, Predicate<MethodDescriptor<?, ?>> appliesTo,
+                      ClientInterceptor interceptor) {
+            this.phase = phase;
+            this.appliesTo = appliesTo;
+            this.interceptor = interceptor;
+        }
+    }
+
+    /**
+     * Runs a {@link Guard}, failing rejected calls.
+     */
+    private static final class GuardInterceptor implements ClientInterceptor {
+        private final Guard guard;
+
+        private GuardInterceptor(Guard guard) {
+            this.guard = guard;
+        }
+
+        @Override
+        public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(MethodDescriptor<ReqT, RespT> method, CallOptions callOptions, Channel next) {
+            Status status = guard.check(method, callOptions);
+            if (status == null) {
+                return next.newCall(method, callOptions);
+            }
+            return new FailedClientCall<>(status);
+        }
+    }
+
+    /**
+     * A call that fails with a fixed status as soon as it is started.
+     * @param <ReqT>
+     * @param <RespT>
+     */
+    private static final class FailedClientCall<ReqT, RespT> extends ClientCall<ReqT, RespT> {
+        private final Status status;
+
+        private FailedClientCall(Status status) {
+            this.status = status;
+        }
+
+        @Override
+        public void start(Listener<RespT> responseListener, Metadata headers) {
+            responseListener.onClose(status, new Metadata());
+        }
+
+        @Override
+        public void request(int numMessages) {
+        }
+
+        @Override
+        public void cancel(@Nullable String message, @Nullable Throwable cause) {
+        }
+
+        @Override
+        public void halfClose() {
+        }
+
+        @Override
+        public void sendMessage(ReqT message) {
+        }
+    }
+}
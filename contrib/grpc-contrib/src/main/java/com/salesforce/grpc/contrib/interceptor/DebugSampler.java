@@ -0,0 +1,189 @@
+/*
+ *  Copyright (c) 2019, Salesforce.com, Inc.
+ *  All rights reserved.
+ *  Licensed under the BSD 3-Clause license.
+ *  For full license text, see LICENSE.txt file in the repo root  or https://opensource.org/licenses/BSD-3-Clause
+ */
+
+package com.salesforce.grpc.contrib.interceptor;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
+import io.grpc.CallOptions;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * DebugSampler selects which calls {@link DebugServerInterceptor} and {@link DebugClientInterceptor} capture. The
+ * decision is made once per call, when it is intercepted, so calls that are not captured are passed through unwrapped.
+ *
+ * <p>A call is captured if it is selected explicitly, or if it passes both sampling limits:
+ * <ul>
+ *     <li>Selected explicitly: the method matches {@link Builder#captureMethods(Predicate)}, a server call carries the
+ *     header set with {@link Builder#captureHeader(Metadata.Key, String)}, or a client call carries
+ *     {@link #CAPTURE} in its {@link CallOptions}.</li>
+ *     <li>Sampled: a random one call in {@link Builder#oneIn(int) N}, and then at most
+ *     {@link Builder#maxPerSecondPerMethod(double) X per second} for each method.</li>
+ * </ul>
+ *
+ * <pre>
+ * DebugSampler sampler = DebugSampler.newBuilder()
+ *     .oneIn(100)
+ *     .maxPerSecondPerMethod(1)
+ *     .captureHeader(DebugSampler.X_DEBUG, "1")
+ *     .build();
+ * </pre>
+ */
+public final class DebugSampler {
+    /**
+     * The {@code x-debug} request header.
+     */
+    public static final Metadata.Key<String> X_DEBUG = Metadata.Key.of("x-debug", Metadata.ASCII_STRING_MARSHALLER);
+
+    /**
+     * Client calls with this option set to {@code true} are always captured.
+     */
+    public static final CallOptions.Key<Boolean> CAPTURE = CallOptions.Key.createWithDefault("debug-capture", false);
+
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final int oneIn;
+    private final long intervalNanos;
+    private final Predicate<MethodDescriptor<?, ?>> captureMethods;
+    private final Metadata.Key<String> captureHeader;
+    private final String captureHeaderValue;
+    private final Ticker ticker;
+    // The earliest time each method may be sampled again, by full method name
+    private final ConcurrentMap<String, AtomicLong> nextSampleNanos = new ConcurrentHashMap<>();
+
+    private DebugSampler(Builder builder) {
+        this.oneIn = builder.oneIn;
+        this.intervalNanos = builder.intervalNanos;
+        this.captureMethods = builder.captureMethods;
+        this.captureHeader = builder.captureHeader;
+        this.captureHeaderValue = builder.captureHeaderValue;
+        this.ticker = builder.ticker;
+    }
+
+    /**
+     * Creates a builder for a sampler that captures every call.
+     */
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    /**
+     * Decides whether to capture a server call.
+     */
+    public boolean sample(MethodDescriptor<?, ?> method, Metadata headers) {
+        if (captureHeader != null && captureHeaderValue.equals(headers.get(captureHeader))) {
+            return true;
+        }
+        return sample(method);
+    }
+
+    /**
+     * Decides whether to capture a client call.
+     */
+    public boolean sample(MethodDescriptor<?, ?> method, CallOptions callOptions) {
+        if (callOptions.getOption(CAPTURE)) {
+            return true;
+        }
+        return sample(method);
+    }
+
+    private boolean sample(MethodDescriptor<?, ?> method) {
+        if (captureMethods.test(method)) {
+            return true;
+        }
+        if (oneIn == 0 || (oneIn > 1 && ThreadLocalRandom.current().nextInt(oneIn) != 0)) {
+            return false;
+        }
+        return intervalNanos == 0 || tryAcquire(method.getFullMethodName());
+    }
+
+    private boolean tryAcquire(String fullMethodName) {
+        AtomicLong next = nextSampleNanos.get(fullMethodName);
+        if (next == null) {
+            next = nextSampleNanos.computeIfAbsent(fullMethodName, name -> new AtomicLong(ticker.read()));
+        }
+        long now = ticker.read();
+        long allowedAt = next.get();
+        // Only the caller that advances the next sample time captures the call
+        return now - allowedAt >= 0 && next.compareAndSet(allowedAt, now + intervalNanos);
+    }
+
+    /**
+     * Builds a {@link DebugSampler}.
+     */
+    public static final class Builder {
+        private int oneIn = 1;
+        private long intervalNanos;
+        private Predicate<MethodDescriptor<?, ?>> captureMethods = method -> false;
+        private Metadata.Key<String> captureHeader;
+        private String captureHeaderValue;
+        private Ticker ticker = Ticker.systemTicker();
+
+        private Builder() {
+        }
+
+        /**
+         * Samples a random one call in {@code n}. Zero samples no calls, leaving only explicitly selected calls to be
+         * captured.
+         */
+        public Builder oneIn(int n) {
+            checkArgument(n >= 0, "n must not be negative");
+            this.oneIn = n;
+            return this;
+        }
+
+        /**
+         * Samples at most {@code callsPerSecond} calls per second of each method.
+         */
+        public Builder maxPerSecondPerMethod(double callsPerSecond) {
+            checkArgument(callsPerSecond > 0, "callsPerSecond must be positive");
+            this.intervalNanos = Math.max(1, (long) (NANOS_PER_SECOND / callsPerSecond));
+            return this;
+        }
+
+        /**
+         * Always captures calls to the methods matched by {@code predicate}.
+         */
+        public Builder captureMethods(Predicate<MethodDescriptor<?, ?>> predicate) {
+            this.captureMethods = checkNotNull(predicate, "predicate");
+            return this;
+        }
+
+        /**
+         * Always captures server calls whose {@code key} header equals {@code value}, such as {@code x-debug: 1}.
+         */
+        public Builder captureHeader(Metadata.Key<String> key, String value) {
+            this.captureHeader = checkNotNull(key, "key");
+            this.captureHeaderValue = checkNotNull(value, "value");
+            return this;
+        }
+
+        @VisibleForTesting
+        Builder ticker(Ticker ticker) {
+            this.ticker = checkNotNull(ticker, "ticker");
+            return this;
+        }
+
+        /**
+         * Builds the sampler.
+         */
+        public DebugSampler build() {
+            return new DebugSampler(this);
+        }
+    }
+}
@@ -9,6 +9,7 @@ package com.salesforce.grpc.contrib.interceptor;
 
 import java.util.Arrays;
 import java.util.EnumSet;
+import java.util.function.Consumer;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -22,6 +23,17 @@ import io.grpc.ServerCallHandler;
 import io.grpc.ServerInterceptor;
 import io.grpc.ForwardingServerCall.SimpleForwardingServerCall;
 
+/**
+ * {@code DebugServerInterceptor} intercepts inbound requests and outbound responses to log the method name, headers,
+ * messages and cancellation as per given logging level.
+ *
+ * <p>By default each log line is formatted and logged on the calling thread. Use
+ * {@link #logAsynchronously(AsyncLogSink)} to format and log them on the sink's thread instead. Unless a subclass
+ * overrides {@link #log(String)} and logs synchronously, calls pass through unwrapped while
+ * {@link #isLogEnabled()} returns {@code false}.
+ * Use {@link #sampleWith(DebugSampler)} to capture only some calls, and {@link #renderMessagesWith(MessageRenderer)}
+ * to bound the size of logged messages.
+ */
 public class DebugServerInterceptor implements ServerInterceptor {
 
     private final Logger logger = LoggerFactory.getLogger(DebugServerInterceptor.class);
@@ -33,14 +45,58 @@ public class DebugServerInterceptor implements ServerInterceptor {
     }
 
     private EnumSet<Level> levels = EnumSet.of(Level.METHOD);
+    private final Consumer<String> logTarget = this::log;
+    private final boolean customLog = overridesLog();
+    // Set by the fluent setters and read by call threads
+    private volatile AsyncLogSink sink;
+    private volatile DebugSampler sampler;
+    private volatile MessageRenderer renderer;
 
     public DebugServerInterceptor(Level... levels) {
         this.levels = EnumSet.copyOf(Arrays.asList(levels));
     }
 
+    /**
+     * Only captures the calls selected by {@code sampler}. Other calls pass through unwrapped.
+     *
+     * @param sampler the sampler, or {@code null} to capture every call
+     * @return this
+     */
+    public DebugServerInterceptor sampleWith(DebugSampler sampler) {
+        this.sampler = sampler;
+        return this;
+    }
+
+    /**
+     * Renders logged messages with {@code renderer}, such as {@link MessageRenderer#truncating(int)} for methods with
+     * large messages.
+     *
+     * @param renderer the renderer, or {@code null} to log each message's {@code toString()}
+     * @return this
+     */
+    public DebugServerInterceptor renderMessagesWith(MessageRenderer renderer) {
+        this.renderer = renderer;
+        return this;
+    }
+
+    /**
+     * Hands log lines to {@code sink}, which formats and logs them on its own thread.
+     *
+     * @param sink the sink, or {@code null} to log on the calling thread
+     * @return this
+     */
+    public DebugServerInterceptor logAsynchronously(AsyncLogSink sink) {
+        this.sink = sink;
+        return this;
+    }
+
     @Override
     public <ReqT, RespT> Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers,
             ServerCallHandler<ReqT, RespT> next) {
+        DebugSampler sampler = this.sampler;
+        if (!isLogged() || sampler != null && !sampler.sample(call.getMethodDescriptor(), headers)) {
+            return next.startCall(call, headers);
+        }
         logMethod(REQUEST, call.getMethodDescriptor());
         logHeaders(REQUEST, headers);
         return new ForwardingServerCallListener.SimpleForwardingServerCallListener<ReqT>(
@@ -77,29 +133,75 @@ public class DebugServerInterceptor implements ServerInterceptor {
     }
 
     private <ReqT, RespT> void logMethod(String type, MethodDescriptor<ReqT, RespT> method) {
-        if (levels.contains(Level.METHOD)) {
-            log(String.format("%s path : %s", type, method.getFullMethodName()));
+        if (shouldLog(Level.METHOD)) {
+            log("%s path : %s", type, method.getFullMethodName());
         }
     }
 
     private void logHeaders(String type, Metadata headers) {
-        if (levels.contains(Level.HEADERS)) {
-            log(String.format("%s headers : %s", type, headers));
+        if (shouldLog(Level.HEADERS)) {
+            log("%s headers : %s", type, sink == null ? headers : copy(headers));
         }
     }
 
     private <T> void logMessage(String type, T message) {
-        if (levels.contains(Level.MESSAGE)) {
-            log(String.format("%s message : %s", type, message));
+        if (shouldLog(Level.MESSAGE)) {
+            MessageRenderer renderer = this.renderer;
+            log("%s message : %s", type, renderer == null ? message : new RenderedMessage(renderer, message));
         }
     }
 
     private <ReqT, RespT> void logCancellation(MethodDescriptor<ReqT, RespT> method) {
-        if (levels.contains(Level.CANCEL)) {
-            log(String.format("Call for method %s cancelled", method.getFullMethodName()));
+        if (shouldLog(Level.CANCEL)) {
+            log("Call for method %s cancelled", method.getFullMethodName());
         }
     }
 
+    private boolean shouldLog(Level level) {
+        return levels.contains(level) && isLogged();
+    }
+
+    private boolean isLogged() {
+        // Subclasses that override log(String) decide themselves what to log, unless lines go through a sink
+        return isLogEnabled() || customLog && sink == null;
+    }
+
+    private boolean overridesLog() {
+        for (Class<?> type = getClass(); type != DebugServerInterceptor.class; type = type.getSuperclass()) {
+            try {
+                type.getDeclaredMethod("log", String.class);
+                return true;
+            } catch (NoSuchMethodException ex) {
+                // Not overridden by this class
+            }
+        }
+        return false;
+    }
+
+    private void log(String format, Object... args) {
+        AsyncLogSink sink = this.sink;
+        if (sink == null) {
+            log(String.format(format, args));
+        } else {
+            sink.offer(logTarget, format, args);
+        }
+    }
+
+    private static Metadata copy(Metadata headers) {
+        // Headers may be changed by the transport before the sink formats them
+        Metadata copy = new Metadata();
+        copy.merge(headers);
+        return copy;
+    }
+
+    /**
+     * Returns {@code true} if log lines will be logged. Not consulted when {@link #log(String)} is overridden and lines
+     * are logged synchronously.
+     */
+    protected boolean isLogEnabled() {
+        return logger.isDebugEnabled();
+    }
+
     protected void log(String logmessage) {
         logger.debug(logmessage);
     }
@@ -0,0 +1,34 @@
+/*
+ *  Copyright (c) 2019, Salesforce.com, Inc.
+ *  All rights reserved.
+ *  Licensed under the BSD 3-Clause license.
+ *  For full license text, see LICENSE.txt file in the repo root  or https://opensource.org/licenses/BSD-3-Clause
+ */
+
+package com.salesforce.grpc.contrib.interceptor;
+
+/**
+ * The phase of a stage in a {@link ServerInterceptorPipeline} or {@link ClientInterceptorPipeline}. Stages run in
+ * phase order, outermost first, and in the order they were added within a phase.
+ *
+ * <p>Stages that may reject a call run before stages that wrap it, so a rejected call never pays for observability or
+ * application wrapping.
+ */
+public enum InterceptorPhase {
+    /**
+     * Establishes and checks the identity of the caller.
+     */
+    AUTHENTICATION,
+    /**
+     * Decides whether the call is accepted, for example by rate limiting or load shedding.
+     */
+    ADMISSION,
+    /**
+     * Observes accepted calls, for example by logging, tracing or timing them.
+     */
+    OBSERVABILITY,
+    /**
+     * Everything else, closest to the service or channel.
+     */
+    APPLICATION
+}
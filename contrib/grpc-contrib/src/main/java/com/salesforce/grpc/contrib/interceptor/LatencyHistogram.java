@@ -0,0 +1,216 @@
+/*
+ *  Copyright (c) 2019, Salesforce.com, Inc.
+ *  All rights reserved.
+ *  Licensed under the BSD 3-Clause license.
+ *  For full license text, see LICENSE.txt file in the repo root  or https://opensource.org/licenses/BSD-3-Clause
+ */
+
+package com.salesforce.grpc.contrib.interceptor;
+
+import com.google.common.annotations.VisibleForTesting;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * LatencyHistogram is a lock-free histogram of latencies, in the style of HdrHistogram. Latencies are counted in
+ * log-linear buckets: every power of two nanoseconds is split into 32 equal buckets, so recorded values are accurate to
+ * within about 3%. Latencies longer than {@link #MAX_NANOS}, about 73 minutes, are counted as {@code MAX_NANOS}, which
+ * keeps each stripe of counts under 10 KB.
+ *
+ * <p>Counts are striped by thread, so recording from many cores does not contend on the same memory. Recording is a
+ * single atomic increment, and never allocates once a thread's stripe exists.
+ *
+ * <p>{@link #snapshot()} and {@link #snapshotAndReset()} merge the stripes into an immutable {@link Snapshot}. A
+ * latency recorded concurrently with {@code snapshotAndReset()} is counted in either that snapshot or the next one.
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_NANOS_BITS = 42;
+    /**
+     * The longest latency told apart from longer ones, about 73 minutes.
+     */
+    public static final long MAX_NANOS = (1L << MAX_NANOS_BITS) - 1;
+    @VisibleForTesting
+    static final int BUCKETS = (MAX_NANOS_BITS - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+    private static final int MAX_STRIPES = 16;
+    private static final int STRIPES = Math.min(MAX_STRIPES,
+            Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() * 2 - 1)));
+
+    // Allocated on first use, so threads that never record into this histogram cost nothing
+    private final AtomicReferenceArray<AtomicLongArray> stripes = new AtomicReferenceArray<>(STRIPES);
+
+    /**
+     * Records one latency.
+     */
+    public void record(long nanos) {
+        stripe().incrementAndGet(bucket(Math.max(0, nanos)));
+    }
+
+    /**
+     * Records one latency.
+     */
+    public void record(Duration duration) {
+        record(duration.toNanos());
+    }
+
+    /**
+     * Returns the latencies recorded so far.
+     */
+    public Snapshot snapshot() {
+        return collect(false);
+    }
+
+    /**
+     * Returns the latencies recorded so far, and starts again from zero.
+     */
+    public Snapshot snapshotAndReset() {
+        return collect(true);
+    }
+
+    /**
+     * Discards the latencies recorded so far.
+     */
+    public void reset() {
+        collect(true);
+    }
+
+    private AtomicLongArray stripe() {
+        int index = (int) Thread.currentThread().getId() & (STRIPES - 1);
+        AtomicLongArray stripe = stripes.get(index);
+        if (stripe == null) {
+            stripes.compareAndSet(index, null, new AtomicLongArray(BUCKETS));
+            stripe = stripes.get(index);
+        }
+        return stripe;
+    }
+
+    private Snapshot collect(boolean reset) {
+        long[] counts = new long[BUCKETS];
+        for (int i = 0; i < STRIPES; i++) {
+            AtomicLongArray stripe = stripes.get(i);
+            if (stripe == null) {
+                continue;
+            }
+            for (int bucket = 0; bucket < BUCKETS; bucket++) {
+                counts[bucket] += reset ? stripe.getAndSet(bucket, 0) : stripe.get(bucket);
+            }
+        }
+        return new Snapshot(counts);
+    }
+
+    @VisibleForTesting
+    static int bucket(long nanos) {
+        nanos = Math.min(nanos, MAX_NANOS);
+        if (nanos < SUB_BUCKETS) {
+            return (int) nanos;
+        }
+        int shift = Long.SIZE - 1 - Long.numberOfLeadingZeros(nanos) - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) ((nanos >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    /**
+     * Returns the highest latency counted in {@code bucket}.
+     */
+    @VisibleForTesting
+    static long highestValue(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long lowest = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+        return lowest + ((1L << shift) - 1);
+    }
+
+    /**
+     * An immutable copy of the latencies in a {@link LatencyHistogram}.
+     */
+    public static final class Snapshot {
+        private static final double P50 = 0.5;
+        private static final double P99 = 0.99;
+        private static final double P999 = 0.999;
+
+        private final long[] counts;
+        private final long count;
+
+        private Snapshot(long[] counts) {
+            this.counts = counts;
+            long total = 0;
+            for (long bucketCount : counts) {
+                total += bucketCount;
+            }
+            this.count = total;
+        }
+
+        /**
+         * Returns the number of latencies recorded.
+         */
+        public long count() {
+            return count;
+        }
+
+        /**
+         * Returns the latency that {@code percentile} of the recorded latencies are at or below, or zero if no latency
+         * was recorded.
+         *
+         * @param percentile between 0 and 1, such as 0.99 for the 99th percentile
+         */
+        public Duration percentile(double percentile) {
+            checkArgument(percentile >= 0 && percentile <= 1, "percentile must be between 0 and 1");
+            if (count == 0) {
+                return Duration.ZERO;
+            }
+            long rank = Math.max(1, (long) Math.ceil(percentile * count));
+            long seen = 0;
+            for (int bucket = 0; bucket < counts.length; bucket++) {
+                seen += counts[bucket];
+                if (seen >= rank) {
+                    return Duration.ofNanos(highestValue(bucket));
+                }
+            }
+            return max();
+        }
+
+        /**
+         * Returns the median latency.
+         */
+        public Duration p50() {
+            return percentile(P50);
+        }
+
+        /**
+         * Returns the 99th percentile latency.
+         */
+        public Duration p99() {
+            return percentile(P99);
+        }
+
+        /**
+         * Returns the 99.9th percentile latency.
+         */
+        public Duration p999() {
+            return percentile(P999);
+        }
+
+        /**
+         * Returns the highest latency recorded, or zero if no latency was recorded.
+         */
+        public Duration max() {
+            for (int bucket = counts.length - 1; bucket >= 0; bucket--) {
+                if (counts[bucket] > 0) {
+                    return Duration.ofNanos(highestValue(bucket));
+                }
+            }
+            return Duration.ZERO;
+        }
+
+        @Override
+        public String toString() {
+            return "count=" + count + " p50=" + p50() + " p99=" + p99() + " p999=" + p999() + " max=" + max();
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ *  Copyright (c) 2019, Salesforce.com, Inc.
+ *  All rights reserved.
+ *  Licensed under the BSD 3-Clause license.
+ *  For full license text, see LICENSE.txt file in the repo root  or https://opensource.org/licenses/BSD-3-Clause
+ */
+
+package com.salesforce.grpc.contrib.interceptor;
+
+import io.grpc.Status;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * LatencyHistograms holds one {@link LatencyHistogram} for each full method name and status code. It is filled by
+ * {@link StopwatchServerInterceptor} and {@link StopwatchClientInterceptor}, and can be shared between several
+ * interceptors.
+ *
+ * <pre>
+ * LatencyHistograms histograms = new LatencyHistograms();
+ * ServerInterceptor stopwatch = new StopwatchServerInterceptor(histograms);
+ * ...
+ * histograms.snapshotAndReset().forEach((method, byStatus) -&gt; ...);
+ * </pre>
+ */
+public final class LatencyHistograms {
+    private static final Status.Code[] CODES = Status.Code.values();
+
+    private final ConcurrentMap<String, AtomicReferenceArray<LatencyHistogram>> histograms = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the histogram of calls to {@code fullMethodName} that ended with {@code code}, creating it if needed.
+     */
+    public LatencyHistogram histogram(String fullMethodName, Status.Code code) {
+        AtomicReferenceArray<LatencyHistogram> byCode = histograms.get(fullMethodName);
+        if (byCode == null) {
+            byCode = histograms.computeIfAbsent(fullMethodName, name -> new AtomicReferenceArray<>(CODES.length));
+        }
+        LatencyHistogram histogram = byCode.get(code.ordinal());
+        if (histogram == null) {
+            byCode.compareAndSet(code.ordinal(), null, new LatencyHistogram());
+            histogram = byCode.get(code.ordinal());
+        }
+        return histogram;
+    }
+
+    /**
+     * Records the latency of one call to {@code fullMethodName} that ended with {@code code}.
+     */
+    public void record(String fullMethodName, Status.Code code, long nanos) {
+        histogram(fullMethodName, code).record(nanos);
+    }
+
+    /**
+     * Returns the latencies recorded so far, by full method name and then status code.
+     */
+    public Map<String, Map<Status.Code, LatencyHistogram.Snapshot>> snapshot() {
+        return collect(false);
+    }
+
+    /**
+     * Returns the latencies recorded so far, by full method name and then status code, and starts again from zero.
+     */
+    public Map<String, Map<Status.Code, LatencyHistogram.Snapshot>> snapshotAndReset() {
+        return collect(true);
+    }
+
+    /**
+     * Discards the latencies recorded so far.
+     */
+    public void reset() {
+        collect(true);
+    }
+
+    private Map<String, Map<Status.Code, LatencyHistogram.Snapshot>> collect(boolean reset) {
+        Map<String, Map<Status.Code, LatencyHistogram.Snapshot>> snapshots = new TreeMap<>();
+        histograms.forEach((fullMethodName, byCode) -> {
+            Map<Status.Code, LatencyHistogram.Snapshot> byStatus = new EnumMap<>(Status.Code.class);
+            for (Status.Code code : CODES) {
+                LatencyHistogram histogram = byCode.get(code.ordinal());
+                if (histogram != null) {
+                    byStatus.put(code, reset ? histogram.snapshotAndReset() : histogram.snapshot());
+                }
+            }
+            snapshots.put(fullMethodName, Collections.unmodifiableMap(byStatus));
+        });
+        return Collections.unmodifiableMap(snapshots);
+    }
+}
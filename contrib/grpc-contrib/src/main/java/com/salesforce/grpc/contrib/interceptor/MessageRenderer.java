@@ -0,0 +1,75 @@
+/*
+ *  Copyright (c) 2019, Salesforce.com, Inc.
+ *  All rights reserved.
+ *  Licensed under the BSD 3-Clause license.
+ *  For full license text, see LICENSE.txt file in the repo root  or https://opensource.org/licenses/BSD-3-Clause
+ */
+
+package com.salesforce.grpc.contrib.interceptor;
+
+import com.google.common.io.ByteStreams;
+import com.google.protobuf.MessageLite;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * MessageRenderer renders messages for {@link DebugServerInterceptor} and {@link DebugClientInterceptor}.
+ *
+ * <ul>
+ *     <li>{@link #full()} renders the whole message with {@code toString()}.</li>
+ *     <li>{@link #truncating(int)} renders at most a fixed number of characters of a protobuf message, summarizing
+ *     repeated fields as counts and large byte strings as sizes.</li>
+ *     <li>{@link #sizeAndHash()} renders only the serialized size and CRC32 of a protobuf message.</li>
+ * </ul>
+ *
+ * <p>The last two are safe to use on methods with very large messages.
+ */
+@FunctionalInterface
+public interface MessageRenderer {
+    /**
+     * Renders {@code message}.
+     */
+    String render(Object message);
+
+    /**
+     * Renders whole messages with {@code toString()}.
+     */
+    static MessageRenderer full() {
+        return String::valueOf;
+    }
+
+    /**
+     * Renders protobuf messages field by field, stopping after about {@code budget} characters. Repeated and map
+     * fields are rendered as their element count, and byte strings as their size. Other messages are rendered with
+     * {@code toString()}, then truncated.
+     */
+    static MessageRenderer truncating(int budget) {
+        checkArgument(budget > 0, "budget must be positive");
+        return message -> new TruncatingMessageRenderer(budget).render(message);
+    }
+
+    /**
+     * Renders the serialized size and CRC32 of protobuf messages, without building the serialized form in memory.
+     * Other messages are rendered as their class name.
+     */
+    static MessageRenderer sizeAndHash() {
+        return message -> {
+            if (!(message instanceof MessageLite)) {
+                return message == null ? "null" : message.getClass().getName();
+            }
+            MessageLite lite = (MessageLite) message;
+            CRC32 crc = new CRC32();
+            try {
+                lite.writeTo(new CheckedOutputStream(ByteStreams.nullOutputStream(), crc));
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+            return String.format("<%d bytes, crc32=%08x>", lite.getSerializedSize(), crc.getValue());
+        };
+    }
+}
@@ -0,0 +1,26 @@
+/*
+ *  Copyright (c) 2019, Salesforce.com, Inc.
+ *  All rights reserved.
+ *  Licensed under the BSD 3-Clause license.
+ *  For full license text, see LICENSE.txt file in the repo root  or https://opensource.org/licenses/BSD-3-Clause
+ */
+
+package com.salesforce.grpc.contrib.interceptor;
+
+/**
+ * A message that is rendered when it is formatted, so an {@link AsyncLogSink} renders it on its own thread.
+ */
+final class RenderedMessage {
+    private final MessageRenderer renderer;
+    private final Object message;
+
+    RenderedMessage(MessageRenderer renderer, Object message) {
+        this.renderer = renderer;
+        this.message = message;
+    }
+
+    @Override
+    public String toString() {
+        return renderer.render(message);
+    }
+}
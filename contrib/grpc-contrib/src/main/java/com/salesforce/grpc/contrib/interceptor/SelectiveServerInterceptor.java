@@ -0,0 +1,67 @@
+/*
+ *  Copyright (c) 2019, Salesforce.com, Inc.
+ *  All rights reserved.
+ *  Licensed under the BSD 3-Clause license.
+ *  For full license text, see LICENSE.txt file in the repo root  or https://opensource.org/licenses/BSD-3-Clause
+ */
+
+package com.salesforce.grpc.contrib.interceptor;
+
+import io.grpc.*;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * SelectiveServerInterceptor is a {@link ServerInterceptor} that only applies to some methods. When used inside an
+ * {@link AggregateServerInterceptor}, it is left out of the handler chain of every other method entirely, rather than
+ * being called and passing the call through.
+ *
+ * <p>{@link #appliesTo(MethodDescriptor)} is evaluated once per method, not once per call, so its answer must not
+ * change over time. Implementations must still pass other methods' calls through when used on their own, for example
+ * with {@link ServerInterceptors#intercept(ServerServiceDefinition, ServerInterceptor...)}.
+ */
+public interface SelectiveServerInterceptor extends ServerInterceptor {
+    /**
+     * Returns {@code true} if this interceptor should intercept calls to {@code method}.
+     */
+    boolean appliesTo(MethodDescriptor<?, ?> method);
+
+    /**
+     * Restricts {@code interceptor} to the methods matched by {@code predicate}. Calls to other methods are passed
+     * straight to the next handler, whether or not the interceptor is used inside an {@link AggregateServerInterceptor}.
+     */
+    static SelectiveServerInterceptor forMethods(Predicate<MethodDescriptor<?, ?>> predicate,
+                                                 ServerInterceptor interceptor) {
+        checkNotNull(predicate, "predicate");
+        checkNotNull(interceptor, "interceptor");
+        return new SelectiveServerInterceptor() {
+            @Override
+            public boolean appliesTo(MethodDescriptor<?, ?> method) {
+                return predicate.test(method);
+            }
+
+            @Override
+            public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers, ServerCallHandler<ReqT, RespT> next) {
+                if (!appliesTo(call.getMethodDescriptor())) {
+                    return next.startCall(call, headers);
+                }
+                return interceptor.interceptCall(call, headers, next);
+            }
+        };
+    }
+
+    /**
+     * Restricts {@code interceptor} to the methods of the named services.
+     *
+     * @param serviceNames fully qualified service names, such as {@code grpc.health.v1.Health}
+     */
+    static SelectiveServerInterceptor forServices(ServerInterceptor interceptor, String... serviceNames) {
+        Set<String> services = new HashSet<>(Arrays.asList(checkNotNull(serviceNames, "serviceNames")));
+        return forMethods(method -> services.contains(method.getServiceName()), interceptor);
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ *  Copyright (c) 2019, Salesforce.com, Inc.
+ *  All rights reserved.
+ *  Licensed under the BSD 3-Clause license.
+ *  For full license text, see LICENSE.txt file in the repo root  or https://opensource.org/licenses/BSD-3-Clause
+ */
+
+package com.salesforce.grpc.contrib.interceptor;
+
+import io.grpc.*;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Predicate;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * ServerInterceptorPipeline is a {@link ServerInterceptor} made of ordered stages. Each stage belongs to an
+ * {@link InterceptorPhase}, and may apply to only some methods.
+ *
+ * <ul>
+ *     <li>Stages run in phase order, and in the order they were added within a phase.</li>
+ *     <li>Stages that do not apply to a method are left out of its handler chain, which is composed once per method.
+ *     </li>
+ *     <li>A {@link Guard} stage rejects a call by closing it, before any later stage is called or wraps the call.</li>
+ * </ul>
+ *
+ * <pre>
+ * ServerInterceptorPipeline pipeline = ServerInterceptorPipeline.newBuilder()
+ *     .add(InterceptorPhase.OBSERVABILITY, new StopwatchServerInterceptor())
+ *     .guard(InterceptorPhase.ADMISSION, (call, headers) -&gt; limiter.tryAcquire() ? null : Status.RESOURCE_EXHAUSTED)
+ *     .build();
+ * </pre>
+ */
+public final class ServerInterceptorPipeline implements ServerInterceptor {
+    private static final ServerCall.Listener<?> NOOP_LISTENER = new ServerCall.Listener<Object>() { };
+
+    private final AggregateServerInterceptor stages;
+
+    private ServerInterceptorPipeline(List<ServerInterceptor> stages) {
+        this.stages = new AggregateServerInterceptor(stages);
+    }
+
+    /**
+     * Creates a builder for an empty pipeline.
+     */
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    @Override
+    public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers, ServerCallHandler<ReqT, RespT> next) {
+        return stages.interceptCall(call, headers, next);
+    }
+
+    /**
+     * Decides whether a call may proceed, without wrapping it.
+     */
+    @FunctionalInterface
+    public interface Guard {
+        /**
+         * Returns {@code null} to let the call proceed, or the status to close it with.
+         */
+        @Nullable
+        Status check(ServerCall<?, ?> call, Metadata headers);
+    }
+
+    /**
+     * Builds a {@link ServerInterceptorPipeline}.
+     */
+    public static final class Builder {
+        private final List<Stage> stages = new ArrayList<>();
+
+        private Builder() {
+        }
+
+        /**
+         * Adds a stage that intercepts every method.
+         */
+        public Builder add(InterceptorPhase phase, ServerInterceptor interceptor) {
+            return add(phase, method -> true, interceptor);
+        }
+
+        /**
+         * Adds a stage that intercepts the methods matched by {@code appliesTo}. The predicate is evaluated once per
+         * method.
+         */
+        public Builder add(InterceptorPhase phase, Predicate<MethodDescriptor<?, ?>> appliesTo,
+                           ServerInterceptor interceptor) {
+            checkNotNull(phase, "phase");
+            stages.add(new Stage(phase, SelectiveServerInterceptor.forMethods(appliesTo, interceptor)));
+            return this;
+        }
+
+        /**
+         * Adds a stage that checks every method.
+         */
+        public Builder guard(InterceptorPhase phase, Guard guard) {
+            return guard(phase, method -> true, guard);
+        }
+
+        /**
+         * Adds a stage that checks the methods matched by {@code appliesTo}. The predicate is evaluated once per
+         * method.
+         */
+        public Builder guard(InterceptorPhase phase, Predicate<MethodDescriptor<?, ?>> appliesTo, Guard guard) {
+            return add(phase, appliesTo, new GuardInterceptor(checkNotNull(guard, "guard")));
+        }
+
+        /**
+         * Builds the pipeline.
+         */
+        public ServerInterceptorPipeline build() {
+            checkState(!stages.isEmpty(), "ServerInterceptorPipeline requires at least one stage.");
+            List<Stage> ordered = new ArrayList<>(stages);
+            // List.sort is stable, preserving the order stages were added within a phase
+            ordered.sort(Comparator.comparing(stage -> stage.phase));
+            List<ServerInterceptor> interceptors = new ArrayList<>(ordered.size());
+            for (Stage stage : ordered) {
+                interceptors.add(stage.interceptor);
+            }
+            return new ServerInterceptorPipeline(interceptors);
+        }
+    }
+
+    /**
+     * A stage and its phase.
+     */
+    private static final class Stage {
+        private final InterceptorPhase phase;
+        private final ServerInterceptor interceptor;
+
+        private Stage(InterceptorPhase phase, ServerInterceptor interceptor) {
+            this.phase = phase;
+            this.interceptor = interceptor;
+        }
+    }
+
+    /**
+     * Runs a {@link Guard}, closing rejected calls.
+     */
+    private static final class GuardInterceptor implements ServerInterceptor {
+        private final Guard guard;
+
+        private GuardInterceptor(Guard guard) {
+            this.guard = guard;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers, ServerCallHandler<ReqT, RespT> next) {
+            Status status = guard.check(call, headers);
+            if (status == null) {
+                return next.startCall(call, headers);
+            }
+            call.close(status, new Metadata());
+            return (ServerCall.Listener<ReqT>) NOOP_LISTENER;
+        }
+    }
+}
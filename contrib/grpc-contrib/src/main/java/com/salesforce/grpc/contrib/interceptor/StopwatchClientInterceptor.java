@@ -7,29 +7,51 @@
 
 package com.salesforce.grpc.contrib.interceptor;
 
-import com.google.common.base.Stopwatch;
 import io.grpc.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.time.Duration;
-import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkNotNull;
 
 /**
  * {@code StopwatchClientInterceptor} logs the beginning and end of an outbound gRPC request, along with the total
  * round-trip time.
  *
  * <p>Typical usage would override {@link #logStart(MethodDescriptor)} and {@link #logStop(MethodDescriptor, Duration)}.
+ *
+ * <p>Alternatively, construct it with {@link LatencyHistograms} to record the round-trip time of every call by method
+ * and status code, without logging each call.
  */
 public class StopwatchClientInterceptor implements ClientInterceptor {
     private final Logger logger = LoggerFactory.getLogger(StopwatchClientInterceptor.class);
+    private final LatencyHistograms histograms;
+
+    /**
+     * Logs the beginning and end of every call.
+     */
+    public StopwatchClientInterceptor() {
+        this.histograms = null;
+    }
+
+    /**
+     * Records the round-trip time of every call in {@code histograms}, instead of logging it.
+     *
+     * @param histograms the histograms to record into
+     */
+    public StopwatchClientInterceptor(LatencyHistograms histograms) {
+        this.histograms = checkNotNull(histograms, "histograms");
+    }
 
     @Override
     public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(MethodDescriptor<ReqT, RespT> method, CallOptions callOptions, Channel next) {
-        logStart(method);
+        if (histograms == null) {
+            logStart(method);
+        }
 
         return new ForwardingClientCall.SimpleForwardingClientCall<ReqT, RespT>(next.newCall(method, callOptions)) {
-            private Stopwatch stopwatch = Stopwatch.createStarted();
+            private final long startNanos = System.nanoTime();
 
             @Override
             public void start(Listener<RespT> responseListener, Metadata headers) {
@@ -37,7 +59,12 @@ public class StopwatchClientInterceptor implements ClientInterceptor {
                     @Override
                     public void onClose(Status status, Metadata trailers) {
                         super.onClose(status, trailers);
-                        logStop(method, Duration.ofNanos(stopwatch.stop().elapsed(TimeUnit.NANOSECONDS)));
+                        long nanos = System.nanoTime() - startNanos;
+                        if (histograms != null) {
+                            histograms.record(method.getFullMethodName(), status.getCode(), nanos);
+                        } else {
+                            logStop(method, Duration.ofNanos(nanos));
+                        }
                     }
                 }, headers);
             }
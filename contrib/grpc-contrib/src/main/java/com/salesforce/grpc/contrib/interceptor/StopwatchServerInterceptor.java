@@ -7,36 +7,81 @@
 
 package com.salesforce.grpc.contrib.interceptor;
 
-import com.google.common.base.Stopwatch;
 import io.grpc.*;
 
 import java.time.Duration;
-import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkNotNull;
 
 /**
  * {@code StopwatchServerInterceptor} logs the beginning and end of an inbound gRPC request, along with the total
  * processing time.
  *
  * <p>Typical usage would override {@link #logStart(MethodDescriptor)} and {@link #logStop(MethodDescriptor, Duration)}.
+ *
+ * <p>Alternatively, construct it with {@link LatencyHistograms} to record the processing time of every call by method
+ * and status code, without logging each call. Cancelled calls are recorded as {@link Status.Code#CANCELLED}.
  */
 public class StopwatchServerInterceptor implements ServerInterceptor {
+    private final LatencyHistograms histograms;
+
+    /**
+     * Logs the beginning and end of every call.
+     */
+    public StopwatchServerInterceptor() {
+        this.histograms = null;
+    }
+
+    /**
+     * Records the processing time of every call in {@code histograms}, instead of logging it.
+     *
+     * @param histograms the histograms to record into
+     */
+    public StopwatchServerInterceptor(LatencyHistograms histograms) {
+        this.histograms = checkNotNull(histograms, "histograms");
+    }
+
     @Override
     public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers, ServerCallHandler<ReqT, RespT> next) {
+        if (histograms != null) {
+            return recordCall(call, headers, next);
+        }
+
         logStart(call.getMethodDescriptor());
 
         return new ForwardingServerCallListener.SimpleForwardingServerCallListener<ReqT>(next.startCall(call, headers)) {
-            private Stopwatch stopwatch = Stopwatch.createStarted();
+            private final long startNanos = System.nanoTime();
+
+            @Override
+            public void onCancel() {
+                super.onCancel();
+                logCancel(call.getMethodDescriptor(), Duration.ofNanos(System.nanoTime() - startNanos));
+            }
+
+            @Override
+            public void onComplete() {
+                super.onComplete();
+                logStop(call.getMethodDescriptor(), Duration.ofNanos(System.nanoTime() - startNanos));
+            }
+        };
+    }
+
+    private <ReqT, RespT> ServerCall.Listener<ReqT> recordCall(ServerCall<ReqT, RespT> call, Metadata headers, ServerCallHandler<ReqT, RespT> next) {
+        long startNanos = System.nanoTime();
+        String fullMethodName = call.getMethodDescriptor().getFullMethodName();
+        RecordingServerCall<ReqT, RespT> recordingCall = new RecordingServerCall<>(call);
 
+        return new ForwardingServerCallListener.SimpleForwardingServerCallListener<ReqT>(next.startCall(recordingCall, headers)) {
             @Override
             public void onCancel() {
                 super.onCancel();
-                logCancel(call.getMethodDescriptor(), Duration.ofNanos(stopwatch.stop().elapsed(TimeUnit.NANOSECONDS)));
+                histograms.record(fullMethodName, Status.Code.CANCELLED, System.nanoTime() - startNanos);
             }
 
             @Override
             public void onComplete() {
                 super.onComplete();
-                logStop(call.getMethodDescriptor(), Duration.ofNanos(stopwatch.stop().elapsed(TimeUnit.NANOSECONDS)));
+                histograms.record(fullMethodName, recordingCall.code, System.nanoTime() - startNanos);
             }
         };
     }
@@ -71,4 +116,23 @@ public class StopwatchServerInterceptor implements ServerInterceptor {
     protected void logCancel(MethodDescriptor method, Duration duration) {
         logStop(method, duration);
     }
+
+    /**
+     * Remembers the status code a call was closed with.
+     * @param <ReqT> the request message type
+     * @param <RespT> the response message type
+     */
+    private static final class RecordingServerCall<ReqT, RespT> extends ForwardingServerCall.SimpleForwardingServerCall<ReqT, RespT> {
+        private volatile Status.Code code = Status.Code.UNKNOWN;
+
+        private RecordingServerCall(ServerCall<ReqT, RespT> delegate) {
+            super(delegate);
+        }
+
+        @Override
+        public void close(Status status, Metadata trailers) {
+            code = status.getCode();
+            super.close(status, trailers);
+        }
+    }
 }
@@ -0,0 +1,94 @@
+/*
+ *  Copyright (c) 2019, Salesforce.com, Inc.
+ *  All rights reserved.
+ *  Licensed under the BSD 3-Clause license.
+ *  For full license text, see LICENSE.txt file in the repo root  or https://opensource.org/licenses/BSD-3-Clause
+ */
+
+package com.salesforce.grpc.contrib.interceptor;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.Descriptors;
+import com.google.protobuf.MessageOrBuilder;
+
+import java.util.Map;
+
+/**
+ * Renders one message in a text format similar to protobuf's, until a character budget runs out. Used by
+ * {@link MessageRenderer#truncating(int)}.
+ */
+final class TruncatingMessageRenderer {
+    private static final String ELLIPSIS = "...";
+
+    private final int budget;
+    private final StringBuilder out = new StringBuilder();
+    private boolean truncated;
+
+    TruncatingMessageRenderer(int budget) {
+        this.budget = budget;
+    }
+
+    String render(Object message) {
+        if (message instanceof MessageOrBuilder) {
+            renderFields((MessageOrBuilder) message);
+        } else {
+            append(String.valueOf(message));
+        }
+        return out.toString();
+    }
+
+    private void renderFields(MessageOrBuilder message) {
+        for (Map.Entry<Descriptors.FieldDescriptor, Object> entry : message.getAllFields().entrySet()) {
+            Descriptors.FieldDescriptor field = entry.getKey();
+            if (out.length() > 0) {
+                append(" ");
+            }
+            append(field.getName());
+            if (field.isRepeated()) {
+                append(": [" + message.getRepeatedFieldCount(field) + " items]");
+            } else if (field.getJavaType() == Descriptors.FieldDescriptor.JavaType.MESSAGE) {
+                append(" {");
+                renderFields((MessageOrBuilder) entry.getValue());
+                append(" }");
+            } else {
+                append(": ");
+                renderValue(field, entry.getValue());
+            }
+            if (truncated) {
+                return;
+            }
+        }
+    }
+
+    private void renderValue(Descriptors.FieldDescriptor field, Object value) {
+        switch (field.getJavaType()) {
+            case STRING:
+                append("\"");
+                append((String) value);
+                append("\"");
+                break;
+            case BYTE_STRING:
+                append("<" + ((ByteString) value).size() + " bytes>");
+                break;
+            case ENUM:
+                append(((Descriptors.EnumValueDescriptor) value).getName());
+                break;
+            default:
+                append(String.valueOf(value));
+                break;
+        }
+    }
+
+    private void append(String text) {
+        if (truncated) {
+            return;
+        }
+        int remaining = budget - out.length();
+        if (text.length() <= remaining) {
+            out.append(text);
+        } else {
+            out.append(text, 0, remaining).append(ELLIPSIS);
+            truncated = true;
+        }
+    }
+}
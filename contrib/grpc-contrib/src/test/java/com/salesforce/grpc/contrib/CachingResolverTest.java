@@ -0,0 +1,322 @@
+/*
+ *  Copyright (c) 2019, Salesforce.com, Inc.
+ *  All rights reserved.
+ *  Licensed under the BSD 3-Clause license.
+ *  For full license text, see LICENSE.txt file in the repo root  or https://opensource.org/licenses/BSD-3-Clause
+ */
+
+package com.salesforce.grpc.contrib;
+
+import com.google.common.base.Ticker;
+import io.grpc.*;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CachingResolverTest {
+    private static final URI TARGET = URI.create("aaa://foo");
+
+    private final NameResolverFakes fakes = new NameResolverFakes();
+    private final FakeTicker ticker = new FakeTicker();
+    private final FakeFactory delegate = new FakeFactory();
+    private final CachingResolver factory =
+            new CachingResolver(delegate, Duration.ofSeconds(10), Duration.ofSeconds(20), ticker);
+
+    @Test
+    public void channelsShareOneLookup() {
+        RecordingListener first = start();
+        RecordingListener second = start();
+        assertThat(delegate.lookups).isEqualTo(1);
+
+        delegate.complete(1);
+
+        assertThat(first.ports).containsExactly(1);
+        assertThat(second.ports).containsExactly(1);
+    }
+
+    @Test
+    public void freshResultIsServedWithoutLookup() {
+        NameResolver resolver = factory.newNameResolver(TARGET, fakes.fakeArgs);
+        RecordingListener listener = new RecordingListener();
+        resolver.start(listener);
+        delegate.complete(1);
+
+        ticker.advance(Duration.ofSeconds(5));
+        resolver.refresh();
+        RecordingListener late = start();
+
+        assertThat(delegate.lookups).isEqualTo(1);
+        assertThat(listener.ports).containsExactly(1, 1);
+        assertThat(late.ports).containsExactly(1);
+    }
+
+    @Test
+    public void staleResultIsServedWhileOneRefreshRuns() {
+        NameResolver resolver = factory.newNameResolver(TARGET, fakes.fakeArgs);
+        RecordingListener listener = new RecordingListener();
+        resolver.start(listener);
+        delegate.complete(1);
+
+        ticker.advance(Duration.ofSeconds(15));
+        resolver.refresh();
+        resolver.refresh();
+        RecordingListener late = start();
+
+        assertThat(delegate.lookups).isEqualTo(2);
+        assertThat(listener.ports).containsExactly(1, 1, 1);
+        assertThat(late.ports).containsExactly(1);
+
+        delegate.complete(2);
+        assertThat(listener.ports).endsWith(2);
+        assertThat(late.ports).containsExactly(1, 2);
+    }
+
+    @Test
+    public void expiredResultIsNotServed() {
+        start();
+        delegate.complete(1);
+
+        ticker.advance(Duration.ofSeconds(31));
+        RecordingListener late = start();
+
+        assertThat(late.ports).isEmpty();
+        assertThat(delegate.lookups).isEqualTo(2);
+    }
+
+    @Test
+    public void refreshRestartsDelegateThatIgnoresRefresh() {
+        NameResolver resolver = factory.newNameResolver(TARGET, fakes.fakeArgs);
+        RecordingListener listener = new RecordingListener();
+        resolver.start(listener);
+        delegate.complete(1);
+
+        // The fake delegate ignores refresh(), like resolvers whose own cache is still valid
+        ticker.advance(Duration.ofSeconds(15));
+        resolver.refresh();
+        assertThat(delegate.resolvers.get(0).shutdown).isTrue();
+        delegate.complete(2);
+
+        ticker.advance(Duration.ofSeconds(31));
+        RecordingListener late = start();
+        delegate.complete(3);
+
+        assertThat(delegate.lookups).isEqualTo(3);
+        assertThat(listener.ports).containsExactly(1, 1, 2, 3);
+        assertThat(late.ports).containsExactly(3);
+    }
+
+    @Test
+    public void serviceConfigIsParsedByEachChannel() {
+        List<Map<String, ?>> firstParsed = new ArrayList<>();
+        List<Map<String, ?>> secondParsed = new ArrayList<>();
+        RecordingListener first = start(firstParsed);
+        RecordingListener second = start(secondParsed);
+
+        Map<String, ?> config = Collections.singletonMap("loadBalancingPolicy", "round_robin");
+        delegate.complete(1, config);
+
+        assertThat(firstParsed).containsExactly(config);
+        assertThat(secondParsed).containsExactly(config);
+        assertThat(first.configs).containsExactly(firstParsed);
+        assertThat(second.configs).containsExactly(secondParsed);
+    }
+
+    @Test
+    public void errorsAreHiddenWhileCachedResultIsUsable() {
+        RecordingListener listener = start();
+        delegate.fail();
+        assertThat(listener.errors).hasSize(1);
+
+        delegate.complete(1);
+        ticker.advance(Duration.ofSeconds(15));
+        start();
+        delegate.fail();
+
+        assertThat(listener.errors).hasSize(1);
+    }
+
+    @Test
+    public void sharedResolverIsShutDownWithLastChannel() {
+        NameResolver first = factory.newNameResolver(TARGET, fakes.fakeArgs);
+        NameResolver second = factory.newNameResolver(TARGET, fakes.fakeArgs);
+        first.start(new RecordingListener());
+        second.start(new RecordingListener());
+
+        first.shutdown();
+        assertThat(delegate.resolvers.get(0).shutdown).isFalse();
+        second.shutdown();
+        assertThat(delegate.resolvers.get(0).shutdown).isTrue();
+        // The unused second resolver was shut down as soon as it was found redundant
+        assertThat(delegate.resolvers.get(1).shutdown).isTrue();
+    }
+
+    @Test
+    public void lastShutdownDiscardsCachedResult() {
+        NameResolver resolver = factory.newNameResolver(TARGET, fakes.fakeArgs);
+        resolver.start(new RecordingListener());
+        delegate.complete(1);
+        resolver.shutdown();
+
+        RecordingListener late = start();
+
+        assertThat(late.ports).isEmpty();
+        assertThat(delegate.lookups).isEqualTo(2);
+    }
+
+    @Test
+    public void unstartedResolverKeepsEntryCached() {
+        NameResolver unstarted = factory.newNameResolver(TARGET, fakes.fakeArgs);
+        NameResolver resolver = factory.newNameResolver(TARGET, fakes.fakeArgs);
+        resolver.start(new RecordingListener());
+        delegate.complete(1);
+        resolver.shutdown();
+
+        RecordingListener late = new RecordingListener();
+        unstarted.start(late);
+
+        assertThat(late.ports).containsExactly(1);
+        assertThat(delegate.lookups).isEqualTo(1);
+    }
+
+    @Test
+    public void channelsWithDifferentDefaultPortsDoNotShare() {
+        start();
+        RecordingListener other = new RecordingListener();
+        factory.newNameResolver(TARGET, fakes.fakeArgs.toBuilder().setDefaultPort(8443).build()).start(other);
+
+        assertThat(delegate.lookups).isEqualTo(2);
+    }
+
+    @Test
+    public void unhandledTargetsAreNotCached() {
+        assertThat(factory.newNameResolver(URI.create("bbb://foo"), fakes.fakeArgs)).isNull();
+    }
+
+    private RecordingListener start() {
+        RecordingListener listener = new RecordingListener();
+        factory.newNameResolver(TARGET, fakes.fakeArgs).start(listener);
+        return listener;
+    }
+
+    private RecordingListener start(List<Map<String, ?>> parsed) {
+        NameResolver.Args args = fakes.fakeArgs.toBuilder()
+                .setServiceConfigParser(new NameResolver.ServiceConfigParser() {
+                    @Override
+                    public NameResolver.ConfigOrError parseServiceConfig(Map<String, ?> rawServiceConfig) {
+                        parsed.add(rawServiceConfig);
+                        return NameResolver.ConfigOrError.fromConfig(parsed);
+                    }
+                })
+                .build();
+        RecordingListener listener = new RecordingListener();
+        factory.newNameResolver(TARGET, args).start(listener);
+        return listener;
+    }
+
+    private static class FakeTicker extends Ticker {
+        private long nanos;
+
+        void advance(Duration duration) {
+            nanos += duration.toNanos();
+        }
+
+        @Override
+        public long read() {
+            return nanos;
+        }
+    }
+
+    private static class FakeFactory extends NameResolver.Factory {
+        final List<FakeResolver> resolvers = new ArrayList<>();
+        int lookups;
+        NameResolver.Listener2 listener;
+        NameResolver.Args args;
+
+        void complete(int port) {
+            listener.onResult(NameResolver.ResolutionResult.newBuilder()
+                    .setAddresses(Collections.singletonList(
+                            new EquivalentAddressGroup(new InetSocketAddress("127.0.0.1", port))))
+                    .build());
+        }
+
+        void complete(int port, Map<String, ?> serviceConfig) {
+            listener.onResult(NameResolver.ResolutionResult.newBuilder()
+                    .setAddresses(Collections.singletonList(
+                            new EquivalentAddressGroup(new InetSocketAddress("127.0.0.1", port))))
+                    .setServiceConfig(args.getServiceConfigParser().parseServiceConfig(serviceConfig))
+                    .build());
+        }
+
+        void fail() {
+            listener.onError(Status.UNAVAILABLE);
+        }
+
+        @Override
+        public NameResolver newNameResolver(URI targetUri, NameResolver.Args args) {
+            if (!"aaa".equals(targetUri.getScheme())) {
+                return null;
+            }
+            FakeResolver resolver = new FakeResolver();
+            resolvers.add(resolver);
+            this.args = args;
+            return resolver;
+        }
+
+        @Override
+        public String getDefaultScheme() {
+            return "aaa";
+        }
+
+        private class FakeResolver extends NameResolver {
+            boolean shutdown;
+
+            @Override
+            public String getServiceAuthority() {
+                return "foo";
+            }
+
+            @Override
+            public void start(Listener2 listener) {
+                FakeFactory.this.listener = listener;
+                lookups++;
+            }
+
+            @Override
+            public void refresh() {
+                // Ignored, as the cache restarts its delegate instead
+            }
+
+            @Override
+            public void shutdown() {
+                shutdown = true;
+            }
+        }
+    }
+
+    private static class RecordingListener extends NameResolver.Listener2 {
+        final List<Integer> ports = new ArrayList<>();
+        final List<Status> errors = new ArrayList<>();
+        final List<Object> configs = new ArrayList<>();
+
+        @Override
+        public void onResult(NameResolver.ResolutionResult resolutionResult) {
+            if (resolutionResult.getServiceConfig() != null) {
+                configs.add(resolutionResult.getServiceConfig().getConfig());
+            }
+            ports.add(((InetSocketAddress) resolutionResult.getAddresses().get(0).getAddresses().get(0)).getPort());
+        }
+
+        @Override
+        public void onError(Status error) {
+            errors.add(error);
+        }
+    }
+}
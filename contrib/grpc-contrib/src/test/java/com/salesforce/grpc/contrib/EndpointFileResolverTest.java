@@ -0,0 +1,210 @@
+/*
+ *  Copyright (c) 2019, Salesforce.com, Inc.
+ *  All rights reserved.
+ *  Licensed under the BSD 3-Clause license.
+ *  For full license text, see LICENSE.txt file in the repo root  or https://opensource.org/licenses/BSD-3-Clause
+ */
+
+package com.salesforce.grpc.contrib;
+
+import com.google.common.collect.ImmutableMap;
+import io.grpc.*;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class EndpointFileResolverTest {
+    private static final int UPDATE_TIMEOUT_SECONDS = 30;
+
+    @Rule public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final NameResolverFakes fakes = new NameResolverFakes();
+
+    @Test
+    public void parsesAddressesWeightsAndAttributes() {
+        List<EquivalentAddressGroup> addresses = EndpointFileResolver.parse(Arrays.asList(
+                "# comment",
+                "",
+                "127.0.0.1:8080 weight=3 zone=a",
+                "[::1]:9090",
+                "127.0.0.2"), 443);
+
+        assertThat(addresses).hasSize(3);
+        assertThat(addresses.get(0).getAddresses()).containsExactly(new InetSocketAddress("127.0.0.1", 8080));
+        assertThat(addresses.get(0).getAttributes().get(StaticResolver.WEIGHT)).isEqualTo(3);
+        assertThat(addresses.get(0).getAttributes().get(StaticResolver.ENDPOINT_ATTRIBUTES))
+                .isEqualTo(ImmutableMap.of("zone", "a"));
+        assertThat(addresses.get(1).getAddresses()).containsExactly(new InetSocketAddress("::1", 9090));
+        assertThat(addresses.get(1).getAttributes()).isEqualTo(Attributes.EMPTY);
+        assertThat(addresses.get(2).getAddresses()).containsExactly(new InetSocketAddress("127.0.0.2", 443));
+    }
+
+    @Test
+    public void malformedLinesAreRejected() {
+        assertThatThrownBy(() -> EndpointFileResolver.parse(Arrays.asList("127.0.0.1:1", "127.0.0.1:2 weight=0"), 443))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("line 2");
+        assertThatThrownBy(() -> EndpointFileResolver.parse(Arrays.asList("127.0.0.1:1 zone"), 443))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void resolverPushesFileUpdates() throws Exception {
+        Path endpointFile = folder.getRoot().toPath().resolve("endpoints");
+        replace(endpointFile, "127.0.0.1:1001\n");
+
+        NameResolver resolver = StaticResolver.fileProvider(endpointFile)
+                .newNameResolver(URI.create("mesh://some.service"), fakes.fakeArgs);
+        assertThat(resolver.getServiceAuthority()).isEqualTo("some.service");
+
+        RecordingListener listener = new RecordingListener();
+        resolver.start(listener);
+        try {
+            assertThat(listener.nextAddresses()).containsExactly(new InetSocketAddress("127.0.0.1", 1001));
+
+            replace(endpointFile, "127.0.0.1:1001\n127.0.0.1:1002\n");
+            assertThat(listener.nextAddresses()).containsExactly(
+                    new InetSocketAddress("127.0.0.1", 1001), new InetSocketAddress("127.0.0.1", 1002));
+
+            replace(endpointFile, "not an endpoint\n");
+            assertThat(listener.errors.poll(UPDATE_TIMEOUT_SECONDS, TimeUnit.SECONDS).getCode())
+                    .isEqualTo(Status.Code.UNAVAILABLE);
+        } finally {
+            resolver.shutdown();
+        }
+    }
+
+    @Test
+    public void resolversOfOneFileShareOneWatcher() throws Exception {
+        Path endpointFile = folder.getRoot().toPath().resolve("shared-endpoints");
+        replace(endpointFile, "127.0.0.1:1001\n");
+        NameResolverProvider provider = StaticResolver.fileProvider(endpointFile);
+
+        NameResolver first = provider.newNameResolver(URI.create("mesh://some.service"), fakes.fakeArgs);
+        NameResolver second = provider.newNameResolver(URI.create("mesh://other.service"), fakes.fakeArgs);
+        RecordingListener firstListener = new RecordingListener();
+        RecordingListener secondListener = new RecordingListener();
+        first.start(firstListener);
+        second.start(secondListener);
+        try {
+            assertThat(firstListener.nextAddresses()).containsExactly(new InetSocketAddress("127.0.0.1", 1001));
+            assertThat(secondListener.nextAddresses()).containsExactly(new InetSocketAddress("127.0.0.1", 1001));
+            assertThat(Thread.getAllStackTraces().keySet())
+                    .filteredOn(thread -> thread.getName().equals("grpc-endpoint-file-shared-endpoints"))
+                    .hasSize(1);
+
+            first.shutdown();
+            replace(endpointFile, "127.0.0.1:1002\n");
+            assertThat(secondListener.nextAddresses()).containsExactly(new InetSocketAddress("127.0.0.1", 1002));
+            assertThat(firstListener.results).isEmpty();
+        } finally {
+            first.shutdown();
+            second.shutdown();
+        }
+    }
+
+    @Test
+    public void refreshRereadsFile() throws Exception {
+        Path endpointFile = folder.getRoot().toPath().resolve("endpoints");
+        replace(endpointFile, "127.0.0.1:1001\n");
+
+        NameResolver resolver = StaticResolver.fileProvider(endpointFile)
+                .newNameResolver(URI.create("mesh://some.service"), fakes.fakeArgs);
+        RecordingListener listener = new RecordingListener();
+        resolver.start(listener);
+        try {
+            assertThat(listener.nextAddresses()).containsExactly(new InetSocketAddress("127.0.0.1", 1001));
+
+            fakes.fakeSyncContext.execute(resolver::refresh);
+            assertThat(listener.nextAddresses()).containsExactly(new InetSocketAddress("127.0.0.1", 1001));
+        } finally {
+            resolver.shutdown();
+        }
+    }
+
+    @Test
+    public void missingFileIsReported() throws Exception {
+        NameResolver resolver = StaticResolver.fileProvider(folder.getRoot().toPath().resolve("missing"))
+                .newNameResolver(URI.create("mesh://some.service"), fakes.fakeArgs);
+
+        RecordingListener listener = new RecordingListener();
+        resolver.start(listener);
+        try {
+            assertThat(listener.errors.poll(UPDATE_TIMEOUT_SECONDS, TimeUnit.SECONDS).getCode())
+                    .isEqualTo(Status.Code.UNAVAILABLE);
+        } finally {
+            resolver.shutdown();
+        }
+    }
+
+    @Test
+    public void unwatchableFileIsWatchedAgainByLaterResolvers() throws Exception {
+        Path directory = folder.getRoot().toPath().resolve("later");
+        Path endpointFile = directory.resolve("endpoints");
+        NameResolverProvider provider = StaticResolver.fileProvider(endpointFile);
+
+        NameResolver first = provider.newNameResolver(URI.create("mesh://some.service"), fakes.fakeArgs);
+        RecordingListener firstListener = new RecordingListener();
+        first.start(firstListener);
+        try {
+            // The directory does not exist yet, so it cannot be watched
+            assertThat(firstListener.errors.poll(UPDATE_TIMEOUT_SECONDS, TimeUnit.SECONDS).getCode())
+                    .isEqualTo(Status.Code.UNAVAILABLE);
+
+            Files.createDirectory(directory);
+            replace(endpointFile, "127.0.0.1:1001\n");
+            NameResolver second = provider.newNameResolver(URI.create("mesh://some.service"), fakes.fakeArgs);
+            RecordingListener secondListener = new RecordingListener();
+            second.start(secondListener);
+            try {
+                assertThat(secondListener.nextAddresses()).containsExactly(new InetSocketAddress("127.0.0.1", 1001));
+            } finally {
+                second.shutdown();
+            }
+        } finally {
+            first.shutdown();
+        }
+    }
+
+    private void replace(Path endpointFile, String content) throws Exception {
+        Path temp = folder.newFile().toPath();
+        Files.write(temp, content.getBytes(StandardCharsets.UTF_8));
+        Files.move(temp, endpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static class RecordingListener extends NameResolver.Listener2 {
+        final BlockingQueue<NameResolver.ResolutionResult> results = new LinkedBlockingQueue<>();
+        final BlockingQueue<Status> errors = new LinkedBlockingQueue<>();
+
+        @Override
+        public void onResult(NameResolver.ResolutionResult resolutionResult) {
+            results.add(resolutionResult);
+        }
+
+        @Override
+        public void onError(Status error) {
+            errors.add(error);
+        }
+
+        Object[] nextAddresses() throws InterruptedException {
+            NameResolver.ResolutionResult result = results.poll(UPDATE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            assertThat(result).isNotNull();
+            return result.getAddresses().stream().flatMap(group -> group.getAddresses().stream()).toArray();
+        }
+    }
+}
@@ -7,11 +7,14 @@
 
 package com.salesforce.grpc.contrib;
 
-import io.grpc.NameResolver;
-import io.grpc.NameResolverProvider;
+import io.grpc.*;
 import org.junit.Test;
 
+import java.net.InetSocketAddress;
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 import static org.junit.Assert.*;
 
@@ -61,6 +64,221 @@ public class FallbackResolverTest {
         assertEquals("aaa://", factory.getDefaultScheme());
     }
 
+    @Test
+    public void parallelProbingUsesFastestThenPreferredResolver() throws Exception {
+        ControllableResolver first = new ControllableResolver();
+        ControllableResolver second = new ControllableResolver();
+        RecordingListener listener = new RecordingListener();
+
+        NameResolver resolver = parallel(first, second);
+        resolver.start(listener);
+        assertTrue(first.started && second.started);
+
+        second.resolve(2);
+        assertEquals(Collections.singletonList(2), listener.ports());
+
+        first.resolve(1);
+        assertEquals(1, (int) listener.lastPort());
+    }
+
+    @Test
+    public void parallelProbingFailsOverOnError() throws Exception {
+        ControllableResolver first = new ControllableResolver();
+        ControllableResolver second = new ControllableResolver();
+        RecordingListener listener = new RecordingListener();
+
+        NameResolver resolver = parallel(first, second);
+        resolver.start(listener);
+        first.resolve(1);
+        second.resolve(2);
+        // The second resolver is not active, so its result is held back
+        assertEquals(Collections.singletonList(1), listener.ports());
+
+        first.listener.onError(Status.UNAVAILABLE);
+        assertEquals(2, (int) listener.lastPort());
+        assertTrue(listener.errors.isEmpty());
+    }
+
+    @Test
+    public void parallelProbingFailsOverOnEmptyAddresses() throws Exception {
+        ControllableResolver first = new ControllableResolver();
+        ControllableResolver second = new ControllableResolver();
+        RecordingListener listener = new RecordingListener();
+
+        NameResolver resolver = parallel(first, second);
+        resolver.start(listener);
+        first.resolve(1);
+        second.resolve(2);
+        first.listener.onResult(NameResolver.ResolutionResult.newBuilder().build());
+
+        assertEquals(2, (int) listener.lastPort());
+    }
+
+    @Test
+    public void parallelProbingReportsErrorWhenAllFail() throws Exception {
+        ControllableResolver first = new ControllableResolver();
+        ControllableResolver second = new ControllableResolver();
+        RecordingListener listener = new RecordingListener();
+
+        NameResolver resolver = parallel(first, second);
+        resolver.start(listener);
+        first.listener.onError(Status.UNAVAILABLE);
+        assertTrue(listener.errors.isEmpty());
+
+        second.listener.onError(Status.NOT_FOUND);
+        assertEquals(Collections.singletonList(Status.NOT_FOUND), listener.errors);
+
+        resolver.refresh();
+        resolver.shutdown();
+        assertTrue(first.refreshed && second.refreshed);
+        assertTrue(first.shutdown && second.shutdown);
+    }
+
+    @Test
+    public void parallelProbingWithOneResolverReturnsIt() throws Exception {
+        NameResolver fakeResolver = new FakeResolver();
+        NameResolver.Factory factory = FallbackResolver.startWith(new FakeResolverProvider("aaa://", fakeResolver))
+                .thenCheck(new FakeResolverProvider("bbb://", null))
+                .probeInParallel();
+
+        assertEquals(fakeResolver, factory.newNameResolver(new URI("aaa://foo"), fakes.fakeArgs));
+    }
+
+    @Test
+    public void cachedSelectionSkipsDecliningProviders() throws Exception {
+        NameResolver fakeResolver = new FakeResolver();
+        FakeResolverProvider cannotResolve = new FakeResolverProvider("aaa://", null);
+        FakeResolverProvider canResolve = new FakeResolverProvider("aaa://", fakeResolver);
+
+        FallbackResolver factory = FallbackResolver.startWith(cannotResolve).thenCheck(canResolve)
+                .cacheProviderSelection();
+        for (int i = 0; i < 3; i++) {
+            assertEquals(fakeResolver, factory.newNameResolver(new URI("aaa://foo" + i), fakes.fakeArgs));
+        }
+
+        assertEquals(1, factory.stats(cannotResolve).misses());
+        assertEquals(3, factory.stats(canResolve).hits());
+        assertEquals(0, factory.stats(canResolve).misses());
+    }
+
+    @Test
+    public void cachedSelectionIsRevisitedWhenProviderDeclines() throws Exception {
+        NameResolver fakeResolver = new FakeResolver();
+        SwitchableResolverProvider first = new SwitchableResolverProvider(fakeResolver);
+        FakeResolverProvider second = new FakeResolverProvider("aaa://", fakeResolver);
+
+        FallbackResolver factory = FallbackResolver.startWith(first).thenCheck(second).cacheProviderSelection();
+        factory.newNameResolver(new URI("aaa://foo"), fakes.fakeArgs);
+        first.enabled = false;
+        assertEquals(fakeResolver, factory.newNameResolver(new URI("aaa://foo"), fakes.fakeArgs));
+        assertEquals(fakeResolver, factory.newNameResolver(new URI("aaa://foo"), fakes.fakeArgs));
+
+        assertEquals(1, factory.stats(first).hits());
+        assertEquals(1, factory.stats(first).misses());
+        assertEquals(2, factory.stats(second).hits());
+    }
+
+    @Test
+    public void unhandledSchemesAreCached() throws Exception {
+        FakeResolverProvider cannotResolve = new FakeResolverProvider("bbb://", null);
+
+        FallbackResolver factory = FallbackResolver.startWith(cannotResolve).cacheProviderSelection();
+        assertNull(factory.newNameResolver(new URI("bbb://foo"), fakes.fakeArgs));
+        assertNull(factory.newNameResolver(new URI("bbb://bar"), fakes.fakeArgs));
+
+        assertEquals(1, factory.stats(cannotResolve).misses());
+        assertFalse(factory.stats(cannotResolve).totalLatency().isNegative());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void statsOfUnknownProviderAreRejected() {
+        FallbackResolver.startWith(new FakeResolverProvider("aaa://", null))
+                .stats(new FakeResolverProvider("bbb://", null));
+    }
+
+    private static class SwitchableResolverProvider extends FakeResolverProvider {
+        boolean enabled = true;
+
+        SwitchableResolverProvider(NameResolver resolver) {
+            super("aaa://", resolver);
+        }
+
+        @Override
+        public NameResolver newNameResolver(URI targetUri, NameResolver.Args args) {
+            return enabled ? super.newNameResolver(targetUri, args) : null;
+        }
+    }
+
+    private NameResolver parallel(NameResolver first, NameResolver second) throws Exception {
+        NameResolver.Factory factory = FallbackResolver.startWith(new FakeResolverProvider("aaa://", first))
+                .thenCheck(new FakeResolverProvider("aaa://", second))
+                .probeInParallel();
+        return factory.newNameResolver(new URI("aaa://foo"), fakes.fakeArgs);
+    }
+
+    private static class ControllableResolver extends NameResolver {
+        Listener2 listener;
+        boolean started;
+        boolean refreshed;
+        boolean shutdown;
+
+        void resolve(int port) {
+            listener.onResult(ResolutionResult.newBuilder()
+                    .setAddresses(Collections.singletonList(
+                            new EquivalentAddressGroup(new InetSocketAddress("127.0.0.1", port))))
+                    .build());
+        }
+
+        @Override
+        public String getServiceAuthority() {
+            return "foo";
+        }
+
+        @Override
+        public void start(Listener2 listener) {
+            this.listener = listener;
+            this.started = true;
+        }
+
+        @Override
+        public void refresh() {
+            refreshed = true;
+        }
+
+        @Override
+        public void shutdown() {
+            shutdown = true;
+        }
+    }
+
+    private static class RecordingListener extends NameResolver.Listener2 {
+        final List<NameResolver.ResolutionResult> results = new ArrayList<>();
+        final List<Status> errors = new ArrayList<>();
+
+        @Override
+        public void onResult(NameResolver.ResolutionResult resolutionResult) {
+            results.add(resolutionResult);
+        }
+
+        @Override
+        public void onError(Status error) {
+            errors.add(error);
+        }
+
+        List<Integer> ports() {
+            List<Integer> ports = new ArrayList<>();
+            for (NameResolver.ResolutionResult result : results) {
+                ports.add(((InetSocketAddress) result.getAddresses().get(0).getAddresses().get(0)).getPort());
+            }
+            return ports;
+        }
+
+        Integer lastPort() {
+            List<Integer> ports = ports();
+            return ports.get(ports.size() - 1);
+        }
+    }
+
     private static class FakeResolverProvider extends NameResolverProvider {
         private final String scheme;
         private final NameResolver resolver;
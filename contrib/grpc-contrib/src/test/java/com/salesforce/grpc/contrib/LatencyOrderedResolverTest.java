@@ -0,0 +1,121 @@
+/*
+ *  Copyright (c) 2019, Salesforce.com, Inc.
+ *  All rights reserved.
+ *  Licensed under the BSD 3-Clause license.
+ *  For full license text, see LICENSE.txt file in the repo root  or https://opensource.org/licenses/BSD-3-Clause
+ */
+
+package com.salesforce.grpc.contrib;
+
+import io.grpc.*;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LatencyOrderedResolverTest {
+    private static final long UNREACHABLE = LatencyOrderedResolver.UNREACHABLE;
+
+    private final NameResolverFakes fakes = new NameResolverFakes();
+
+    @Test
+    public void addressesAreOrderedByRtt() {
+        InetSocketAddress[] addresses = {
+                new InetSocketAddress("127.0.0.1", 1001),
+                new InetSocketAddress("127.0.0.1", 1002),
+                new InetSocketAddress("127.0.0.1", 1003),
+                new InetSocketAddress("127.0.0.1", 1004)};
+
+        List<EquivalentAddressGroup> ordered = LatencyOrderedResolver.order(addresses,
+                new long[]{UNREACHABLE, 300, UNREACHABLE, 100});
+
+        assertThat(ordered).extracting(group -> group.getAddresses().get(0))
+                .containsExactly(addresses[3], addresses[1], addresses[0], addresses[2]);
+        assertThat(ordered.get(0).getAttributes().get(StaticResolver.CONNECT_RTT)).isEqualTo(Duration.ofNanos(100));
+        assertThat(ordered.get(2).getAttributes().get(StaticResolver.CONNECT_RTT)).isNull();
+    }
+
+    @Test
+    public void unprobedAddressesKeepConfiguredOrder() {
+        InetSocketAddress[] addresses = {
+                new InetSocketAddress("127.0.0.1", 1002),
+                new InetSocketAddress("127.0.0.1", 1001)};
+
+        assertThat(LatencyOrderedResolver.order(addresses, null)).extracting(group -> group.getAddresses().get(0))
+                .containsExactly(addresses[0], addresses[1]);
+    }
+
+    @Test
+    public void rttIsSmoothed() {
+        assertThat(LatencyOrderedResolver.smooth(UNREACHABLE, 100)).isEqualTo(100);
+        assertThat(LatencyOrderedResolver.smooth(100, 300)).isEqualTo(200);
+        assertThat(LatencyOrderedResolver.smooth(100, UNREACHABLE)).isEqualTo(UNREACHABLE);
+    }
+
+    @Test
+    public void driftedRttIsPublishedAgain() {
+        InetSocketAddress[] addresses = {
+                new InetSocketAddress("127.0.0.1", 1001),
+                new InetSocketAddress("127.0.0.1", 1002)};
+        List<EquivalentAddressGroup> published = LatencyOrderedResolver.order(addresses, new long[]{100, 200});
+
+        assertThat(LatencyOrderedResolver.isUpToDate(published,
+                LatencyOrderedResolver.order(addresses, new long[]{120, 180}))).isTrue();
+        assertThat(LatencyOrderedResolver.isUpToDate(published,
+                LatencyOrderedResolver.order(addresses, new long[]{100, 140}))).isFalse();
+        assertThat(LatencyOrderedResolver.isUpToDate(published,
+                LatencyOrderedResolver.order(addresses, new long[]{100, UNREACHABLE}))).isFalse();
+        assertThat(LatencyOrderedResolver.isUpToDate(published,
+                LatencyOrderedResolver.order(addresses, new long[]{300, 200}))).isFalse();
+    }
+
+    @Test
+    public void reachableAddressesMoveAhead() throws Exception {
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+        InetSocketAddress closed;
+        try (ServerSocket socket = new ServerSocket(0, 1, loopback)) {
+            closed = new InetSocketAddress(loopback, socket.getLocalPort());
+        }
+
+        try (ServerSocket open = new ServerSocket(0, 1, loopback)) {
+            InetSocketAddress reachable = new InetSocketAddress(loopback, open.getLocalPort());
+            NameResolver resolver = StaticResolver
+                    .latencyOrderedProvider("mesh", Arrays.asList(closed, reachable), Duration.ofSeconds(1))
+                    .newNameResolver(URI.create("mesh://some.service"), fakes.fakeArgs);
+
+            BlockingQueue<List<EquivalentAddressGroup>> results = new LinkedBlockingQueue<>();
+            resolver.start(new NameResolver.Listener2() {
+                @Override
+                public void onResult(NameResolver.ResolutionResult resolutionResult) {
+                    results.add(resolutionResult.getAddresses());
+                }
+
+                @Override
+                public void onError(Status error) {
+                }
+            });
+
+            try {
+                List<EquivalentAddressGroup> initial = results.poll(1, TimeUnit.SECONDS);
+                assertThat(initial.get(0).getAddresses()).containsExactly(closed);
+
+                List<EquivalentAddressGroup> probed = results.poll(10, TimeUnit.SECONDS);
+                assertThat(probed.get(0).getAddresses()).containsExactly(reachable);
+                assertThat(probed.get(0).getAttributes().get(StaticResolver.CONNECT_RTT)).isPositive();
+                assertThat(probed.get(1).getAttributes().get(StaticResolver.CONNECT_RTT)).isNull();
+            } finally {
+                resolver.shutdown();
+            }
+        }
+    }
+}
@@ -7,11 +7,15 @@
 
 package com.salesforce.grpc.contrib;
 
+import io.grpc.ChannelLogger;
 import io.grpc.NameResolver;
 import io.grpc.SynchronizationContext;
 import io.grpc.internal.GrpcUtil;
 
 import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.mockito.Mockito.mock;
 
 public class NameResolverFakes {
     final SynchronizationContext fakeSyncContext = new SynchronizationContext(new Thread.UncaughtExceptionHandler() {
@@ -32,5 +36,7 @@ public class NameResolverFakes {
             .setProxyDetector(GrpcUtil.DEFAULT_PROXY_DETECTOR)
             .setSynchronizationContext(fakeSyncContext)
             .setServiceConfigParser(fakeParser)
+            .setScheduledExecutorService(mock(ScheduledExecutorService.class))
+            .setChannelLogger(mock(ChannelLogger.class))
             .build();
 }
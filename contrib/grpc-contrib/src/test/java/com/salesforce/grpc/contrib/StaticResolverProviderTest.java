@@ -13,10 +13,14 @@ import org.junit.Test;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
 import java.net.URI;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.junit.Assert.*;
 
 public class StaticResolverProviderTest {
@@ -67,4 +71,102 @@ public class StaticResolverProviderTest {
 
         assertThat(isResolved.get()).isTrue();
     }
+
+    @Test
+    public void ResolverShouldResolveEveryAddress() {
+        InetSocketAddress otherAddress = new InetSocketAddress("localhost", 55556);
+        NameResolverProvider provider = StaticResolver.provider("mesh", Arrays.asList(staticAddress, otherAddress));
+        NameResolver resolver = provider.newNameResolver(URI.create("mesh://some.service"), fakes.fakeArgs);
+
+        AtomicReference<NameResolver.ResolutionResult> result = new AtomicReference<>();
+        resolver.start(new ResultListener(result));
+
+        assertThat(result.get().getAddresses()).extracting(group -> group.getAddresses().get(0))
+                .containsExactly(staticAddress, otherAddress);
+        assertThat(result.get().getServiceConfig()).isNull();
+    }
+
+    @Test
+    public void ResolverShouldDeliverServiceConfig() {
+        AtomicReference<Map<String, ?>> parsed = new AtomicReference<>();
+        NameResolver.ConfigOrError config = NameResolver.ConfigOrError.fromConfig(new Object());
+        NameResolver.Args args = fakes.fakeArgs.toBuilder()
+                .setServiceConfigParser(new NameResolver.ServiceConfigParser() {
+                    @Override
+                    public NameResolver.ConfigOrError parseServiceConfig(Map<String, ?> rawServiceConfig) {
+                        parsed.set(rawServiceConfig);
+                        return config;
+                    }
+                })
+                .build();
+
+        NameResolverProvider provider = StaticResolver.provider("mesh", Arrays.asList(staticAddress),
+                "{\"methodConfig\": [{\"name\": [{\"service\": \"acme.Inventory\"}], \"timeout\": \"1s\"}]}");
+        NameResolver resolver = provider.newNameResolver(URI.create("mesh://some.service"), args);
+
+        AtomicReference<NameResolver.ResolutionResult> result = new AtomicReference<>();
+        resolver.start(new ResultListener(result));
+
+        assertThat(result.get().getServiceConfig()).isSameAs(config);
+        assertThat(parsed.get()).containsOnlyKeys("methodConfig");
+    }
+
+    @Test
+    public void ResolverShouldReportServiceConfigFailures() {
+        IllegalStateException failure = new IllegalStateException("bad config");
+        NameResolver.Args args = fakes.fakeArgs.toBuilder()
+                .setServiceConfigParser(new NameResolver.ServiceConfigParser() {
+                    @Override
+                    public NameResolver.ConfigOrError parseServiceConfig(Map<String, ?> rawServiceConfig) {
+                        throw failure;
+                    }
+                })
+                .build();
+
+        NameResolverProvider provider = StaticResolver.provider("mesh", Arrays.asList(staticAddress), "{}");
+        NameResolver resolver = provider.newNameResolver(URI.create("mesh://some.service"), args);
+
+        AtomicReference<Status> error = new AtomicReference<>();
+        resolver.start(new NameResolver.Listener2() {
+            @Override
+            public void onResult(NameResolver.ResolutionResult resolutionResult) {
+                fail("Unexpected resolver result");
+            }
+
+            @Override
+            public void onError(Status status) {
+                error.set(status);
+            }
+        });
+
+        assertThat(error.get().getCode()).isEqualTo(Status.Code.UNKNOWN);
+        assertThat(error.get().getCause()).isSameAs(failure);
+        assertThat(error.get().getDescription()).contains("mesh://some.service");
+    }
+
+    @Test
+    public void MalformedServiceConfigShouldBeRejected() {
+        assertThatThrownBy(() -> StaticResolver.provider("mesh", Arrays.asList(staticAddress), "{\"methodConfig\""))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> StaticResolver.provider("mesh", Arrays.asList(staticAddress), "[]"))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static class ResultListener extends NameResolver.Listener2 {
+        private final AtomicReference<NameResolver.ResolutionResult> result;
+
+        ResultListener(AtomicReference<NameResolver.ResolutionResult> result) {
+            this.result = result;
+        }
+
+        @Override
+        public void onResult(NameResolver.ResolutionResult resolutionResult) {
+            result.set(resolutionResult);
+        }
+
+        @Override
+        public void onError(Status error) {
+            fail("Unexpected resolver error");
+        }
+    }
 }
@@ -0,0 +1,268 @@
+/*
+ *  Copyright (c) 2019, Salesforce.com, Inc.
+ *  All rights reserved.
+ *  Licensed under the BSD 3-Clause license.
+ *  For full license text, see LICENSE.txt file in the repo root  or https://opensource.org/licenses/BSD-3-Clause
+ */
+
+package com.salesforce.grpc.contrib.context;
+
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.Context;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.Status;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.salesforce.grpc.contrib.context.AmbientContextPropagationPolicy.Keys;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class AmbientContextBudgetTest {
+    private static final Metadata.Key<String> A = Metadata.Key.of("ctx-a", Metadata.ASCII_STRING_MARSHALLER);
+    private static final Metadata.Key<String> B = Metadata.Key.of("ctx-b", Metadata.ASCII_STRING_MARSHALLER);
+    private static final Metadata.Key<String> C = Metadata.Key.of("ctx-c", Metadata.ASCII_STRING_MARSHALLER);
+
+    @Before
+    public void setUp() throws Exception {
+        // Reset the gRPC context between test executions
+        Context.ROOT.attach();
+    }
+
+    @Test
+    public void maxKeysDropsNewKeys() {
+        AmbientContextBudget budget = AmbientContextBudget.newBuilder()
+                .maxKeys(2, AmbientContextBudget.Policy.DROP_KEY)
+                .build();
+        AmbientContext ctx = new AmbientContext(false, budget);
+
+        ctx.put(A, "1");
+        ctx.put(B, "2");
+        ctx.put(C, "3");
+        ctx.put(A, "4");
+
+        assertThat(ctx.keys()).containsExactlyInAnyOrder("ctx-a", "ctx-b");
+        assertThat(ctx.getAll(A)).containsExactly("1", "4");
+        assertThat(budget.violations(AmbientContextBudget.Limit.KEYS)).isEqualTo(1);
+    }
+
+    @Test
+    public void maxValuesPerKeyTruncates() {
+        AmbientContextBudget budget = AmbientContextBudget.newBuilder()
+                .maxValuesPerKey(2, AmbientContextBudget.Policy.TRUNCATE)
+                .build();
+        AmbientContext ctx = new AmbientContext(false, budget);
+
+        ctx.put(A, "1");
+        ctx.put(A, "2");
+        ctx.put(A, "3");
+
+        assertThat(ctx.getAll(A)).containsExactly("1", "2");
+        assertThat(budget.violations(AmbientContextBudget.Limit.VALUES_PER_KEY)).isEqualTo(1);
+    }
+
+    @Test
+    public void maxValuesPerKeyDropsKey() {
+        AmbientContextBudget budget = AmbientContextBudget.newBuilder()
+                .maxValuesPerKey(2, AmbientContextBudget.Policy.DROP_KEY)
+                .build();
+        AmbientContext ctx = new AmbientContext(false, budget);
+
+        ctx.put(A, "1");
+        ctx.put(A, "2");
+        ctx.put(A, "3");
+
+        assertThat(ctx.containsKey(A)).isFalse();
+    }
+
+    @Test
+    public void maxTotalBytesFails() {
+        AmbientContextBudget budget = AmbientContextBudget.newBuilder()
+                .maxTotalBytes(16, AmbientContextBudget.Policy.FAIL)
+                .build();
+        AmbientContext ctx = new AmbientContext(false, budget);
+
+        ctx.put(A, "12345");
+        assertThatThrownBy(() -> ctx.put(B, "1234567890"))
+                .isInstanceOfSatisfying(AmbientContextBudget.BudgetExceededException.class,
+                        ex -> assertThat(ex.getLimit()).isEqualTo(AmbientContextBudget.Limit.TOTAL_BYTES));
+
+        assertThat(ctx.keys()).containsExactly("ctx-a");
+        assertThat(budget.violations(AmbientContextBudget.Limit.TOTAL_BYTES)).isEqualTo(1);
+    }
+
+    @Test
+    public void maxTotalBytesTracksRemovals() {
+        AmbientContextBudget budget = AmbientContextBudget.newBuilder()
+                .maxTotalBytes(16, AmbientContextBudget.Policy.TRUNCATE)
+                .build();
+        AmbientContext ctx = new AmbientContext(false, budget);
+
+        ctx.put(A, "1234567890");
+        ctx.put(B, "1234567890");
+        assertThat(ctx.containsKey(B)).isFalse();
+
+        ctx.discardAll(A);
+        ctx.put(B, "1234567890");
+        assertThat(ctx.get(B)).isEqualTo("1234567890");
+    }
+
+    @Test
+    public void budgetIsInheritedByFork() {
+        AmbientContextBudget budget = AmbientContextBudget.newBuilder()
+                .maxKeys(1, AmbientContextBudget.Policy.FAIL)
+                .build();
+        AmbientContext ctx = AmbientContext.DATA_KEY.get(AmbientContext.initialize(Context.current(), false, budget));
+        ctx.put(A, "1");
+
+        AmbientContext forked = AmbientContext.DATA_KEY.get(ctx.fork(Context.current()));
+
+        assertThatThrownBy(() -> forked.put(B, "2")).isInstanceOf(AmbientContextBudget.BudgetExceededException.class);
+    }
+
+    @Test
+    public void propagatedHeadersAreLimited() {
+        AmbientContext ctx = new AmbientContext();
+        ctx.put(A, "1");
+        ctx.put(A, "2");
+        ctx.put(A, "3");
+        ctx.put(B, "1234567890");
+
+        AmbientContextBudget budget = AmbientContextBudget.newBuilder()
+                .maxValuesPerKey(2, AmbientContextBudget.Policy.TRUNCATE)
+                .maxTotalBytes(20, AmbientContextBudget.Policy.DROP_KEY)
+                .build();
+        Metadata headers = ctx.propagatedHeaders("ctx-", Keys.all(), budget, AmbientContextEncoding.HEADERS);
+
+        assertThat(headers.getAll(A)).containsExactly("1", "2");
+        assertThat(headers.containsKey(B)).isFalse();
+        assertThat(budget.violations(AmbientContextBudget.Limit.VALUES_PER_KEY)).isEqualTo(1);
+        assertThat(budget.violations(AmbientContextBudget.Limit.TOTAL_BYTES)).isEqualTo(1);
+    }
+
+    @Test
+    public void frozenSnapshotRespectsBudget() {
+        AmbientContext ctx = new AmbientContext();
+        ctx.put(A, "1");
+        ctx.put(A, "2");
+        ctx.freeze();
+
+        AmbientContextBudget budget = AmbientContextBudget.newBuilder()
+                .maxValuesPerKey(1, AmbientContextBudget.Policy.TRUNCATE)
+                .build();
+
+        assertThat(ctx.propagatedHeaders("ctx-").getAll(A)).containsExactly("1", "2");
+        assertThat(ctx.propagatedHeaders("ctx-", Keys.all(), budget, AmbientContextEncoding.HEADERS).getAll(A))
+                .containsExactly("1");
+        assertThat(ctx.propagatedHeaders("ctx-", Keys.all(), budget, AmbientContextEncoding.HEADERS))
+                .isSameAs(ctx.propagatedHeaders("ctx-", Keys.all(), budget, AmbientContextEncoding.HEADERS));
+    }
+
+    @Test
+    public void frozenSnapshotCountsViolationsPerCall() {
+        AmbientContext ctx = new AmbientContext();
+        ctx.put(A, "1");
+        ctx.put(A, "2");
+        ctx.put(B, "3");
+        ctx.freeze();
+
+        AmbientContextBudget budget = AmbientContextBudget.newBuilder()
+                .maxValuesPerKey(1, AmbientContextBudget.Policy.TRUNCATE)
+                .maxKeys(1, AmbientContextBudget.Policy.DROP_KEY)
+                .build();
+        for (int i = 0; i < 3; i++) {
+            ctx.propagatedHeaders("ctx-", Keys.all(), budget, AmbientContextEncoding.HEADERS);
+        }
+
+        assertThat(budget.violations(AmbientContextBudget.Limit.VALUES_PER_KEY)).isEqualTo(3);
+        assertThat(budget.violations(AmbientContextBudget.Limit.KEYS)).isEqualTo(3);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void serverClosesCallWhenBudgetFails() {
+        AmbientContextBudget budget = AmbientContextBudget.newBuilder()
+                .maxKeys(1, AmbientContextBudget.Policy.FAIL)
+                .build();
+        Metadata headers = new Metadata();
+        headers.put(A, "1");
+        headers.put(B, "2");
+
+        ServerCall<Object, Object> call = mock(ServerCall.class);
+        AtomicBoolean started = new AtomicBoolean();
+        ServerCallHandler<Object, Object> next = (c, h) -> {
+            started.set(true);
+            return new ServerCall.Listener<Object>() { };
+        };
+        new AmbientContextServerInterceptor("ctx-", budget).interceptCall(call, headers, next);
+
+        ArgumentCaptor<Status> status = ArgumentCaptor.forClass(Status.class);
+        verify(call).close(status.capture(), any(Metadata.class));
+        assertThat(status.getValue().getCode()).isEqualTo(Status.Code.RESOURCE_EXHAUSTED);
+        assertThat(started).isFalse();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void clientFailsCallWhenBudgetFails() {
+        AmbientContextBudget budget = AmbientContextBudget.newBuilder()
+                .maxKeys(1, AmbientContextBudget.Policy.FAIL)
+                .build();
+        AmbientContext ctx = new AmbientContext(false, AmbientContextBudget.UNLIMITED);
+        ctx.put(A, "1");
+        ctx.put(B, "2");
+
+        MethodDescriptor<Object, Object> method = MethodDescriptor.newBuilder()
+                .setType(MethodDescriptor.MethodType.UNARY)
+                .setFullMethodName("Service/Method")
+                .setRequestMarshaller(mock(MethodDescriptor.Marshaller.class))
+                .setResponseMarshaller(mock(MethodDescriptor.Marshaller.class))
+                .build();
+        ClientCall<Object, Object> delegate = mock(ClientCall.class);
+        List<Runnable> callbacks = new ArrayList<>();
+        CallOptions callOptions = CallOptions.DEFAULT.withExecutor(callbacks::add);
+        Channel channel = mock(Channel.class);
+        when(channel.newCall(method, callOptions)).thenReturn(delegate);
+        ClientCall.Listener<Object> listener = mock(ClientCall.Listener.class);
+
+        Context.current().withValue(AmbientContext.DATA_KEY, ctx).run(() -> {
+            ClientCall<Object, Object> call = new AmbientContextClientInterceptor("ctx-", budget)
+                    .interceptCall(method, callOptions, channel);
+            call.start(listener, new Metadata());
+            call.request(1);
+            call.sendMessage("request");
+            call.halfClose();
+        });
+
+        // The failure is delivered on the call's executor, not from within start()
+        verify(listener, never()).onClose(any(Status.class), any(Metadata.class));
+        assertThat(callbacks).hasSize(1);
+        callbacks.get(0).run();
+
+        ArgumentCaptor<Status> status = ArgumentCaptor.forClass(Status.class);
+        verify(listener).onClose(status.capture(), any(Metadata.class));
+        assertThat(status.getValue().getCode()).isEqualTo(Status.Code.RESOURCE_EXHAUSTED);
+        verify(delegate).cancel(anyString(), any(Throwable.class));
+        verify(delegate, never()).start(any(ClientCall.Listener.class), any(Metadata.class));
+        verify(delegate, never()).request(anyInt());
+        verify(delegate, never()).sendMessage(any());
+        verify(delegate, never()).halfClose();
+    }
+}
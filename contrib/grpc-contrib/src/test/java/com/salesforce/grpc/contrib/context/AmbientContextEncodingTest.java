@@ -0,0 +1,164 @@
+/*
+ *  Copyright (c) 2019, Salesforce.com, Inc.
+ *  All rights reserved.
+ *  Licensed under the BSD 3-Clause license.
+ *  For full license text, see LICENSE.txt file in the repo root  or https://opensource.org/licenses/BSD-3-Clause
+ */
+
+package com.salesforce.grpc.contrib.context;
+
+import com.salesforce.grpc.contrib.GreeterGrpc;
+import com.salesforce.grpc.contrib.HelloRequest;
+import com.salesforce.grpc.contrib.HelloResponse;
+import com.salesforce.grpc.contrib.MoreMetadata;
+import io.grpc.*;
+import io.grpc.stub.StreamObserver;
+import io.grpc.testing.GrpcServerRule;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+public class AmbientContextEncodingTest {
+    private static final Metadata.Key<String> TEXT = Metadata.Key.of("ctx-text", Metadata.ASCII_STRING_MARSHALLER);
+    private static final Metadata.Key<Long> COUNT = Metadata.Key.of("ctx-count", MoreMetadata.LONG_MARSHALLER);
+    private static final Metadata.Key<byte[]> BLOB = Metadata.Key.of("ctx-blob-bin", Metadata.BINARY_BYTE_MARSHALLER);
+
+    @Rule public final GrpcServerRule serverRule = new GrpcServerRule();
+
+    @Before
+    public void setUp() throws Exception {
+        // Reset the gRPC context between test executions
+        Context.ROOT.attach();
+    }
+
+    @Test
+    public void packedContextTransfersInOneHeader() {
+        AmbientContextEncoding encoding = AmbientContextEncoding.packed("ctx-count");
+        List<String> receivedHeaderNames = new ArrayList<>();
+        AtomicReference<AmbientContext> received = new AtomicReference<>();
+
+        GreeterGrpc.GreeterImplBase svc = new GreeterGrpc.GreeterImplBase() {
+            @Override
+            public void sayHello(HelloRequest request, StreamObserver<HelloResponse> responseObserver) {
+                received.set(AmbientContext.current());
+                responseObserver.onNext(HelloResponse.newBuilder().setMessage("Hello " + request.getName()).build());
+                responseObserver.onCompleted();
+            }
+        };
+        ServerInterceptor headerCapture = new ServerInterceptor() {
+            @Override
+            public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers, ServerCallHandler<ReqT, RespT> next) {
+                for (String name : headers.keys()) {
+                    if (name.startsWith("ctx-")) {
+                        receivedHeaderNames.add(name);
+                    }
+                }
+                return next.startCall(call, headers);
+            }
+        };
+
+        serverRule.getServiceRegistry().addService(ServerInterceptors.interceptForward(svc,
+                headerCapture, new AmbientContextServerInterceptor("ctx-", encoding)));
+        GreeterGrpc.GreeterBlockingStub stub = GreeterGrpc
+                .newBlockingStub(serverRule.getChannel())
+                .withInterceptors(new AmbientContextClientInterceptor("ctx-", encoding));
+
+        AmbientContext.initialize(Context.current()).run(() -> {
+            AmbientContext.current().put(TEXT, "one");
+            AmbientContext.current().put(TEXT, "two");
+            AmbientContext.current().put(COUNT, 42L);
+            AmbientContext.current().put(BLOB, new byte[]{0, 1, (byte) 0xFF});
+            stub.sayHello(HelloRequest.newBuilder().setName("world").build());
+        });
+
+        assertThat(receivedHeaderNames).containsExactly("ctx-packed-bin");
+        AmbientContext ctx = received.get();
+        assertThat(ctx.keys()).containsExactlyInAnyOrder("ctx-text", "ctx-count", "ctx-blob-bin");
+        assertThat(ctx.getAll(TEXT)).containsExactly("one", "two");
+        assertThat(ctx.get(COUNT)).isEqualTo(42L);
+        assertThat(ctx.get(BLOB)).containsExactly(0, 1, 0xFF);
+    }
+
+    @Test
+    public void dictionaryShrinksPackedHeader() {
+        AmbientContext ctx = new AmbientContext();
+        ctx.put(TEXT, "value");
+
+        assertThat(packedSize(ctx, AmbientContextEncoding.packed("ctx-text")))
+                .isLessThan(packedSize(ctx, AmbientContextEncoding.packed()));
+    }
+
+    @Test
+    public void packedServerAcceptsIndividualHeaders() {
+        Metadata headers = new Metadata();
+        headers.put(TEXT, "value");
+
+        AmbientContext ctx = intercept(new AmbientContextServerInterceptor("ctx-", AmbientContextEncoding.packed()),
+                headers, mock(ServerCall.class));
+
+        assertThat(ctx.get(TEXT)).isEqualTo("value");
+    }
+
+    @Test
+    public void malformedPackedHeaderIsRejected() {
+        assertRejected(new byte[]{0x0A, 0x7F});
+    }
+
+    @Test
+    public void nonAsciiPackedValueIsRejected() {
+        AmbientContext ctx = new AmbientContext();
+        ctx.put(TEXT, "value");
+        byte[] packed = packedBytes(ctx, AmbientContextEncoding.packed());
+        packed[packed.length - 1] = '\n';
+
+        assertRejected(packed);
+    }
+
+    private void assertRejected(byte[] packed) {
+        Metadata headers = new Metadata();
+        headers.put(Metadata.Key.of("ctx-packed-bin", Metadata.BINARY_BYTE_MARSHALLER), packed);
+        @SuppressWarnings("unchecked")
+        ServerCall<Object, Object> call = mock(ServerCall.class);
+
+        AmbientContext ctx = intercept(new AmbientContextServerInterceptor("ctx-", AmbientContextEncoding.packed()),
+                headers, call);
+
+        ArgumentCaptor<Status> status = ArgumentCaptor.forClass(Status.class);
+        verify(call).close(status.capture(), any(Metadata.class));
+        assertThat(status.getValue().getCode()).isEqualTo(Status.Code.INVALID_ARGUMENT);
+        assertThat(ctx).isNull();
+    }
+
+    private static int packedSize(AmbientContext ctx, AmbientContextEncoding encoding) {
+        return packedBytes(ctx, encoding).length;
+    }
+
+    private static byte[] packedBytes(AmbientContext ctx, AmbientContextEncoding encoding) {
+        Metadata headers = ctx.propagatedHeaders("ctx-", AmbientContextPropagationPolicy.Keys.all(),
+                AmbientContextBudget.UNLIMITED, encoding);
+        assertThat(headers.keys()).containsExactly("ctx-packed-bin");
+        return headers.get(Metadata.Key.of("ctx-packed-bin", Metadata.BINARY_BYTE_MARSHALLER));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static AmbientContext intercept(AmbientContextServerInterceptor interceptor, Metadata headers,
+                                            ServerCall<?, ?> call) {
+        AtomicReference<AmbientContext> captured = new AtomicReference<>();
+        ServerCallHandler<Object, Object> next = (c, h) -> {
+            captured.set(AmbientContext.DATA_KEY.get());
+            return new ServerCall.Listener<Object>() { };
+        };
+        interceptor.interceptCall((ServerCall<Object, Object>) call, headers, next);
+        return captured.get();
+    }
+}
@@ -19,6 +19,10 @@ import org.assertj.core.api.Condition;
 import org.junit.Rule;
 import org.junit.Test;
 
+import java.util.Arrays;
+import java.util.Collection;
+
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 public class AmbientContextEnforcerTest {
@@ -147,4 +151,64 @@ public class AmbientContextEnforcerTest {
                     });
         });
     }
+
+    @Test
+    public void serverEnforcerExemptsMethods() {
+        // Plumbing
+        serverRule.getServiceRegistry().addService(ServerInterceptors.intercept(svc,
+                new AmbientContextEnforcerServerInterceptor("ctx-test") {
+                    @Override
+                    protected Collection<String> requiredContextKeys(MethodDescriptor<?, ?> method) {
+                        return method == GreeterGrpc.getSayHelloMethod() ? null : super.requiredContextKeys(method);
+                    }
+                }
+        ));
+        GreeterGrpc.GreeterBlockingStub stub = GreeterGrpc.newBlockingStub(serverRule.getChannel());
+
+        // Test
+        stub.sayHello(HelloRequest.newBuilder().setName("World").build());
+    }
+
+    @Test
+    public void serverEnforcerRequiresPerMethodKeys() {
+        // Plumbing
+        serverRule.getServiceRegistry().addService(ServerInterceptors.interceptForward(svc,
+                new AmbientContextServerInterceptor("ctx-"),
+                new AmbientContextEnforcerServerInterceptor("ctx-test") {
+                    @Override
+                    protected Collection<String> requiredContextKeys(MethodDescriptor<?, ?> method) {
+                        return Arrays.asList("ctx-test", "CTX-" + method.getBareMethodName());
+                    }
+                }
+        ));
+        GreeterGrpc.GreeterBlockingStub stub = GreeterGrpc
+                .newBlockingStub(serverRule.getChannel())
+                .withInterceptors(new AmbientContextClientInterceptor("ctx-"));
+
+        // Test
+        AmbientContext.initialize(Context.current()).run(() -> {
+            AmbientContext.current().put(Metadata.Key.of("ctx-test", Metadata.ASCII_STRING_MARSHALLER), "v");
+
+            assertThatThrownBy(() -> stub.sayHello(HelloRequest.newBuilder().setName("World").build()))
+                    .isInstanceOfAny(StatusRuntimeException.class)
+                    .hasMessageContaining("ctx-sayhello");
+
+            AmbientContext.current().put(Metadata.Key.of("ctx-sayhello", Metadata.ASCII_STRING_MARSHALLER), "v");
+            stub.sayHello(HelloRequest.newBuilder().setName("World").build());
+        });
+    }
+
+    @Test
+    public void registeredKeysAreValidatedBySlot() {
+        AmbientContextKey<String> registered = AmbientContextKey.register(
+                Metadata.Key.of("ctx-enforcer-registered", Metadata.ASCII_STRING_MARSHALLER));
+        RequiredContextKeys required = RequiredContextKeys.of("ctx-enforcer-registered", "ctx-unregistered");
+        AmbientContext ctx = new AmbientContext();
+
+        assertThat(ctx.firstMissingKey(required)).isEqualTo("ctx-enforcer-registered");
+        ctx.put(registered, "v");
+        assertThat(ctx.firstMissingKey(required)).isEqualTo("ctx-unregistered");
+        ctx.put(Metadata.Key.of("ctx-unregistered", Metadata.ASCII_STRING_MARSHALLER), "v");
+        assertThat(ctx.firstMissingKey(required)).isNull();
+    }
 }
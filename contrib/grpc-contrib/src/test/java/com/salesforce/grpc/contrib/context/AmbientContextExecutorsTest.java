@@ -0,0 +1,162 @@
+/*
+ *  Copyright (c) 2019, Salesforce.com, Inc.
+ *  All rights reserved.
+ *  Licensed under the BSD 3-Clause license.
+ *  For full license text, see LICENSE.txt file in the repo root  or https://opensource.org/licenses/BSD-3-Clause
+ */
+
+package com.salesforce.grpc.contrib.context;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.salesforce.grpc.contrib.FutureChain;
+import io.grpc.Context;
+import io.grpc.Metadata;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class AmbientContextExecutorsTest {
+    private static final Metadata.Key<String> KEY = Metadata.Key.of("ctx-key", Metadata.ASCII_STRING_MARSHALLER);
+
+    private final ScheduledExecutorService pool = Executors.newSingleThreadScheduledExecutor();
+
+    @Before
+    public void setUp() throws Exception {
+        // Reset the gRPC context between test executions
+        Context.ROOT.attach();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        pool.shutdownNow();
+    }
+
+    @Test
+    public void taskSeesFrozenSnapshotOfSubmittingContext() throws Exception {
+        ExecutorService executor = AmbientContextExecutors.wrap((ExecutorService) pool);
+
+        Future<AmbientContext> seen = AmbientContext.initialize(Context.current()).call(() -> {
+            AmbientContext.current().put(KEY, "before");
+            Future<AmbientContext> future = executor.submit(AmbientContext::current);
+            AmbientContext.current().put(KEY, "after");
+            return future;
+        });
+
+        AmbientContext ctx = seen.get(1, TimeUnit.SECONDS);
+        assertThat(ctx.getAll(KEY)).containsExactly("before");
+        assertThat(ctx.isFrozen()).isTrue();
+    }
+
+    @Test
+    public void scheduledTaskSeesSubmittingContext() throws Exception {
+        ScheduledExecutorService executor = AmbientContextExecutors.wrap(pool);
+
+        ScheduledFuture<String> seen = AmbientContext.initialize(Context.current()).call(() -> {
+            AmbientContext.current().put(KEY, "value");
+            return executor.schedule(() -> AmbientContext.current().get(KEY), 1, TimeUnit.MILLISECONDS);
+        });
+
+        assertThat(seen.get(1, TimeUnit.SECONDS)).isEqualTo("value");
+    }
+
+    @Test
+    public void capturedContextIsReusedUntilAmbientContextChanges() throws Exception {
+        AmbientContext.initialize(Context.current()).call(() -> {
+            AmbientContext.current().put(KEY, "one");
+            Context first = AmbientContextExecutors.capture();
+            assertThat(AmbientContextExecutors.capture()).isSameAs(first);
+
+            AmbientContext.current().put(KEY, "two");
+            assertThat(AmbientContextExecutors.capture()).isNotSameAs(first);
+            return null;
+        });
+    }
+
+    @Test
+    public void wrappingIsIdempotent() {
+        ExecutorService executor = AmbientContextExecutors.wrap((ExecutorService) pool);
+        assertThat(AmbientContextExecutors.wrap(executor)).isSameAs(executor);
+        assertThat(AmbientContextExecutors.wrap((Executor) executor)).isSameAs(executor);
+    }
+
+    @Test
+    public void futureHooksPropagateRegistrationContext() throws Exception {
+        SettableFuture<String> start = SettableFuture.create();
+        AtomicReference<String> callbackSaw = new AtomicReference<>();
+
+        ListenableFuture<String> chain;
+        try (AmbientContextExecutors.FutureHooks hooks = AmbientContextExecutors.installFutureHooks()) {
+            chain = AmbientContext.initialize(Context.current()).call(() -> {
+                AmbientContext.current().put(KEY, "value");
+                return FutureChain.startWith(start, pool)
+                        .transform(s -> s + AmbientContext.current().get(KEY))
+                        .onSuccess(s -> callbackSaw.set(AmbientContext.current().get(KEY)))
+                        .compile();
+            });
+        }
+
+        // Complete the future from a thread with no ambient context
+        start.set("got ");
+
+        assertThat(chain.get(1, TimeUnit.SECONDS)).isEqualTo("got value");
+        pool.submit(() -> { }).get(1, TimeUnit.SECONDS);
+        assertThat(callbackSaw.get()).isEqualTo("value");
+    }
+
+    @Test
+    public void closingFutureHooksRestoresPreviousDecorator() throws Exception {
+        AtomicReference<String> callbackSaw = new AtomicReference<>("unset");
+        SettableFuture<String> start = SettableFuture.create();
+
+        AmbientContextExecutors.installFutureHooks().close();
+        AmbientContext.initialize(Context.current()).run(() -> {
+            AmbientContext.current().put(KEY, "value");
+            FutureChain.startWith(start, MoreExecutors.directExecutor())
+                    .onSuccess(s -> callbackSaw.set(AmbientContext.isPresent() ? "present" : "absent"));
+        });
+        start.set("done");
+
+        assertThat(callbackSaw.get()).isEqualTo("absent");
+    }
+
+    @Test
+    public void futureHooksAreInstalledOnce() {
+        AmbientContextExecutors.FutureHooks first = AmbientContextExecutors.installFutureHooks();
+        try {
+            assertThatThrownBy(AmbientContextExecutors::installFutureHooks).isInstanceOf(IllegalStateException.class);
+        } finally {
+            first.close();
+        }
+
+        // A stale handle does not remove hooks installed after it was closed
+        AmbientContextExecutors.FutureHooks second = AmbientContextExecutors.installFutureHooks();
+        first.close();
+        assertThatThrownBy(AmbientContextExecutors::installFutureHooks).isInstanceOf(IllegalStateException.class);
+        second.close();
+        AmbientContextExecutors.installFutureHooks().close();
+    }
+
+    @Test
+    public void fixedContextExecutorPropagatesWithoutHooks() throws Exception {
+        SettableFuture<String> start = SettableFuture.create();
+        AtomicReference<String> callbackSaw = new AtomicReference<>();
+
+        AmbientContext.initialize(Context.current()).run(() -> {
+            AmbientContext.current().put(KEY, "value");
+            FutureChain.startWith(start, AmbientContextExecutors.fixedContextExecutor(pool))
+                    .onSuccess(s -> callbackSaw.set(AmbientContext.current().get(KEY)));
+        });
+        start.set("done");
+
+        pool.submit(() -> { }).get(1, TimeUnit.SECONDS);
+        assertThat(callbackSaw.get()).isEqualTo("value");
+    }
+}
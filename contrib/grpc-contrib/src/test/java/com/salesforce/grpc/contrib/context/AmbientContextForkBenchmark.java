@@ -0,0 +1,67 @@
+/*
+ *  Copyright (c) 2019, Salesforce.com, Inc.
+ *  All rights reserved.
+ *  Licensed under the BSD 3-Clause license.
+ *  For full license text, see LICENSE.txt file in the repo root  or https://opensource.org/licenses/BSD-3-Clause
+ */
+
+package com.salesforce.grpc.contrib.context;
+
+import io.grpc.Metadata;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares forking an {@link AmbientContext} and adding a call-specific key against the {@code Metadata.merge()}
+ * based copy that {@code AmbientContext} previously used.
+ *
+ * <p>Run with {@code main()} from the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AmbientContextForkBenchmark {
+    @Param({"5", "15", "60"})
+    private int keyCount;
+
+    private final Metadata.Key<String> callKey = Metadata.Key.of("ctx-call-key", Metadata.ASCII_STRING_MARSHALLER);
+    private AmbientContext context;
+    private Metadata metadata;
+
+    @Setup
+    public void setUp() {
+        context = new AmbientContext();
+        metadata = new Metadata();
+        for (int i = 0; i < keyCount; i++) {
+            Metadata.Key<String> key = Metadata.Key.of("ctx-key-" + i, Metadata.ASCII_STRING_MARSHALLER);
+            context.put(key, "value-" + i);
+            metadata.put(key, "value-" + i);
+        }
+    }
+
+    @Benchmark
+    public String forkAndPut() {
+        AmbientContext forked = new AmbientContext(context);
+        forked.put(callKey, "call-value");
+        return forked.get(callKey);
+    }
+
+    @Benchmark
+    public String metadataMergeAndPut() {
+        Metadata copy = new Metadata();
+        copy.merge(metadata);
+        copy.put(callKey, "call-value");
+        return copy.get(callKey);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(AmbientContextForkBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ *  Copyright (c) 2019, Salesforce.com, Inc.
+ *  All rights reserved.
+ *  Licensed under the BSD 3-Clause license.
+ *  For full license text, see LICENSE.txt file in the repo root  or https://opensource.org/licenses/BSD-3-Clause
+ */
+
+package com.salesforce.grpc.contrib.context;
+
+import io.grpc.*;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the per-event cost of {@link AmbientContextFreezeServerInterceptor} on a streaming call, where every
+ * {@code onMessage()} and {@code onReady()} freezes and thaws the ambient context, against the previous
+ * implementation that looked up the context and allocated a freeze key and a {@code Runnable} on every event.
+ *
+ * <p>Run with {@code main()} from the test classpath. Add {@code -prof gc} to compare allocation rates.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AmbientContextFreezeBenchmark {
+    @Param({"false", "true"})
+    private boolean threadSafe;
+
+    private Context previous;
+    private Context attached;
+    private ServerCall.Listener<String> listener;
+    private ServerCall.Listener<String> perEventListener;
+
+    @Setup
+    public void setUp() {
+        attached = AmbientContext.initialize(Context.current(), threadSafe);
+        AmbientContext.DATA_KEY.get(attached)
+                .put(Metadata.Key.of("ctx-key", Metadata.ASCII_STRING_MARSHALLER), "value");
+        previous = attached.attach();
+
+        listener = new AmbientContextFreezeServerInterceptor().interceptCall(null, new Metadata(), this::startCall);
+        perEventListener = new PerEventFreezeServerInterceptor().interceptCall(null, new Metadata(), this::startCall);
+    }
+
+    @TearDown
+    public void tearDown() {
+        attached.detach(previous);
+    }
+
+    private ServerCall.Listener<String> startCall(ServerCall<String, String> call, Metadata headers) {
+        return new ServerCall.Listener<String>() {
+            @Override
+            public void onMessage(String message) {
+                // Streaming handlers typically read the frozen context
+                AmbientContext.DATA_KEY.get().isFrozen();
+            }
+        };
+    }
+
+    @Benchmark
+    public void streamEvents() {
+        listener.onMessage("message");
+        listener.onReady();
+    }
+
+    @Benchmark
+    public void streamEventsPerEventLookup() {
+        perEventListener.onMessage("message");
+        perEventListener.onReady();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(AmbientContextFreezeBenchmark.class.getSimpleName()).build()).run();
+    }
+
+    /**
+     * The previous freeze interceptor, which resolved the ambient context and allocated a freeze key and a
+     * {@code Runnable} on every listener event.
+     */
+    private static final class PerEventFreezeServerInterceptor implements ServerInterceptor {
+        @Override
+        public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers, ServerCallHandler<ReqT, RespT> next) {
+            return new ForwardingServerCallListener.SimpleForwardingServerCallListener<ReqT>(next.startCall(call, headers)) {
+                @Override
+                public void onMessage(ReqT message) {
+                    freezeAndThaw(() -> super.onMessage(message));
+                }
+
+                @Override
+                public void onReady() {
+                    freezeAndThaw(super::onReady);
+                }
+
+                private void freezeAndThaw(Runnable delegate) {
+                    if (AmbientContext.isPresent()) {
+                        Object freezeKey = AmbientContext.current().freeze();
+                        try {
+                            delegate.run();
+                        } finally {
+                            AmbientContext.current().thaw(freezeKey);
+                        }
+                    } else {
+                        delegate.run();
+                    }
+                }
+            };
+        }
+    }
+}
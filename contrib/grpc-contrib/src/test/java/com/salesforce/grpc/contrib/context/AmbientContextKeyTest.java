@@ -0,0 +1,103 @@
+/*
+ *  Copyright (c) 2019, Salesforce.com, Inc.
+ *  All rights reserved.
+ *  Licensed under the BSD 3-Clause license.
+ *  For full license text, see LICENSE.txt file in the repo root  or https://opensource.org/licenses/BSD-3-Clause
+ */
+
+package com.salesforce.grpc.contrib.context;
+
+import com.salesforce.grpc.contrib.MoreMetadata;
+import io.grpc.Metadata;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class AmbientContextKeyTest {
+    private static final Metadata.Key<String> TENANT = Metadata.Key.of("key-test-tenant", Metadata.ASCII_STRING_MARSHALLER);
+    private static final AmbientContextKey<String> TENANT_KEY = AmbientContextKey.register(TENANT);
+
+    private static final Metadata.Key<Long> COUNT = Metadata.Key.of("key-test-count", MoreMetadata.LONG_MARSHALLER);
+    private static final AmbientContextKey<Long> COUNT_KEY = AmbientContextKey.register(COUNT);
+
+    @Test
+    public void registeringTwiceReturnsSameKey() {
+        assertThat(AmbientContextKey.register(TENANT)).isSameAs(TENANT_KEY);
+        assertThat(AmbientContextKey.slotOf(TENANT.name())).isEqualTo(TENANT_KEY.slot());
+        assertThat(AmbientContextKey.slotOf("key-test-unregistered")).isEqualTo(-1);
+    }
+
+    @Test
+    public void registeringConflictingKeyThrows() {
+        Metadata.Key<String> conflicting = Metadata.Key.of(TENANT.name(), Metadata.ASCII_STRING_MARSHALLER);
+        assertThatThrownBy(() -> AmbientContextKey.register(conflicting)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void registeredAndMetadataKeysSeeTheSameValues() {
+        AmbientContext context = new AmbientContext();
+        context.put(TENANT, "a");
+        context.put(TENANT_KEY, "b");
+
+        assertThat(context.containsKey(TENANT_KEY)).isTrue();
+        assertThat(context.get(TENANT_KEY)).isEqualTo("b");
+        assertThat(context.getAll(TENANT_KEY)).containsExactly("a", "b");
+        assertThat(context.getAll(TENANT)).containsExactly("a", "b");
+
+        context.remove(TENANT, "b");
+        assertThat(context.get(TENANT_KEY)).isEqualTo("a");
+
+        context.discardAll(TENANT);
+        assertThat(context.containsKey(TENANT_KEY)).isFalse();
+        assertThat(context.get(TENANT_KEY)).isNull();
+        assertThat(context.getAll(TENANT_KEY)).isNull();
+    }
+
+    @Test
+    public void valuesStoredBeforeRegistrationAreFound() {
+        Metadata.Key<String> late = Metadata.Key.of("key-test-late", Metadata.ASCII_STRING_MARSHALLER);
+        AmbientContext context = new AmbientContext();
+        context.put(late, "early");
+
+        AmbientContextKey<String> lateKey = AmbientContextKey.register(late);
+
+        assertThat(context.containsKey(lateKey)).isTrue();
+        assertThat(context.get(lateKey)).isEqualTo("early");
+        assertThat(context.getAll(lateKey)).containsExactly("early");
+    }
+
+    @Test
+    public void parsedValuesAreCached() {
+        AmbientContext context = new AmbientContext();
+        context.put(Metadata.Key.of(COUNT.name(), Metadata.ASCII_STRING_MARSHALLER), "12345678901");
+
+        Long first = context.get(COUNT_KEY);
+        assertThat(first).isEqualTo(12345678901L);
+        assertThat(context.get(COUNT_KEY)).isSameAs(first);
+    }
+
+    @Test
+    public void parsedValueListsAreCached() {
+        AmbientContext context = new AmbientContext();
+        Metadata.Key<String> stringKey = Metadata.Key.of(COUNT.name(), Metadata.ASCII_STRING_MARSHALLER);
+        context.put(stringKey, "1");
+        context.put(stringKey, "2");
+
+        Iterable<Long> first = context.getAll(COUNT_KEY);
+        assertThat(first).containsExactly(1L, 2L);
+        assertThat(context.getAll(COUNT_KEY)).isSameAs(first);
+    }
+
+    @Test
+    public void registeredValuesForkIndependently() {
+        AmbientContext outer = new AmbientContext();
+        outer.put(TENANT_KEY, "outer");
+
+        AmbientContext inner = new AmbientContext(outer);
+        inner.put(TENANT_KEY, "inner");
+
+        assertThat(outer.get(TENANT_KEY)).isEqualTo("outer");
+        assertThat(inner.get(TENANT_KEY)).isEqualTo("inner");
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ *  Copyright (c) 2019, Salesforce.com, Inc.
+ *  All rights reserved.
+ *  Licensed under the BSD 3-Clause license.
+ *  For full license text, see LICENSE.txt file in the repo root  or https://opensource.org/licenses/BSD-3-Clause
+ */
+
+package com.salesforce.grpc.contrib.context;
+
+import com.salesforce.grpc.contrib.GreeterGrpc;
+import com.salesforce.grpc.contrib.HelloRequest;
+import com.salesforce.grpc.contrib.HelloResponse;
+import io.grpc.Context;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.ServerInterceptors;
+import io.grpc.stub.StreamObserver;
+import io.grpc.testing.GrpcServerRule;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.salesforce.grpc.contrib.context.AmbientContextPropagationPolicy.Keys;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AmbientContextPropagationPolicyTest {
+    private static final Metadata.Key<String> A = Metadata.Key.of("ctx-a", Metadata.ASCII_STRING_MARSHALLER);
+    private static final Metadata.Key<String> B = Metadata.Key.of("ctx-b", Metadata.ASCII_STRING_MARSHALLER);
+
+    @Rule public final GrpcServerRule serverRule = new GrpcServerRule();
+
+    @Before
+    public void setUp() throws Exception {
+        // Reset the gRPC context between test executions
+        Context.ROOT.attach();
+    }
+
+    @Test
+    public void mostSpecificRuleWins() {
+        AmbientContextPropagationPolicy policy = AmbientContextPropagationPolicy.newBuilder()
+                .forService("helloworld.Greeter", Keys.allow("ctx-a"))
+                .forMethod("helloworld.Greeter/SayTime", Keys.none())
+                .forMethods(method -> method.getType() == MethodDescriptor.MethodType.SERVER_STREAMING, Keys.deny("ctx-a"))
+                .build();
+
+        assertThat(policy.keysFor(GreeterGrpc.getSayHelloMethod()).allowedNames()).containsExactly("ctx-a");
+        assertThat(policy.keysFor(GreeterGrpc.getSayTimeMethod()).isNone()).isTrue();
+        assertThat(policy.keysFor(GreeterGrpc.getSayHelloStreamMethod()).test("ctx-a")).isFalse();
+        assertThat(policy.keysFor(GreeterGrpc.getSayHelloStreamMethod()).test("ctx-b")).isTrue();
+    }
+
+    @Test
+    public void resolvedKeysAreCached() {
+        AmbientContextPropagationPolicy policy = AmbientContextPropagationPolicy.newBuilder()
+                .forService("helloworld.Greeter", Keys.allow("ctx-a"))
+                .build();
+
+        assertThat(policy.keysFor(GreeterGrpc.getSayHelloMethod()))
+                .isSameAs(policy.keysFor(GreeterGrpc.getSayHelloMethod()));
+    }
+
+    @Test
+    public void propagatedHeadersAreFiltered() {
+        AmbientContext ctx = new AmbientContext();
+        ctx.put(A, "a");
+        ctx.put(B, "b");
+
+        Metadata allowed = ctx.propagatedHeaders("ctx-", Keys.allow("CTX-A", "ctx-missing"),
+                AmbientContextBudget.UNLIMITED, AmbientContextEncoding.HEADERS);
+        assertThat(allowed.keys()).containsExactly("ctx-a");
+
+        Metadata denied = ctx.propagatedHeaders("ctx-", Keys.deny("ctx-a"),
+                AmbientContextBudget.UNLIMITED, AmbientContextEncoding.HEADERS);
+        assertThat(denied.keys()).containsExactly("ctx-b");
+    }
+
+    @Test
+    public void onlySelectedKeysAreTransferred() {
+        AtomicReference<Metadata> received = new AtomicReference<>();
+        GreeterGrpc.GreeterImplBase svc = new GreeterGrpc.GreeterImplBase() {
+            @Override
+            public void sayHello(HelloRequest request, StreamObserver<HelloResponse> responseObserver) {
+                received.set(AmbientContext.current().propagatedHeaders("ctx-"));
+                responseObserver.onNext(HelloResponse.newBuilder().setMessage("Hello " + request.getName()).build());
+                responseObserver.onCompleted();
+            }
+        };
+
+        serverRule.getServiceRegistry().addService(ServerInterceptors
+                .intercept(svc, new AmbientContextServerInterceptor("ctx-")));
+
+        AmbientContextPropagationPolicy policy = AmbientContextPropagationPolicy.newBuilder()
+                .forMethod(GreeterGrpc.getSayHelloMethod().getFullMethodName(), Keys.allow("ctx-b"))
+                .build();
+        GreeterGrpc.GreeterBlockingStub stub = GreeterGrpc
+                .newBlockingStub(serverRule.getChannel())
+                .withInterceptors(new AmbientContextClientInterceptor("ctx-", policy));
+
+        AmbientContext.initialize(Context.current()).run(() -> {
+            AmbientContext.current().put(A, "a");
+            AmbientContext.current().put(B, "b");
+            stub.sayHello(HelloRequest.newBuilder().setName("world").build());
+        });
+
+        assertThat(received.get().keys()).containsExactly("ctx-b");
+    }
+}
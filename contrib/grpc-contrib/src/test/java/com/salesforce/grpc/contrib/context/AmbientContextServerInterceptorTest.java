@@ -0,0 +1,76 @@
+/*
+ *  Copyright (c) 2019, Salesforce.com, Inc.
+ *  All rights reserved.
+ *  Licensed under the BSD 3-Clause license.
+ *  For full license text, see LICENSE.txt file in the repo root  or https://opensource.org/licenses/BSD-3-Clause
+ */
+
+package com.salesforce.grpc.contrib.context;
+
+import com.salesforce.grpc.contrib.MoreMetadata;
+import io.grpc.Context;
+import io.grpc.Metadata;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+public class AmbientContextServerInterceptorTest {
+    @Before
+    public void setUp() throws Exception {
+        // Reset the gRPC context between test executions
+        Context.ROOT.attach();
+    }
+
+    @SuppressWarnings("unchecked")
+    private AmbientContext intercept(AmbientContextServerInterceptor interceptor, Metadata headers) {
+        AtomicReference<AmbientContext> captured = new AtomicReference<>();
+        ServerCallHandler<Object, Object> next = (call, h) -> {
+            captured.set(AmbientContext.DATA_KEY.get());
+            return new ServerCall.Listener<Object>() { };
+        };
+        interceptor.interceptCall(mock(ServerCall.class), headers, next);
+        return captured.get();
+    }
+
+    @Test
+    public void valuesAreDecodedOnFirstRead() {
+        Metadata.Key<Long> countKey = Metadata.Key.of("ctx-count", MoreMetadata.LONG_MARSHALLER);
+        Metadata headers = new Metadata();
+        headers.put(countKey, 42L);
+
+        AmbientContext ctx = intercept(new AmbientContextServerInterceptor("ctx-"), headers);
+
+        assertThat(ctx.get(countKey)).isEqualTo(42L);
+        assertThat(ctx.get(Metadata.Key.of("ctx-count", Metadata.ASCII_STRING_MARSHALLER))).isEqualTo("42");
+    }
+
+    @Test
+    public void unreadValuesAreForwardedByteForByte() {
+        MetadataKeyCache keys = new MetadataKeyCache();
+        Metadata.Key<byte[]> binKey = Metadata.Key.of("ctx-blob-bin", Metadata.BINARY_BYTE_MARSHALLER);
+        byte[] blob = {1, 2, 3};
+        Metadata headers = new Metadata();
+        headers.put(binKey, blob);
+        headers.put(Metadata.Key.of("ctx-text", Metadata.ASCII_STRING_MARSHALLER), "text");
+
+        AmbientContext ctx = intercept(new AmbientContextServerInterceptor("ctx-"), headers);
+        Metadata forwarded = ctx.propagatedHeaders("ctx-");
+
+        assertThat(forwarded.get(binKey)).isSameAs(blob);
+        assertThat(forwarded.get(keys.key("ctx-text"))).isEqualTo(headers.get(keys.key("ctx-text")));
+    }
+
+    @Test
+    public void noContextIsAttachedWithoutMatchingHeaders() {
+        Metadata headers = new Metadata();
+        headers.put(Metadata.Key.of("other", Metadata.ASCII_STRING_MARSHALLER), "value");
+
+        assertThat(intercept(new AmbientContextServerInterceptor("ctx-"), headers)).isNull();
+    }
+}
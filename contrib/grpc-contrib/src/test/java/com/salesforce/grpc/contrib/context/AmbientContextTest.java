@@ -7,11 +7,19 @@
 
 package com.salesforce.grpc.contrib.context;
 
+import com.salesforce.grpc.contrib.MoreMetadata;
 import io.grpc.Context;
 import io.grpc.Metadata;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
@@ -96,4 +104,156 @@ public class AmbientContextTest {
             assertThat(AmbientContext.current().get(key)).isEqualTo("outer");
         });
     }
+
+    @Test
+    public void propagatedHeadersOnlyIncludePrefix() {
+        Metadata.Key<String> ctxKey = Metadata.Key.of("ctx-key", Metadata.ASCII_STRING_MARSHALLER);
+        Metadata.Key<byte[]> ctxBinKey = Metadata.Key.of("ctx-key-bin", Metadata.BINARY_BYTE_MARSHALLER);
+        Metadata.Key<String> otherKey = Metadata.Key.of("other-key", Metadata.ASCII_STRING_MARSHALLER);
+        AmbientContext context = new AmbientContext();
+        context.put(ctxKey, "a");
+        context.put(otherKey, "b");
+        context.put(ctxBinKey, new byte[]{1, 2});
+        context.put(ctxKey, "c");
+
+        Metadata headers = context.propagatedHeaders("ctx-");
+
+        assertThat(headers.keys()).containsExactlyInAnyOrder("ctx-key", "ctx-key-bin");
+        assertThat(headers.getAll(ctxKey)).containsExactly("a", "c");
+        assertThat(headers.get(ctxBinKey)).containsExactly(1, 2);
+    }
+
+    @Test
+    public void propagatedHeadersAreReusedWhileFrozen() {
+        Metadata.Key<String> key = Metadata.Key.of("ctx-key", Metadata.ASCII_STRING_MARSHALLER);
+        AmbientContext context = new AmbientContext();
+        context.put(key, "a");
+
+        assertThat(context.propagatedHeaders("ctx-")).isNotSameAs(context.propagatedHeaders("ctx-"));
+
+        Object freezeKey = context.freeze();
+        Metadata frozen = context.propagatedHeaders("ctx-");
+        assertThat(context.propagatedHeaders("ctx-")).isSameAs(frozen);
+
+        context.thaw(freezeKey);
+        context.put(key, "b");
+        context.freeze();
+        assertThat(context.propagatedHeaders("ctx-").getAll(key)).containsExactly("a", "b");
+    }
+
+    @Test
+    public void refreezingWithSameKeyReusesSnapshot() {
+        Metadata.Key<String> key = Metadata.Key.of("ctx-key", Metadata.ASCII_STRING_MARSHALLER);
+        AmbientContext context = new AmbientContext();
+        context.put(key, "value");
+        Object freezeKey = new Object();
+
+        context.freeze(freezeKey);
+        Metadata first = context.propagatedHeaders("ctx-");
+        context.thaw(freezeKey);
+        context.freeze(freezeKey);
+        assertThat(context.propagatedHeaders("ctx-")).isSameAs(first);
+
+        context.thaw(freezeKey);
+        context.put(key, "other");
+        context.freeze(freezeKey);
+        assertThat(context.propagatedHeaders("ctx-").getAll(key)).containsExactly("value", "other");
+        context.thaw(freezeKey);
+        assertThat(context.isFrozen()).isFalse();
+    }
+
+    @Test
+    public void forkIsIsolatedInBothDirections() {
+        Metadata.Key<String> key = Metadata.Key.of("k", Metadata.ASCII_STRING_MARSHALLER);
+        AmbientContext outer = new AmbientContext();
+        outer.put(key, "a");
+
+        AmbientContext inner = new AmbientContext(outer);
+        inner.put(key, "b");
+        outer.put(key, "c");
+
+        assertThat(outer.getAll(key)).containsExactly("a", "c");
+        assertThat(inner.getAll(key)).containsExactly("a", "b");
+    }
+
+    @Test
+    public void removalWorks() {
+        Metadata.Key<String> key = Metadata.Key.of("k", Metadata.ASCII_STRING_MARSHALLER);
+        Metadata.Key<String> other = Metadata.Key.of("other", Metadata.ASCII_STRING_MARSHALLER);
+        AmbientContext context = new AmbientContext();
+        context.put(key, "a");
+        context.put(key, "b");
+        context.put(key, "a");
+        context.put(other, "x");
+
+        assertThat(context.remove(key, "a")).isTrue();
+        assertThat(context.remove(key, "z")).isFalse();
+        assertThat(context.getAll(key)).containsExactly("b", "a");
+
+        assertThat(context.removeAll(key)).containsExactly("b", "a");
+        assertThat(context.containsKey(key)).isFalse();
+        assertThat(context.removeAll(key)).isNull();
+
+        context.discardAll(other);
+        assertThat(context.keys()).isEmpty();
+    }
+
+    @Test
+    public void valuesConvertBetweenMarshallers() {
+        Metadata.Key<String> stringKey = Metadata.Key.of("k", Metadata.ASCII_STRING_MARSHALLER);
+        Metadata.Key<Long> longKey = Metadata.Key.of("k", MoreMetadata.LONG_MARSHALLER);
+        AmbientContext context = new AmbientContext();
+        context.put(stringKey, "42");
+        context.put(longKey, 7L);
+
+        assertThat(context.getAll(longKey)).containsExactly(42L, 7L);
+        assertThat(context.getAll(stringKey)).containsExactly("42", "7");
+        assertThat(context.remove(longKey, 42L)).isTrue();
+        assertThat(context.get(stringKey)).isEqualTo("7");
+    }
+
+    @Test
+    public void threadSafeContextIsInherited() {
+        AmbientContext.initialize(Context.current(), true).run(() -> {
+            assertThat(AmbientContext.current().isThreadSafe()).isTrue();
+            AmbientContext.current().fork(Context.current()).run(() ->
+                    assertThat(AmbientContext.current().isThreadSafe()).isTrue());
+        });
+        AmbientContext.initialize(Context.current()).run(() ->
+                assertThat(AmbientContext.current().isThreadSafe()).isFalse());
+    }
+
+    @Test
+    public void threadSafeContextAcceptsConcurrentWrites() throws Exception {
+        Metadata.Key<String> key = Metadata.Key.of("k", Metadata.ASCII_STRING_MARSHALLER);
+        AmbientContext context = new AmbientContext(true);
+        int threads = 8;
+        int writesPerThread = 500;
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < writesPerThread; i++) {
+                        context.put(key, thread + "-" + i);
+                        context.put(Metadata.Key.of("k" + thread, Metadata.ASCII_STRING_MARSHALLER), "v");
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertThat(context.getAll(key)).hasSize(threads * writesPerThread);
+        assertThat(context.keys()).hasSize(threads + 1);
+    }
 }
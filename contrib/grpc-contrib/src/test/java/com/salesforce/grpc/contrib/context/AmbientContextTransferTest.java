@@ -22,10 +22,12 @@ import org.junit.Rule;
 import org.junit.Test;
 
 import java.time.Duration;
+import java.util.Collections;
 import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicReference;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.awaitility.Awaitility.await;
 
 public class AmbientContextTransferTest {
@@ -236,4 +238,48 @@ public class AmbientContextTransferTest {
         assertThat(ctxValue.get()).isEqualTo(expectedCtxValue);
         assertThat(l5dValue.get()).isEqualTo(expectedCtxValue);
     }
+
+    @Test
+    public void allowListedContextTransfers() throws Exception {
+        Metadata.Key<String> allowedKey = Metadata.Key.of("ctx-allowed", Metadata.ASCII_STRING_MARSHALLER);
+        Metadata.Key<String> otherKey = Metadata.Key.of("ctx-other", Metadata.ASCII_STRING_MARSHALLER);
+        String expectedCtxValue = "context-value";
+        AtomicReference<String> allowedValue = new AtomicReference<>();
+        AtomicReference<Boolean> otherPresent = new AtomicReference<>();
+
+        // Service
+        GreeterGrpc.GreeterImplBase svc = new GreeterGrpc.GreeterImplBase() {
+            @Override
+            public void sayHello(HelloRequest request, StreamObserver<HelloResponse> responseObserver) {
+                allowedValue.set(AmbientContext.current().get(allowedKey));
+                otherPresent.set(AmbientContext.current().containsKey(otherKey));
+                responseObserver.onNext(HelloResponse.newBuilder().setMessage("Hello " + request.getName()).build());
+                responseObserver.onCompleted();
+            }
+        };
+
+        // Plumbing
+        serverRule1.getServiceRegistry().addService(ServerInterceptors
+                .intercept(svc, new AmbientContextServerInterceptor("ctx-", Collections.singleton("ctx-allowed"))));
+
+        GreeterGrpc.GreeterBlockingStub stub = GreeterGrpc
+                .newBlockingStub(serverRule1.getChannel())
+                .withInterceptors(new AmbientContextClientInterceptor("ctx-"));
+
+        // Test
+        AmbientContext.initialize(Context.current()).run(() -> {
+            AmbientContext.current().put(allowedKey, expectedCtxValue);
+            AmbientContext.current().put(otherKey, expectedCtxValue);
+            stub.sayHello(HelloRequest.newBuilder().setName("world").build());
+        });
+
+        assertThat(allowedValue.get()).isEqualTo(expectedCtxValue);
+        assertThat(otherPresent.get()).isFalse();
+    }
+
+    @Test
+    public void allowListMustMatchPrefix() {
+        assertThatThrownBy(() -> new AmbientContextServerInterceptor("ctx-", Collections.singleton("l5d-key")))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
 }
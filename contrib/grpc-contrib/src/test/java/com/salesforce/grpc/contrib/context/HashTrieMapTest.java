@@ -0,0 +1,110 @@
+/*
+ *  Copyright (c) 2019, Salesforce.com, Inc.
+ *  All rights reserved.
+ *  Licensed under the BSD 3-Clause license.
+ *  For full license text, see LICENSE.txt file in the repo root  or https://opensource.org/licenses/BSD-3-Clause
+ */
+
+package com.salesforce.grpc.contrib.context;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class HashTrieMapTest {
+    /**
+     * A key with a controllable hash code, used to force hash collisions.
+     */
+    private static final class CollidingKey {
+        private final String name;
+        private final int hash;
+
+        CollidingKey(String name, int hash) {
+            this.name = name;
+            this.hash = hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof CollidingKey && ((CollidingKey) o).name.equals(name);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    @Test
+    public void putAndGetWork() {
+        HashTrieMap<String, Integer> map = HashTrieMap.<String, Integer>empty()
+                .put("a", 1)
+                .put("b", 2)
+                .put("a", 3);
+
+        assertThat(map.size()).isEqualTo(2);
+        assertThat(map.get("a")).isEqualTo(3);
+        assertThat(map.get("b")).isEqualTo(2);
+        assertThat(map.get("c")).isNull();
+    }
+
+    @Test
+    public void modificationsArePersistent() {
+        HashTrieMap<String, Integer> original = HashTrieMap.<String, Integer>empty().put("a", 1);
+        HashTrieMap<String, Integer> modified = original.put("b", 2).remove("a");
+
+        assertThat(original.get("a")).isEqualTo(1);
+        assertThat(original.get("b")).isNull();
+        assertThat(modified.get("a")).isNull();
+        assertThat(modified.get("b")).isEqualTo(2);
+    }
+
+    @Test
+    public void collisionsWork() {
+        CollidingKey a = new CollidingKey("a", 42);
+        CollidingKey b = new CollidingKey("b", 42);
+        CollidingKey c = new CollidingKey("c", 42 + 32);
+
+        HashTrieMap<CollidingKey, String> map = HashTrieMap.<CollidingKey, String>empty()
+                .put(a, "a")
+                .put(b, "b")
+                .put(c, "c");
+
+        assertThat(map.size()).isEqualTo(3);
+        assertThat(map.get(a)).isEqualTo("a");
+        assertThat(map.get(b)).isEqualTo("b");
+        assertThat(map.get(c)).isEqualTo("c");
+
+        map = map.remove(a);
+        assertThat(map.size()).isEqualTo(2);
+        assertThat(map.get(a)).isNull();
+        assertThat(map.get(b)).isEqualTo("b");
+    }
+
+    @Test
+    public void behavesLikeHashMap() {
+        Random random = new Random(1234);
+        Map<Integer, Integer> expected = new HashMap<>();
+        HashTrieMap<Integer, Integer> actual = HashTrieMap.empty();
+
+        for (int i = 0; i < 10_000; i++) {
+            Integer key = random.nextInt(2_000) * 997;
+            if (random.nextInt(3) == 0) {
+                expected.remove(key);
+                actual = actual.remove(key);
+            } else {
+                expected.put(key, i);
+                actual = actual.put(key, i);
+            }
+        }
+
+        Map<Integer, Integer> visited = new HashMap<>();
+        actual.forEach(visited::put);
+        assertThat(actual.size()).isEqualTo(expected.size());
+        assertThat(visited).isEqualTo(expected);
+    }
+}
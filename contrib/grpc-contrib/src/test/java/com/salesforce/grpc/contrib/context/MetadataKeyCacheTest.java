@@ -0,0 +1,50 @@
+/*
+ *  Copyright (c) 2019, Salesforce.com, Inc.
+ *  All rights reserved.
+ *  Licensed under the BSD 3-Clause license.
+ *  For full license text, see LICENSE.txt file in the repo root  or https://opensource.org/licenses/BSD-3-Clause
+ */
+
+package com.salesforce.grpc.contrib.context;
+
+import io.grpc.Metadata;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MetadataKeyCacheTest {
+    @Test
+    public void keysAreInterned() {
+        MetadataKeyCache cache = new MetadataKeyCache();
+
+        assertThat(cache.key("ctx-foo")).isSameAs(cache.key("ctx-foo"));
+        assertThat(cache.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void keysReadRawBytes() {
+        MetadataKeyCache cache = new MetadataKeyCache();
+
+        Metadata headers = new Metadata();
+        headers.put(Metadata.Key.of("ctx-foo-bin", Metadata.BINARY_BYTE_MARSHALLER), new byte[]{1, 2, 3});
+        headers.put(Metadata.Key.of("ctx-bar", Metadata.ASCII_STRING_MARSHALLER), "bar");
+
+        assertThat(headers.get(cache.key("ctx-foo-bin"))).isEqualTo(new byte[]{1, 2, 3});
+        assertThat(headers.get(cache.key("ctx-bar"))).isEqualTo("bar".getBytes(StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    public void cacheIsBounded() {
+        MetadataKeyCache cache = new MetadataKeyCache(2);
+        cache.key("ctx-a");
+        cache.key("ctx-b");
+
+        Metadata.Key<?> overflow = cache.key("ctx-c");
+
+        assertThat(cache.size()).isEqualTo(2);
+        assertThat(overflow.name()).isEqualTo("ctx-c");
+        assertThat(cache.key("ctx-c")).isNotSameAs(overflow);
+    }
+}
@@ -10,9 +10,11 @@ package com.salesforce.grpc.contrib.interceptor;
 import io.grpc.*;
 import org.junit.Test;
 
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.assertj.core.api.Assertions.*;
 
@@ -84,6 +86,79 @@ public class AggregateClientInterceptorTest {
         assertThat(channel.called).isTrue();
     }
 
+    @Test
+    public void ChainIsCompiledOncePerChannel() {
+        AtomicReference<Channel> seen = new AtomicReference<>();
+        ClientInterceptor recorder = new ClientInterceptor() {
+            @Override
+            public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(MethodDescriptor<ReqT, RespT> method, CallOptions callOptions, Channel next) {
+                seen.set(next);
+                return next.newCall(method, callOptions);
+            }
+        };
+
+        ClientInterceptor aggregate = new AggregateClientInterceptor(recorder, recorder);
+        StubChannel channel = new StubChannel();
+        aggregate.interceptCall(null, CallOptions.DEFAULT, channel);
+        Channel first = seen.get();
+        aggregate.interceptCall(null, CallOptions.DEFAULT, channel);
+        assertThat(seen.get()).isSameAs(first);
+
+        StubChannel otherChannel = new StubChannel();
+        aggregate.interceptCall(null, CallOptions.DEFAULT, otherChannel);
+        assertThat(seen.get()).isSameAs(otherChannel);
+        assertThat(otherChannel.called).isTrue();
+    }
+
+    @Test
+    public void DeferredInterceptorCanCallNextAfterGc() throws Exception {
+        AtomicReference<Channel> deferred = new AtomicReference<>();
+        ClientInterceptor aggregate = new AggregateClientInterceptor(new ClientInterceptor() {
+            @Override
+            public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(MethodDescriptor<ReqT, RespT> method, CallOptions callOptions, Channel next) {
+                // Keeps next to start the call later, as interceptors that wait for credentials do
+                deferred.set(next);
+                return null;
+            }
+        }, new ClientInterceptor() {
+            @Override
+            public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(MethodDescriptor<ReqT, RespT> method, CallOptions callOptions, Channel next) {
+                return next.newCall(method, callOptions);
+            }
+        });
+        StubChannel channel = new StubChannel();
+        aggregate.interceptCall(null, CallOptions.DEFAULT, channel);
+        WeakReference<StubChannel> channelRef = new WeakReference<>(channel);
+        channel = null;
+
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        deferred.get().newCall(null, CallOptions.DEFAULT);
+        assertThat(channelRef.get().called).isTrue();
+    }
+
+    @Test
+    public void CachedChainDoesNotKeepChannelAlive() throws Exception {
+        ClientInterceptor aggregate = new AggregateClientInterceptor(new ClientInterceptor() {
+            @Override
+            public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(MethodDescriptor<ReqT, RespT> method, CallOptions callOptions, Channel next) {
+                return next.newCall(method, callOptions);
+            }
+        });
+        StubChannel channel = new StubChannel();
+        aggregate.interceptCall(null, CallOptions.DEFAULT, channel);
+        WeakReference<StubChannel> channelRef = new WeakReference<>(channel);
+        channel = null;
+
+        for (int i = 0; i < 50 && channelRef.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertThat(channelRef.get()).isNull();
+    }
+
     private class StubChannel extends Channel {
         public boolean called;
 
@@ -13,9 +13,12 @@ import org.junit.Test;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 public class AggregateServerInterceptorTest {
     @Test
@@ -84,6 +87,120 @@ public class AggregateServerInterceptorTest {
         assertThat(handler.called).isTrue();
     }
 
+    @Test
+    public void ChainIsComposedOncePerMethod() {
+        List<ServerCallHandler<?, ?>> seen = new ArrayList<>();
+        ServerInterceptor recorder = new ServerInterceptor() {
+            @Override
+            public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers, ServerCallHandler<ReqT, RespT> next) {
+                seen.add(next);
+                return next.startCall(call, headers);
+            }
+        };
+
+        ServerInterceptor aggregate = new AggregateServerInterceptor(recorder, recorder);
+        StubHandler<Object, Object> handler = new StubHandler<>();
+        ServerCall<Object, Object> call = call("Service/Method");
+        aggregate.interceptCall(call, new Metadata(), handler);
+        aggregate.interceptCall(call, new Metadata(), handler);
+
+        assertThat(seen).hasSize(4);
+        assertThat(seen.get(2)).isSameAs(seen.get(0));
+        assertThat(seen.get(3)).isSameAs(handler);
+
+        StubHandler<Object, Object> otherHandler = new StubHandler<>();
+        aggregate.interceptCall(call, new Metadata(), otherHandler);
+        assertThat(seen.get(5)).isSameAs(otherHandler);
+        assertThat(otherHandler.called).isTrue();
+
+        // Once a method sees several handlers, each call is composed around its own handler
+        aggregate.interceptCall(call, new Metadata(), handler);
+        assertThat(seen.get(7)).isSameAs(handler);
+        aggregate.interceptCall(call, new Metadata(), otherHandler);
+        assertThat(seen.get(9)).isSameAs(otherHandler);
+    }
+
+    @Test
+    public void SelectiveInterceptorIsSkippedForOtherMethods() {
+        AtomicInteger selectiveCalls = new AtomicInteger();
+        AtomicInteger plainCalls = new AtomicInteger();
+        ServerInterceptor selective = SelectiveServerInterceptor.forServices(new ServerInterceptor() {
+            @Override
+            public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers, ServerCallHandler<ReqT, RespT> next) {
+                selectiveCalls.incrementAndGet();
+                return next.startCall(call, headers);
+            }
+        }, "Admin");
+        ServerInterceptor plain = new ServerInterceptor() {
+            @Override
+            public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers, ServerCallHandler<ReqT, RespT> next) {
+                plainCalls.incrementAndGet();
+                return next.startCall(call, headers);
+            }
+        };
+
+        ServerInterceptor aggregate = new AggregateServerInterceptor(selective, plain);
+        StubHandler<Object, Object> handler = new StubHandler<>();
+        aggregate.interceptCall(call("Service/Method"), new Metadata(), handler);
+        assertThat(selectiveCalls.get()).isEqualTo(0);
+        assertThat(plainCalls.get()).isEqualTo(1);
+        assertThat(handler.called).isTrue();
+
+        aggregate.interceptCall(call("Admin/Method"), new Metadata(), handler);
+        assertThat(selectiveCalls.get()).isEqualTo(1);
+        assertThat(plainCalls.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void StandaloneSelectiveInterceptorPassesOtherMethodsThrough() {
+        AtomicInteger selectiveCalls = new AtomicInteger();
+        ServerInterceptor selective = SelectiveServerInterceptor.forMethods(
+                method -> "Service/Admin".equals(method.getFullMethodName()), new ServerInterceptor() {
+                    @Override
+                    public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers, ServerCallHandler<ReqT, RespT> next) {
+                        selectiveCalls.incrementAndGet();
+                        return next.startCall(call, headers);
+                    }
+                });
+
+        StubHandler<Object, Object> adminHandler = new StubHandler<>();
+        StubHandler<Object, Object> otherHandler = new StubHandler<>();
+        ServerServiceDefinition service = ServerInterceptors.intercept(ServerServiceDefinition.builder("Service")
+                .addMethod(method("Service/Admin"), adminHandler)
+                .addMethod(method("Service/Other"), otherHandler)
+                .build(), selective);
+
+        handler(service, "Service/Other").startCall(call("Service/Other"), new Metadata());
+        assertThat(selectiveCalls.get()).isEqualTo(0);
+        assertThat(otherHandler.called).isTrue();
+
+        handler(service, "Service/Admin").startCall(call("Service/Admin"), new Metadata());
+        assertThat(selectiveCalls.get()).isEqualTo(1);
+        assertThat(adminHandler.called).isTrue();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ServerCallHandler<Object, Object> handler(ServerServiceDefinition service, String fullMethodName) {
+        return (ServerCallHandler<Object, Object>) service.getMethod(fullMethodName).getServerCallHandler();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static MethodDescriptor<Object, Object> method(String fullMethodName) {
+        return MethodDescriptor.newBuilder()
+                .setType(MethodDescriptor.MethodType.UNARY)
+                .setFullMethodName(fullMethodName)
+                .setRequestMarshaller(mock(MethodDescriptor.Marshaller.class))
+                .setResponseMarshaller(mock(MethodDescriptor.Marshaller.class))
+                .build();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ServerCall<Object, Object> call(String fullMethodName) {
+        ServerCall<Object, Object> call = mock(ServerCall.class);
+        when(call.getMethodDescriptor()).thenReturn(method(fullMethodName));
+        return call;
+    }
+
     private class StubHandler<TReq, TResp> implements ServerCallHandler<TReq, TResp> {
         public boolean called;
 
@@ -0,0 +1,89 @@
+/*
+ *  Copyright (c) 2019, Salesforce.com, Inc.
+ *  All rights reserved.
+ *  Licensed under the BSD 3-Clause license.
+ *  For full license text, see LICENSE.txt file in the repo root  or https://opensource.org/licenses/BSD-3-Clause
+ */
+
+package com.salesforce.grpc.contrib.interceptor;
+
+import org.junit.Test;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AsyncLogSinkTest {
+    @Test
+    public void eventsAreFormattedInOrder() throws Exception {
+        BlockingQueue<String> lines = new LinkedBlockingQueue<>();
+        try (AsyncLogSink sink = new AsyncLogSink(16)) {
+            for (int i = 0; i < 100; i++) {
+                while (!sink.offer(lines::add, "line %s", i)) {
+                    Thread.yield();
+                }
+            }
+            for (int i = 0; i < 100; i++) {
+                assertThat(lines.poll(5, TimeUnit.SECONDS)).isEqualTo("line " + i);
+            }
+        }
+    }
+
+    @Test
+    public void eventsAreDroppedWhenFull() throws Exception {
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        BlockingQueue<String> lines = new LinkedBlockingQueue<>();
+        AsyncLogSink sink = new AsyncLogSink(2);
+        try {
+            sink.offer(line -> {
+                writing.countDown();
+                awaitQuietly(release);
+                lines.add(line);
+            }, "blocking");
+            assertThat(writing.await(5, TimeUnit.SECONDS)).isTrue();
+
+            assertThat(sink.offer(lines::add, "one")).isTrue();
+            assertThat(sink.offer(lines::add, "two")).isTrue();
+            assertThat(sink.offer(lines::add, "three")).isFalse();
+            assertThat(sink.dropped()).isEqualTo(1);
+
+            release.countDown();
+            assertThat(lines.poll(5, TimeUnit.SECONDS)).isEqualTo("blocking");
+            assertThat(lines.poll(5, TimeUnit.SECONDS)).isEqualTo("one");
+            assertThat(lines.poll(5, TimeUnit.SECONDS)).isEqualTo("two");
+        } finally {
+            sink.close();
+        }
+        // The counter is updated just after each line is written
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (sink.written() < 3 && System.nanoTime() < deadline) {
+            Thread.yield();
+        }
+        assertThat(sink.written()).isEqualTo(3);
+    }
+
+    @Test
+    public void idleWriterIsWokenByNewEvents() throws Exception {
+        BlockingQueue<String> lines = new LinkedBlockingQueue<>();
+        try (AsyncLogSink sink = new AsyncLogSink(16)) {
+            for (int i = 0; i < 3; i++) {
+                // Give the writer time to park before each event
+                Thread.sleep(50);
+                assertThat(sink.offer(lines::add, "line %s", i)).isTrue();
+                assertThat(lines.poll(5, TimeUnit.SECONDS)).isEqualTo("line " + i);
+            }
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
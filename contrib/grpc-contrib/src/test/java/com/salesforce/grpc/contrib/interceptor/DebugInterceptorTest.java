@@ -8,8 +8,13 @@
 package com.salesforce.grpc.contrib.interceptor;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 import java.util.LinkedList;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.Rule;
 import org.junit.Test;
@@ -19,6 +24,9 @@ import com.salesforce.grpc.contrib.HelloRequest;
 import com.salesforce.grpc.contrib.HelloResponse;
 import com.salesforce.grpc.contrib.interceptor.DebugClientInterceptor.Level;
 
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientCall;
 import io.grpc.ForwardingServerCall.SimpleForwardingServerCall;
 import io.grpc.Metadata;
 import io.grpc.ServerCall;
@@ -118,4 +126,124 @@ public class DebugInterceptorTest {
         assertThat(logs.poll()).contains("Hello World"); // response message
 
     }
+
+    @Test
+    public void debugServerInterceptLogsAsynchronously() throws Exception {
+        BlockingQueue<String> logs = new LinkedBlockingQueue<>();
+        try (AsyncLogSink sink = new AsyncLogSink(16)) {
+            serverRule.getServiceRegistry().addService(ServerInterceptors.intercept(svc,
+                    new DebugServerInterceptor(DebugServerInterceptor.Level.METHOD, DebugServerInterceptor.Level.MESSAGE) {
+                        @Override
+                        protected boolean isLogEnabled() {
+                            return true;
+                        }
+
+                        @Override
+                        protected void log(String logmessage) {
+                            logs.add(logmessage);
+                        }
+                    }.logAsynchronously(sink)));
+            GreeterGrpc.newBlockingStub(serverRule.getChannel()).sayHello(HelloRequest.newBuilder().setName("World").build());
+
+            assertThat(logs.poll(5, TimeUnit.SECONDS)).contains("SayHello"); // request method name
+            assertThat(logs.poll(5, TimeUnit.SECONDS)).contains("World"); // request message
+            assertThat(logs.poll(5, TimeUnit.SECONDS)).contains("SayHello"); // response method name
+            assertThat(logs.poll(5, TimeUnit.SECONDS)).contains("Hello World"); // response message
+        }
+    }
+
+    @Test
+    public void debugClientInterceptSkipsDisabledAsynchronousLogging() {
+        LinkedList<String> logs = new LinkedList<String>();
+        serverRule.getServiceRegistry().addService(svc);
+        try (AsyncLogSink sink = new AsyncLogSink(16)) {
+            GreeterGrpc.GreeterBlockingStub stub = GreeterGrpc.newBlockingStub(serverRule.getChannel())
+                    .withInterceptors(new DebugClientInterceptor(Level.STATUS, Level.MESSAGE) {
+                        @Override
+                        protected boolean isLogEnabled() {
+                            return false;
+                        }
+
+                        @Override
+                        protected void log(String message) {
+                            logs.add(message);
+                        }
+                    }.logAsynchronously(sink));
+            stub.sayHello(HelloRequest.newBuilder().setName("World").build());
+
+            assertThat(sink.dropped()).isZero();
+            assertThat(sink.written()).isZero();
+            assertThat(logs).isEmpty();
+        }
+    }
+
+    @Test
+    public void debugServerInterceptCapturesSampledCalls() {
+        LinkedList<String> logs = new LinkedList<String>();
+        serverRule.getServiceRegistry().addService(ServerInterceptors.intercept(svc,
+                new DebugServerInterceptor(DebugServerInterceptor.Level.METHOD) {
+                    @Override
+                    protected void log(String logmessage) {
+                        logs.add(logmessage);
+                    }
+                }.sampleWith(DebugSampler.newBuilder().oneIn(0).captureHeader(DebugSampler.X_DEBUG, "1").build())));
+        Metadata debugHeaders = new Metadata();
+        debugHeaders.put(DebugSampler.X_DEBUG, "1");
+
+        GreeterGrpc.newBlockingStub(serverRule.getChannel()).sayHello(HelloRequest.newBuilder().setName("World").build());
+        assertThat(logs).isEmpty();
+
+        GreeterGrpc.newBlockingStub(serverRule.getChannel())
+                .withInterceptors(MetadataUtils.newAttachHeadersInterceptor(debugHeaders))
+                .sayHello(HelloRequest.newBuilder().setName("World").build());
+        assertThat(logs.poll()).contains("Request path"); // request method name
+        assertThat(logs.poll()).contains("Response path"); // response method name
+    }
+
+    @Test
+    public void debugClientInterceptRendersMessagesWithRenderer() {
+        LinkedList<String> logs = new LinkedList<String>();
+        serverRule.getServiceRegistry().addService(svc);
+        GreeterGrpc.GreeterBlockingStub stub = GreeterGrpc.newBlockingStub(serverRule.getChannel())
+                .withInterceptors(new DebugClientInterceptor(Level.MESSAGE) {
+                    @Override
+                    protected void log(String message) {
+                        logs.add(message);
+                    }
+                }.renderMessagesWith(MessageRenderer.truncating(10)));
+
+        stub.sayHello(HelloRequest.newBuilder().setName("World").build());
+        assertThat(logs.poll()).isEqualTo("Request message : name: \"Wor..."); // request message
+        assertThat(logs.poll()).isEqualTo("Response message : message: \"..."); // response message
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void debugInterceptorsPassCallsThroughWhenNothingIsLogged() {
+        ServerCall<HelloRequest, HelloResponse> call = mock(ServerCall.class);
+        ServerCallHandler<HelloRequest, HelloResponse> handler = mock(ServerCallHandler.class);
+        Metadata headers = new Metadata();
+        Listener<HelloRequest> listener = new Listener<HelloRequest>() { };
+        when(handler.startCall(call, headers)).thenReturn(listener);
+        Channel channel = mock(Channel.class);
+        ClientCall<HelloRequest, HelloResponse> clientCall = mock(ClientCall.class);
+        when(channel.newCall(GreeterGrpc.getSayHelloMethod(), CallOptions.DEFAULT)).thenReturn(clientCall);
+
+        DebugServerInterceptor server = new DebugServerInterceptor(DebugServerInterceptor.Level.METHOD) {
+            @Override
+            protected boolean isLogEnabled() {
+                return false;
+            }
+        };
+        DebugClientInterceptor client = new DebugClientInterceptor(Level.STATUS) {
+            @Override
+            protected boolean isLogEnabled() {
+                return false;
+            }
+        };
+
+        assertThat(server.interceptCall(call, headers, handler)).isSameAs(listener);
+        assertThat(client.interceptCall(GreeterGrpc.getSayHelloMethod(), CallOptions.DEFAULT, channel))
+                .isSameAs(clientCall);
+    }
 }
@@ -0,0 +1,99 @@
+/*
+ *  Copyright (c) 2019, Salesforce.com, Inc.
+ *  All rights reserved.
+ *  Licensed under the BSD 3-Clause license.
+ *  For full license text, see LICENSE.txt file in the repo root  or https://opensource.org/licenses/BSD-3-Clause
+ */
+
+package com.salesforce.grpc.contrib.interceptor;
+
+import com.google.common.base.Ticker;
+import com.salesforce.grpc.contrib.GreeterGrpc;
+import io.grpc.CallOptions;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import org.junit.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+public class DebugSamplerTest {
+    private static final MethodDescriptor<?, ?> SAY_HELLO = GreeterGrpc.getSayHelloMethod();
+    @SuppressWarnings("unchecked")
+    private static final MethodDescriptor<?, ?> OTHER = MethodDescriptor.newBuilder()
+            .setType(MethodDescriptor.MethodType.UNARY)
+            .setFullMethodName("Other/Method")
+            .setRequestMarshaller(mock(MethodDescriptor.Marshaller.class))
+            .setResponseMarshaller(mock(MethodDescriptor.Marshaller.class))
+            .build();
+
+    private final FakeTicker ticker = new FakeTicker();
+
+    @Test
+    public void everyCallIsCapturedByDefault() {
+        DebugSampler sampler = DebugSampler.newBuilder().build();
+
+        assertThat(sampler.sample(SAY_HELLO, new Metadata())).isTrue();
+        assertThat(sampler.sample(SAY_HELLO, CallOptions.DEFAULT)).isTrue();
+    }
+
+    @Test
+    public void oneInNIsSampled() {
+        DebugSampler sampler = DebugSampler.newBuilder().oneIn(10).build();
+
+        int sampled = 0;
+        for (int i = 0; i < 10_000; i++) {
+            if (sampler.sample(SAY_HELLO, CallOptions.DEFAULT)) {
+                sampled++;
+            }
+        }
+        assertThat(sampled).isBetween(500, 1500);
+    }
+
+    @Test
+    public void rateIsLimitedPerMethod() {
+        DebugSampler sampler = DebugSampler.newBuilder().maxPerSecondPerMethod(2).ticker(ticker).build();
+
+        assertThat(sampler.sample(SAY_HELLO, CallOptions.DEFAULT)).isTrue();
+        assertThat(sampler.sample(SAY_HELLO, CallOptions.DEFAULT)).isFalse();
+        assertThat(sampler.sample(OTHER, CallOptions.DEFAULT)).isTrue();
+
+        ticker.advance(Duration.ofMillis(400));
+        assertThat(sampler.sample(SAY_HELLO, CallOptions.DEFAULT)).isFalse();
+        ticker.advance(Duration.ofMillis(100));
+        assertThat(sampler.sample(SAY_HELLO, CallOptions.DEFAULT)).isTrue();
+    }
+
+    @Test
+    public void explicitlySelectedCallsAreCaptured() {
+        DebugSampler sampler = DebugSampler.newBuilder()
+                .oneIn(0)
+                .captureMethods(method -> method.getFullMethodName().startsWith("Other/"))
+                .captureHeader(DebugSampler.X_DEBUG, "1")
+                .build();
+
+        assertThat(sampler.sample(SAY_HELLO, new Metadata())).isFalse();
+        assertThat(sampler.sample(SAY_HELLO, CallOptions.DEFAULT)).isFalse();
+        assertThat(sampler.sample(OTHER, CallOptions.DEFAULT)).isTrue();
+
+        Metadata headers = new Metadata();
+        headers.put(DebugSampler.X_DEBUG, "1");
+        assertThat(sampler.sample(SAY_HELLO, headers)).isTrue();
+        assertThat(sampler.sample(SAY_HELLO, CallOptions.DEFAULT.withOption(DebugSampler.CAPTURE, true))).isTrue();
+    }
+
+    private static class FakeTicker extends Ticker {
+        private long nanos;
+
+        void advance(Duration duration) {
+            nanos += duration.toNanos();
+        }
+
+        @Override
+        public long read() {
+            return nanos;
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ *  Copyright (c) 2019, Salesforce.com, Inc.
+ *  All rights reserved.
+ *  Licensed under the BSD 3-Clause license.
+ *  For full license text, see LICENSE.txt file in the repo root  or https://opensource.org/licenses/BSD-3-Clause
+ */
+
+package com.salesforce.grpc.contrib.interceptor;
+
+import com.salesforce.grpc.contrib.GreeterGrpc;
+import com.salesforce.grpc.contrib.HelloRequest;
+import com.salesforce.grpc.contrib.HelloResponse;
+import io.grpc.*;
+import io.grpc.stub.StreamObserver;
+import io.grpc.testing.GrpcServerRule;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class InterceptorPipelineTest {
+    @Rule public final GrpcServerRule serverRule = new GrpcServerRule().directExecutor();
+
+    private final List<String> calls = new ArrayList<>();
+
+    GreeterGrpc.GreeterImplBase svc = new GreeterGrpc.GreeterImplBase() {
+        @Override
+        public void sayHello(HelloRequest request, StreamObserver<HelloResponse> responseObserver) {
+            calls.add("service");
+            responseObserver.onNext(HelloResponse.newBuilder().setMessage("Hello " + request.getName()).build());
+            responseObserver.onCompleted();
+        }
+    };
+
+    @Test
+    public void serverStagesRunInPhaseOrder() {
+        serverRule.getServiceRegistry().addService(ServerInterceptors.intercept(svc, ServerInterceptorPipeline.newBuilder()
+                .add(InterceptorPhase.OBSERVABILITY, serverStage("observe"))
+                .add(InterceptorPhase.AUTHENTICATION, serverStage("auth"))
+                .add(InterceptorPhase.OBSERVABILITY, serverStage("observe2"))
+                .add(InterceptorPhase.ADMISSION, method -> false, serverStage("skipped"))
+                .build()));
+
+        sayHello(GreeterGrpc.newBlockingStub(serverRule.getChannel()));
+
+        assertThat(calls).containsExactly("auth", "observe", "observe2", "service");
+    }
+
+    @Test
+    public void serverGuardShortCircuitsLaterStages() {
+        serverRule.getServiceRegistry().addService(ServerInterceptors.intercept(svc, ServerInterceptorPipeline.newBuilder()
+                .add(InterceptorPhase.OBSERVABILITY, serverStage("observe"))
+                .guard(InterceptorPhase.ADMISSION, (call, headers) -> Status.RESOURCE_EXHAUSTED)
+                .build()));
+
+        assertThatThrownBy(() -> sayHello(GreeterGrpc.newBlockingStub(serverRule.getChannel())))
+                .isInstanceOfSatisfying(StatusRuntimeException.class,
+                        ex -> assertThat(ex.getStatus().getCode()).isEqualTo(Status.Code.RESOURCE_EXHAUSTED));
+        assertThat(calls).isEmpty();
+    }
+
+    @Test
+    public void clientStagesRunInPhaseOrder() {
+        serverRule.getServiceRegistry().addService(svc);
+        ClientInterceptorPipeline pipeline = ClientInterceptorPipeline.newBuilder()
+                .add(InterceptorPhase.APPLICATION, clientStage("app"))
+                .add(InterceptorPhase.AUTHENTICATION, clientStage("auth"))
+                .add(InterceptorPhase.ADMISSION, method -> false, clientStage("skipped"))
+                .guard(InterceptorPhase.ADMISSION, (method, callOptions) -> null)
+                .build();
+
+        sayHello(GreeterGrpc.newBlockingStub(serverRule.getChannel()).withInterceptors(pipeline));
+        sayHello(GreeterGrpc.newBlockingStub(serverRule.getChannel()).withInterceptors(pipeline));
+
+        assertThat(calls).containsExactly("auth", "app", "service", "auth", "app", "service");
+    }
+
+    @Test
+    public void clientGuardShortCircuitsLaterStages() {
+        serverRule.getServiceRegistry().addService(svc);
+        ClientInterceptorPipeline pipeline = ClientInterceptorPipeline.newBuilder()
+                .add(InterceptorPhase.OBSERVABILITY, clientStage("observe"))
+                .guard(InterceptorPhase.ADMISSION, (method, callOptions) -> Status.UNAVAILABLE)
+                .build();
+
+        assertThatThrownBy(() -> sayHello(GreeterGrpc.newBlockingStub(serverRule.getChannel()).withInterceptors(pipeline)))
+                .isInstanceOfSatisfying(StatusRuntimeException.class,
+                        ex -> assertThat(ex.getStatus().getCode()).isEqualTo(Status.Code.UNAVAILABLE));
+        assertThat(calls).isEmpty();
+    }
+
+    @Test
+    public void emptyPipelineIsRejected() {
+        assertThatThrownBy(() -> ServerInterceptorPipeline.newBuilder().build())
+                .isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> ClientInterceptorPipeline.newBuilder().build())
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+    private static void sayHello(GreeterGrpc.GreeterBlockingStub stub) {
+        stub.sayHello(HelloRequest.newBuilder().setName("World").build());
+    }
+
+    private ServerInterceptor serverStage(String name) {
+        return new ServerInterceptor() {
+            @Override
+            public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers, ServerCallHandler<ReqT, RespT> next) {
+                calls.add(name);
+                return next.startCall(call, headers);
+            }
+        };
+    }
+
+    private ClientInterceptor clientStage(String name) {
+        return new ClientInterceptor() {
+            @Override
+            public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(MethodDescriptor<ReqT, RespT> method, CallOptions callOptions, Channel next) {
+                calls.add(name);
+                return next.newCall(method, callOptions);
+            }
+        };
+    }
+}
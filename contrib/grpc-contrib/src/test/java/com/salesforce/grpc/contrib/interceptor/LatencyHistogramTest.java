@@ -0,0 +1,98 @@
+/*
+ *  Copyright (c) 2019, Salesforce.com, Inc.
+ *  All rights reserved.
+ *  Licensed under the BSD 3-Clause license.
+ *  For full license text, see LICENSE.txt file in the repo root  or https://opensource.org/licenses/BSD-3-Clause
+ */
+
+package com.salesforce.grpc.contrib.interceptor;
+
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+public class LatencyHistogramTest {
+    @Test
+    public void bucketsCoverEveryValueWithinThreePercent() {
+        assertThat(LatencyHistogram.bucket(Long.MAX_VALUE)).isEqualTo(LatencyHistogram.BUCKETS - 1);
+        assertThat(LatencyHistogram.bucket(LatencyHistogram.MAX_NANOS)).isEqualTo(LatencyHistogram.BUCKETS - 1);
+        assertThat(LatencyHistogram.highestValue(LatencyHistogram.BUCKETS - 1)).isEqualTo(LatencyHistogram.MAX_NANOS);
+
+        for (int i = 0; i < 100_000; i++) {
+            long value = ThreadLocalRandom.current()
+                    .nextLong(LatencyHistogram.MAX_NANOS >>> ThreadLocalRandom.current().nextInt(41));
+            long highest = LatencyHistogram.highestValue(LatencyHistogram.bucket(value));
+            assertThat(highest).isGreaterThanOrEqualTo(value);
+            assertThat((double) highest - value).isLessThanOrEqualTo(value / 32.0);
+        }
+    }
+
+    @Test
+    public void percentilesAreReported() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(Duration.ofMillis(i));
+        }
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertThat(snapshot.count()).isEqualTo(1000);
+        assertThat((double) snapshot.p50().toNanos()).isCloseTo(Duration.ofMillis(500).toNanos(), within(0.03 * 500e6));
+        assertThat((double) snapshot.p99().toNanos()).isCloseTo(Duration.ofMillis(990).toNanos(), within(0.03 * 990e6));
+        assertThat((double) snapshot.p999().toNanos()).isCloseTo(Duration.ofMillis(999).toNanos(), within(0.03 * 999e6));
+        assertThat(snapshot.max()).isGreaterThanOrEqualTo(Duration.ofMillis(1000));
+    }
+
+    @Test
+    public void longLatenciesAreCountedAsTheMaximum() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(Duration.ofDays(1));
+
+        assertThat(histogram.snapshot().max()).isEqualTo(Duration.ofNanos(LatencyHistogram.MAX_NANOS));
+    }
+
+    @Test
+    public void emptySnapshotIsZero() {
+        LatencyHistogram.Snapshot snapshot = new LatencyHistogram().snapshot();
+
+        assertThat(snapshot.count()).isZero();
+        assertThat(snapshot.p99()).isEqualTo(Duration.ZERO);
+        assertThat(snapshot.max()).isEqualTo(Duration.ZERO);
+    }
+
+    @Test
+    public void snapshotAndResetStartsAgain() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(100);
+
+        assertThat(histogram.snapshotAndReset().count()).isEqualTo(1);
+        assertThat(histogram.snapshot().count()).isZero();
+    }
+
+    @Test
+    public void concurrentRecordsAreNotLost() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    histogram.record(i);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        long counted = 0;
+        for (Thread thread : threads) {
+            counted += histogram.snapshotAndReset().count();
+            thread.join();
+        }
+
+        assertThat(counted + histogram.snapshot().count()).isEqualTo(80_000);
+    }
+}
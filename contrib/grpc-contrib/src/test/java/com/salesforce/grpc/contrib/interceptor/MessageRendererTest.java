@@ -0,0 +1,68 @@
+/*
+ *  Copyright (c) 2019, Salesforce.com, Inc.
+ *  All rights reserved.
+ *  Licensed under the BSD 3-Clause license.
+ *  For full license text, see LICENSE.txt file in the repo root  or https://opensource.org/licenses/BSD-3-Clause
+ */
+
+package com.salesforce.grpc.contrib.interceptor;
+
+import com.google.common.base.Strings;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.BytesValue;
+import com.google.protobuf.ListValue;
+import com.google.protobuf.Value;
+import com.salesforce.grpc.contrib.HelloRequest;
+import org.junit.Test;
+
+import java.util.zip.CRC32;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MessageRendererTest {
+    @Test
+    public void fullRendersToString() {
+        HelloRequest request = HelloRequest.newBuilder().setName("World").build();
+
+        assertThat(MessageRenderer.full().render(request)).isEqualTo(request.toString());
+    }
+
+    @Test
+    public void truncatingRendersFields() {
+        HelloRequest request = HelloRequest.newBuilder().setName("World").build();
+
+        assertThat(MessageRenderer.truncating(100).render(request)).isEqualTo("name: \"World\"");
+    }
+
+    @Test
+    public void truncatingStopsAtBudget() {
+        HelloRequest request = HelloRequest.newBuilder().setName(Strings.repeat("x", 1_000_000)).build();
+
+        assertThat(MessageRenderer.truncating(20).render(request)).isEqualTo("name: \"xxxxxxxxxxxxx...");
+    }
+
+    @Test
+    public void truncatingSummarizesRepeatedFieldsAndBytes() {
+        ListValue list = ListValue.newBuilder()
+                .addValues(Value.newBuilder().setStringValue("a"))
+                .addValues(Value.newBuilder().setStringValue("b"))
+                .build();
+        BytesValue bytes = BytesValue.newBuilder().setValue(ByteString.copyFrom(new byte[1024])).build();
+
+        assertThat(MessageRenderer.truncating(100).render(list)).isEqualTo("values: [2 items]");
+        assertThat(MessageRenderer.truncating(100).render(bytes)).isEqualTo("value: <1024 bytes>");
+        assertThat(MessageRenderer.truncating(100).render(Value.newBuilder().setListValue(list).build()))
+                .isEqualTo("list_value { values: [2 items] }");
+    }
+
+    @Test
+    public void sizeAndHashRendersSerializedForm() {
+        HelloRequest request = HelloRequest.newBuilder().setName("World").build();
+        CRC32 crc = new CRC32();
+        crc.update(request.toByteArray());
+
+        assertThat(MessageRenderer.sizeAndHash().render(request))
+                .isEqualTo(String.format("<%d bytes, crc32=%08x>", request.getSerializedSize(), crc.getValue()));
+        assertThat(MessageRenderer.sizeAndHash().render("text")).isEqualTo("java.lang.String");
+    }
+}
@@ -12,15 +12,19 @@ import com.salesforce.grpc.contrib.HelloRequest;
 import com.salesforce.grpc.contrib.HelloResponse;
 import io.grpc.MethodDescriptor;
 import io.grpc.ServerInterceptors;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
 import io.grpc.stub.StreamObserver;
 import io.grpc.testing.GrpcServerRule;
 import org.junit.Rule;
 import org.junit.Test;
 
 import java.time.Duration;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicReference;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 public class StopwatchInterceptorTest {
     @Rule public final GrpcServerRule serverRule = new GrpcServerRule().directExecutor();
@@ -91,4 +95,50 @@ public class StopwatchInterceptorTest {
         assertThat(startDesc.get().getFullMethodName()).contains("SayHello");
         assertThat(stopDur.get()).isGreaterThan(Duration.ZERO);
     }
+
+    @Test
+    public void clientStopwatchRecordsHistograms() {
+        LatencyHistograms histograms = new LatencyHistograms();
+        serverRule.getServiceRegistry().addService(svc);
+        GreeterGrpc.GreeterBlockingStub stub = GreeterGrpc
+                .newBlockingStub(serverRule.getChannel())
+                .withInterceptors(new StopwatchClientInterceptor(histograms));
+
+        stub.sayHello(HelloRequest.newBuilder().setName("World").build());
+        stub.sayHello(HelloRequest.newBuilder().setName("World").build());
+
+        Map<String, Map<Status.Code, LatencyHistogram.Snapshot>> snapshot = histograms.snapshotAndReset();
+        LatencyHistogram.Snapshot ok = snapshot.get(GreeterGrpc.getSayHelloMethod().getFullMethodName()).get(Status.Code.OK);
+        assertThat(ok.count()).isEqualTo(2);
+        assertThat(ok.p99()).isGreaterThan(Duration.ZERO);
+        assertThat(histograms.snapshot().get(GreeterGrpc.getSayHelloMethod().getFullMethodName()).get(Status.Code.OK).count())
+                .isZero();
+    }
+
+    @Test
+    public void serverStopwatchRecordsHistogramsByStatus() {
+        LatencyHistograms histograms = new LatencyHistograms();
+        GreeterGrpc.GreeterImplBase failing = new GreeterGrpc.GreeterImplBase() {
+            @Override
+            public void sayHello(HelloRequest request, StreamObserver<HelloResponse> responseObserver) {
+                if (request.getName().isEmpty()) {
+                    responseObserver.onError(Status.INVALID_ARGUMENT.asRuntimeException());
+                } else {
+                    svc.sayHello(request, responseObserver);
+                }
+            }
+        };
+        serverRule.getServiceRegistry().addService(ServerInterceptors.intercept(failing,
+                new StopwatchServerInterceptor(histograms)));
+        GreeterGrpc.GreeterBlockingStub stub = GreeterGrpc.newBlockingStub(serverRule.getChannel());
+
+        stub.sayHello(HelloRequest.newBuilder().setName("World").build());
+        assertThatThrownBy(() -> stub.sayHello(HelloRequest.getDefaultInstance()))
+                .isInstanceOf(StatusRuntimeException.class);
+
+        Map<Status.Code, LatencyHistogram.Snapshot> byStatus =
+                histograms.snapshot().get(GreeterGrpc.getSayHelloMethod().getFullMethodName());
+        assertThat(byStatus.get(Status.Code.OK).count()).isEqualTo(1);
+        assertThat(byStatus.get(Status.Code.INVALID_ARGUMENT).count()).isEqualTo(1);
+    }
 }